@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import org.filetec.oauth2.security.service.ApplicationJwtAccessTokenConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+import org.springframework.security.oauth2.provider.token.store.KeyStoreKeyFactory;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Configuration
+public class AccessTokenConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessTokenConfiguration.class);
+
+    @Bean(name = "accessTokenEnhancer")
+    @ConditionalOnProperty(name = "oauth2.security.access-token.mode",
+            havingValue = "opaque",
+            matchIfMissing = true)
+    public TokenEnhancer getOpaqueAccessTokenEnhancer() {
+        return (accessToken, authentication) -> accessToken;
+    }
+
+    @Bean(name = "accessTokenEnhancer")
+    @ConditionalOnProperty(name = "oauth2.security.access-token.mode",
+            havingValue = "jwt")
+    public ApplicationJwtAccessTokenConverter getJwtAccessTokenEnhancer(
+            @Value("${oauth2.security.access-token.key-store:#{null}}") Resource keyStore,
+            @Value("${oauth2.security.access-token.key-store-password:}") String keyStorePassword,
+            @Value("${oauth2.security.access-token.key-alias:}") String keyAlias,
+            @Value("${oauth2.security.access-token.single-node:false}") boolean singleNode) throws NoSuchAlgorithmException {
+        ApplicationJwtAccessTokenConverter jwtAccessTokenConverter = new ApplicationJwtAccessTokenConverter();
+        if (keyStore != null) {
+            jwtAccessTokenConverter.setKeyPair(new KeyStoreKeyFactory(keyStore, keyStorePassword.toCharArray())
+                    .getKeyPair(keyAlias));
+        } else if (!singleNode) {
+            // Each node would sign with its own key, and reject the tokens of the others
+            throw new IllegalStateException("No access token key store configured, set "
+                    + "oauth2.security.access-token.key-store, or oauth2.security.access-token.single-node "
+                    + "to sign with a generated key pair");
+        } else {
+            LOGGER.warn("No access token key store configured, signing with a generated key pair that will not survive a restart");
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+            jwtAccessTokenConverter.setKeyPair(keyPair);
+        }
+        return jwtAccessTokenConverter;
+    }
+
+}
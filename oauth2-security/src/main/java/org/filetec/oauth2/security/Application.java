@@ -17,12 +17,14 @@ package org.filetec.oauth2.security;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  *
  * @author warren.nocos
  */
 @SpringBootApplication
+@EnableScheduling
 public class Application {
 
     /**
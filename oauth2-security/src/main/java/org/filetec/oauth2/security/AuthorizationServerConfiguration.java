@@ -16,17 +16,18 @@
 package org.filetec.oauth2.security;
 
 import javax.inject.Inject;
-import org.springframework.context.annotation.Bean;
+import org.filetec.oauth2.security.service.ApplicationTokenServices;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
+import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.token.TokenStore;
-import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
 
 /**
  *
@@ -44,19 +45,28 @@ public class AuthorizationServerConfiguration extends AuthorizationServerConfigu
 
     protected final TokenStore tokenStore;
 
+    protected final PasswordEncoder passwordEncoder;
+
+    protected final ApplicationTokenServices applicationTokenServices;
+
     @Inject
     public AuthorizationServerConfiguration(UserDetailsService userDetailsService,
             ClientDetailsService clientDetailsService,
-            AuthenticationManager authenticationManager) {
+            AuthenticationManager authenticationManager,
+            TokenStore tokenStore,
+            PasswordEncoder passwordEncoder,
+            ApplicationTokenServices applicationTokenServices) {
         this.userDetailsService = userDetailsService;
         this.clientDetailsService = clientDetailsService;
         this.authenticationManager = authenticationManager;
-        tokenStore = new InMemoryTokenStore();
+        this.tokenStore = tokenStore;
+        this.passwordEncoder = passwordEncoder;
+        this.applicationTokenServices = applicationTokenServices;
     }
 
-    @Bean(name = "tokenStore")
-    public TokenStore getTokenStore() {
-        return tokenStore;
+    @Override
+    public void configure(AuthorizationServerSecurityConfigurer security) throws Exception {
+        security.passwordEncoder(passwordEncoder);
     }
 
     @Override
@@ -67,6 +77,7 @@ public class AuthorizationServerConfiguration extends AuthorizationServerConfigu
     @Override
     public void configure(AuthorizationServerEndpointsConfigurer endpoints) throws Exception {
         endpoints.tokenStore(tokenStore)
+                .tokenServices(applicationTokenServices)
                 .userDetailsService(userDetailsService)
                 .authenticationManager(authenticationManager);
     }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security;
+
+import org.filetec.oauth2.security.cache.ExpiringCache;
+import org.filetec.oauth2.security.cache.SingleFlight;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Configuration
+public class CacheConfiguration {
+
+    @Bean(name = "authenticationCache")
+    public ExpiringCache<String, OAuth2Authentication> getAuthenticationCache(
+            @Value("${oauth2.security.authentication-cache.maximum-size:100000}") long maximumSize,
+            @Value("${oauth2.security.authentication-cache.maximum-time-to-live-seconds:60}") long maximumTimeToLiveSeconds) {
+        return new ExpiringCache<>(maximumSize, maximumTimeToLiveSeconds);
+    }
+
+    @Bean(name = "accessTokenCache")
+    public ExpiringCache<String, OAuth2AccessToken> getAccessTokenCache(
+            @Value("${oauth2.security.access-token-cache.maximum-size:100000}") long maximumSize,
+            @Value("${oauth2.security.access-token-cache.maximum-time-to-live-seconds:300}") long maximumTimeToLiveSeconds) {
+        return new ExpiringCache<>(maximumSize, maximumTimeToLiveSeconds);
+    }
+
+    @Bean(name = "accessTokenSingleFlight")
+    public SingleFlight<String, OAuth2AccessToken> getAccessTokenSingleFlight(
+            @Value("${oauth2.security.access-token-single-flight.wait-timeout-millis:5000}") long waitTimeoutMillis) {
+        return new SingleFlight<>(waitTimeoutMillis);
+    }
+
+}
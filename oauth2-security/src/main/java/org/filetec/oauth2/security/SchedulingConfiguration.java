@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Configuration
+public class SchedulingConfiguration {
+
+    /**
+     * This runs the {@code @Scheduled} methods, which would otherwise share a
+     * single thread, so that a long run of one, such as the expired token
+     * reaper pausing between batches, does not hold up the others.
+     *
+     * @param poolSize the number of threads
+     * @return the {@link ThreadPoolTaskScheduler}
+     */
+    @Bean(name = "taskScheduler", destroyMethod = "shutdown")
+    public ThreadPoolTaskScheduler getTaskScheduler(@Value("${oauth2.security.scheduler.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setPoolSize(poolSize);
+        taskScheduler.setThreadNamePrefix("oauth2-scheduler-");
+        taskScheduler.setWaitForTasksToCompleteOnShutdown(true);
+        taskScheduler.setAwaitTerminationSeconds(10);
+        return taskScheduler;
+    }
+
+}
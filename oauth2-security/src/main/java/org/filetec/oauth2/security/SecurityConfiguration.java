@@ -15,11 +15,22 @@
  */
 package org.filetec.oauth2.security;
 
+import javax.inject.Inject;
+import org.filetec.oauth2.security.service.CachingDaoAuthenticationProvider;
+import org.filetec.oauth2.security.service.CredentialMigration;
+import org.filetec.oauth2.security.service.CredentialVerificationUnavailableFilter;
+import org.filetec.oauth2.security.service.VerifiedCredentialCache;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
 /**
  *
@@ -30,12 +41,35 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 @EnableGlobalMethodSecurity(jsr250Enabled = true)
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
+    @Inject
+    public void configureGlobal(AuthenticationManagerBuilder auth, UserDetailsService userDetailsService,
+            PasswordEncoder passwordEncoder, VerifiedCredentialCache verifiedCredentialCache,
+            CredentialMigration credentialMigration) throws Exception {
+        CachingDaoAuthenticationProvider authenticationProvider
+                = new CachingDaoAuthenticationProvider(verifiedCredentialCache, credentialMigration);
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+        auth.authenticationProvider(authenticationProvider);
+    }
+
+    @Bean(name = "credentialVerificationUnavailableFilter")
+    public FilterRegistrationBean getCredentialVerificationUnavailableFilter() {
+        FilterRegistrationBean filterRegistrationBean = new FilterRegistrationBean(new CredentialVerificationUnavailableFilter());
+        // Around the Spring Security filters, where HTTP Basic credentials are verified
+        filterRegistrationBean.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+        return filterRegistrationBean;
+    }
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
+        // Nodes authenticate to each other with the ClusterSecret
         http.authorizeRequests()
+                .antMatchers("/internal/**").permitAll()
                 .anyRequest().authenticated()
                 .and()
-                .httpBasic();
+                .httpBasic()
+                .and()
+                .csrf().ignoringAntMatchers("/internal/**");
     }
 
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Optional;
+import org.filetec.oauth2.security.cluster.ClusterSecret;
+import org.filetec.oauth2.security.cluster.DiscoveryTokenStoreMembership;
+import org.filetec.oauth2.security.cluster.HttpTokenStoreTransport;
+import org.filetec.oauth2.security.cluster.PartitionedTokenStore;
+import org.filetec.oauth2.security.cache.ExpiringCache;
+import org.filetec.oauth2.security.codec.OAuth2AuthenticationCodec;
+import org.filetec.oauth2.security.registry.GrantedAuthorityRegistry;
+import org.filetec.oauth2.security.registry.ScopeDictionary;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2AccessTokenRepository;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2RefreshTokenRepository;
+import org.filetec.oauth2.security.service.TokenHasher;
+import org.filetec.oauth2.security.store.JpaTokenStore;
+import org.filetec.oauth2.security.store.MappedTokenStore;
+import org.filetec.oauth2.security.store.ShardedInMemoryTokenStore;
+import org.filetec.oauth2.security.store.TokenJournal;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Configuration
+public class TokenStoreConfiguration {
+
+    @Bean(name = "tokenStore")
+    @ConditionalOnProperty(name = "oauth2.security.token-store",
+            havingValue = "sharded-in-memory",
+            matchIfMissing = true)
+    public ShardedInMemoryTokenStore getShardedInMemoryTokenStore(AuthenticationKeyGenerator authenticationKeyGenerator,
+            GrantedAuthorityRegistry grantedAuthorityRegistry,
+            @Value("${oauth2.security.token-store.shard-count:64}") int shardCount,
+            @Value("${oauth2.security.token-store.tick-millis:1000}") long tickMillis) {
+        ShardedInMemoryTokenStore shardedInMemoryTokenStore = new ShardedInMemoryTokenStore(authenticationKeyGenerator,
+                shardCount, tickMillis);
+        shardedInMemoryTokenStore.setGrantedAuthorityRegistry(grantedAuthorityRegistry);
+        return shardedInMemoryTokenStore;
+    }
+
+    @Bean(name = "tokenJournal")
+    @ConditionalOnExpression("'${oauth2.security.token-store:sharded-in-memory}' == 'sharded-in-memory'"
+            + " and ${oauth2.security.token-store.journal.enabled:true}")
+    public TokenJournal getTokenJournal(ShardedInMemoryTokenStore shardedInMemoryTokenStore,
+            OAuth2AuthenticationCodec authenticationCodec,
+            @Value("${oauth2.security.token-store.journal.directory:tokens/journal}") String directory,
+            @Value("${oauth2.security.token-store.journal.capacity-bytes:134217728}") int capacityBytes) {
+        return new TokenJournal(shardedInMemoryTokenStore, authenticationCodec, Paths.get(directory), capacityBytes);
+    }
+
+    @Bean(name = "tokenStore")
+    @ConditionalOnProperty(name = "oauth2.security.token-store",
+            havingValue = "partitioned")
+    public PartitionedTokenStore getPartitionedTokenStore(AuthenticationKeyGenerator authenticationKeyGenerator,
+            OAuth2AuthenticationCodec authenticationCodec,
+            GrantedAuthorityRegistry grantedAuthorityRegistry,
+            DiscoveryClient discoveryClient,
+            ClusterSecret clusterSecret,
+            @Value("${oauth2.security.token-store.shard-count:64}") int shardCount,
+            @Value("${oauth2.security.token-store.tick-millis:1000}") long tickMillis,
+            @Value("${oauth2.security.token-store.partitioned.local-node:}") String localNode,
+            @Value("${oauth2.security.token-store.partitioned.nodes:}") String nodes,
+            @Value("${oauth2.security.token-store.partitioned.replica-count:2}") int replicaCount,
+            @Value("${oauth2.security.token-store.partitioned.virtual-node-count:128}") int virtualNodeCount,
+            @Value("${oauth2.security.token-store.partitioned.connect-timeout-millis:1000}") int connectTimeoutMillis,
+            @Value("${oauth2.security.token-store.partitioned.read-timeout-millis:2000}") int readTimeoutMillis) {
+        if (!clusterSecret.isEnabled()) {
+            throw new IllegalStateException("oauth2.security.cluster.secret must be set for the partitioned token store");
+        }
+        String theLocalNode = Optional.of(localNode)
+                .filter(theNode -> !theNode.isEmpty())
+                .orElseGet(() -> {
+                    ServiceInstance localServiceInstance = discoveryClient.getLocalServiceInstance();
+                    return localServiceInstance.getHost() + ':' + localServiceInstance.getPort();
+                });
+        ShardedInMemoryTokenStore localTokenStore = new ShardedInMemoryTokenStore(authenticationKeyGenerator,
+                shardCount, tickMillis);
+        localTokenStore.setGrantedAuthorityRegistry(grantedAuthorityRegistry);
+        PartitionedTokenStore partitionedTokenStore = new PartitionedTokenStore(localTokenStore,
+                authenticationKeyGenerator, authenticationCodec,
+                new HttpTokenStoreTransport(clusterSecret.getSecret(), connectTimeoutMillis, readTimeoutMillis),
+                theLocalNode, replicaCount, virtualNodeCount);
+        if (!nodes.isEmpty()) {
+            partitionedTokenStore.setNodes(Arrays.asList(nodes.trim().split("\\s*,\\s*")));
+        }
+        return partitionedTokenStore;
+    }
+
+    @Bean(name = "tokenStoreMembership")
+    @ConditionalOnExpression("'${oauth2.security.token-store:sharded-in-memory}' == 'partitioned'"
+            + " and '${oauth2.security.token-store.partitioned.nodes:}'.isEmpty()")
+    public DiscoveryTokenStoreMembership getDiscoveryTokenStoreMembership(PartitionedTokenStore partitionedTokenStore,
+            DiscoveryClient discoveryClient,
+            @Value("${spring.application.name}") String serviceId) {
+        return new DiscoveryTokenStoreMembership(partitionedTokenStore, discoveryClient, serviceId);
+    }
+
+    @Bean(name = "tokenStore")
+    @ConditionalOnProperty(name = "oauth2.security.token-store",
+            havingValue = "in-memory")
+    public InMemoryTokenStore getInMemoryTokenStore(AuthenticationKeyGenerator authenticationKeyGenerator) {
+        InMemoryTokenStore inMemoryTokenStore = new InMemoryTokenStore();
+        inMemoryTokenStore.setAuthenticationKeyGenerator(authenticationKeyGenerator);
+        return inMemoryTokenStore;
+    }
+
+    @Bean(name = "tokenStore")
+    @ConditionalOnProperty(name = "oauth2.security.token-store",
+            havingValue = "off-heap")
+    public MappedTokenStore getMappedTokenStore(AuthenticationKeyGenerator authenticationKeyGenerator,
+            OAuth2AuthenticationCodec authenticationCodec,
+            @Value("${oauth2.security.token-store.off-heap.file:tokens/oauth2-tokens.dat}") String file,
+            @Value("${oauth2.security.token-store.off-heap.capacity-bytes:1073741824}") int capacityBytes,
+            @Value("${oauth2.security.token-store.off-heap.index-capacity:65536}") int indexCapacity,
+            @Value("${oauth2.security.token-store.off-heap.compaction-ratio:0.5}") double compactionRatio) {
+        return new MappedTokenStore(authenticationKeyGenerator, authenticationCodec, Paths.get(file),
+                capacityBytes, indexCapacity, compactionRatio);
+    }
+
+    @Bean(name = "tokenStore")
+    @ConditionalOnProperty(name = "oauth2.security.token-store",
+            havingValue = "jpa")
+    public TokenStore getJpaTokenStore(ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository,
+            ApplicationOAuth2RefreshTokenRepository applicationOAuth2RefreshTokenRepository,
+            AuthenticationKeyGenerator authenticationKeyGenerator,
+            OAuth2AuthenticationCodec authenticationCodec,
+            TokenHasher tokenHasher,
+            @Qualifier("accessTokenCache") ExpiringCache<String, OAuth2AccessToken> accessTokenCache,
+            @Qualifier("authenticationCache") ExpiringCache<String, OAuth2Authentication> authenticationCache,
+            ScopeDictionary scopeDictionary) {
+        return new JpaTokenStore(applicationOAuth2AccessTokenRepository, applicationOAuth2RefreshTokenRepository,
+                authenticationKeyGenerator, authenticationCodec, tokenHasher, accessTokenCache, authenticationCache,
+                scopeDictionary);
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.inject.Inject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class AccountUserCache implements UserCache {
+
+    protected final Cache<String, UserDetails> cache;
+
+    protected final AtomicLong invalidationCount;
+
+    protected final LongAdder hitCount;
+
+    protected final LongAdder missCount;
+
+    @Inject
+    public AccountUserCache(@Value("${oauth2.security.user-cache.maximum-size:10000}") long maximumSize,
+            @Value("${oauth2.security.user-cache.time-to-live-seconds:300}") long timeToLiveSeconds) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        invalidationCount = new AtomicLong();
+        hitCount = new LongAdder();
+        missCount = new LongAdder();
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        UserDetails userDetails = cache.getIfPresent(username);
+        if (userDetails == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return userDetails;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void putUserInCache(UserDetails user) {
+        cache.put(user.getUsername(), user);
+    }
+
+    /**
+     * This caches an account unless an account was removed after the given
+     * invalidation count was taken.
+     *
+     * @param user the account
+     * @param loadInvalidationCount the {@link #getInvalidationCount()} taken
+     * before the account was read
+     */
+    public void putUserInCache(UserDetails user, long loadInvalidationCount) {
+        synchronized (invalidationCount) {
+            if (invalidationCount.get() == loadInvalidationCount) {
+                cache.put(user.getUsername(), user);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void removeUserFromCache(String username) {
+        synchronized (invalidationCount) {
+            invalidationCount.incrementAndGet();
+            cache.invalidate(username);
+        }
+    }
+
+    @ManagedOperation
+    public void removeAllUsersFromCache() {
+        synchronized (invalidationCount) {
+            invalidationCount.incrementAndGet();
+            cache.invalidateAll();
+        }
+    }
+
+    @ManagedAttribute
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    @ManagedAttribute
+    public long getEstimatedSize() {
+        return cache.estimatedSize();
+    }
+
+}
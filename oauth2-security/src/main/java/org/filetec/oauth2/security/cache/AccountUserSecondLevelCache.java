@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cache;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import org.filetec.oauth2.security.model.AccountUserDetails;
+import org.filetec.oauth2.security.model.AccountUserGrantedAuthority;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class AccountUserSecondLevelCache {
+
+    protected final SessionFactory sessionFactory;
+
+    @Inject
+    public AccountUserSecondLevelCache(EntityManagerFactory entityManagerFactory) {
+        sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    /**
+     * This evicts the accounts, their granted authorities and the cached
+     * queries from the second-level cache of this node. The regions are
+     * evicted whole, since the other nodes only name the username of a
+     * changed account, and cached queries may still map it to a stale id.
+     */
+    @ManagedOperation
+    public void evictAccountUsers() {
+        Cache cache = sessionFactory.getCache();
+        cache.evictEntityRegion(AccountUserDetails.class);
+        cache.evictCollectionRegion(AccountUserDetails.class.getName() + ".grantedAuthorities");
+        cache.evictEntityRegion(AccountUserGrantedAuthority.class);
+        cache.evictDefaultQueryRegion();
+    }
+
+}
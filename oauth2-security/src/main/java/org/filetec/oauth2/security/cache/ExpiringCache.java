@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@ManagedResource
+public class ExpiringCache<K, V> {
+
+    protected final Cache<K, ExpiringValue<V>> cache;
+
+    protected final LongAdder hitCount;
+
+    protected final LongAdder missCount;
+
+    protected final LongAdder expiredCount;
+
+    public ExpiringCache(long maximumSize, long maximumTimeToLiveSeconds) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maximumTimeToLiveSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        hitCount = new LongAdder();
+        missCount = new LongAdder();
+        expiredCount = new LongAdder();
+    }
+
+    /**
+     * This looks up a non-expired value. An entry found past its own expiration
+     * is removed and counted as both a miss and an eviction.
+     *
+     * @param key the key of the value
+     * @return the cached value, if present and not expired
+     */
+    public Optional<V> get(K key) {
+        ExpiringValue<V> expiringValue = cache.getIfPresent(key);
+        if (expiringValue == null) {
+            missCount.increment();
+            return Optional.empty();
+        }
+        if (expiringValue.isExpired()) {
+            if (cache.asMap().remove(key, expiringValue)) {
+                expiredCount.increment();
+            }
+            missCount.increment();
+            return Optional.empty();
+        }
+        hitCount.increment();
+        return Optional.of(expiringValue.value);
+    }
+
+    /**
+     * This caches a value until the given expiration date. Values that have
+     * already expired are not cached.
+     *
+     * @param key the key of the value
+     * @param value the value to cache
+     * @param expiration the date the value expires, or {@code null} if it
+     * expires only through the maximum time to live
+     */
+    public void put(K key, V value, Date expiration) {
+        long expiresAt = expiration == null ? Long.MAX_VALUE : expiration.getTime();
+        if (expiresAt > System.currentTimeMillis()) {
+            cache.put(key, new ExpiringValue<>(value, expiresAt));
+        }
+    }
+
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return cache.stats().evictionCount() + expiredCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getEstimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    protected static class ExpiringValue<V> {
+
+        protected final V value;
+
+        protected final long expiresAt;
+
+        protected ExpiringValue(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        protected boolean isExpired() {
+            return expiresAt <= System.currentTimeMillis();
+        }
+
+    }
+
+}
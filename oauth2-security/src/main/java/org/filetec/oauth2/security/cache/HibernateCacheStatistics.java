@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cache;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class HibernateCacheStatistics {
+
+    protected final SessionFactory sessionFactory;
+
+    @Inject
+    public HibernateCacheStatistics(EntityManagerFactory entityManagerFactory) {
+        sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    @ManagedAttribute
+    public boolean isStatisticsEnabled() {
+        return getStatistics().isStatisticsEnabled();
+    }
+
+    @ManagedAttribute
+    public long getSecondLevelCacheHitCount() {
+        return getStatistics().getSecondLevelCacheHitCount();
+    }
+
+    @ManagedAttribute
+    public long getSecondLevelCacheMissCount() {
+        return getStatistics().getSecondLevelCacheMissCount();
+    }
+
+    @ManagedAttribute
+    public long getSecondLevelCachePutCount() {
+        return getStatistics().getSecondLevelCachePutCount();
+    }
+
+    @ManagedAttribute
+    public long getQueryCacheHitCount() {
+        return getStatistics().getQueryCacheHitCount();
+    }
+
+    @ManagedAttribute
+    public long getQueryCacheMissCount() {
+        return getStatistics().getQueryCacheMissCount();
+    }
+
+    @ManagedAttribute
+    public long getQueryCachePutCount() {
+        return getStatistics().getQueryCachePutCount();
+    }
+
+    @ManagedAttribute
+    public String[] getRegionNames() {
+        return getStatistics().getSecondLevelCacheRegionNames();
+    }
+
+    /**
+     * @param regionName the name of the region
+     * @return the hits, misses, puts and entries in memory of the region, or
+     * nothing if there is no such region
+     */
+    @ManagedOperation
+    public String getRegionStatistics(String regionName) {
+        SecondLevelCacheStatistics regionStatistics = getStatistics().getSecondLevelCacheStatistics(regionName);
+        if (regionStatistics == null) {
+            return null;
+        }
+        return new StringBuilder(128)
+                .append("hits=").append(regionStatistics.getHitCount())
+                .append(",misses=").append(regionStatistics.getMissCount())
+                .append(",puts=").append(regionStatistics.getPutCount())
+                .append(",entriesInMemory=").append(regionStatistics.getElementCountInMemory())
+                .append(",bytesInMemory=").append(regionStatistics.getSizeInMemory())
+                .toString();
+    }
+
+    @ManagedOperation
+    public void evictAllRegions() {
+        sessionFactory.getCache().evictAllRegions();
+    }
+
+    @ManagedOperation
+    public void clearStatistics() {
+        getStatistics().clear();
+    }
+
+    protected Statistics getStatistics() {
+        return sessionFactory.getStatistics();
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@ManagedResource
+public class SingleFlight<K, V> {
+
+    protected final ConcurrentMap<K, CompletableFuture<V>> flights;
+
+    protected final LongAdder executedCount;
+
+    protected final LongAdder sharedCount;
+
+    protected final LongAdder timedOutCount;
+
+    protected final long waitTimeoutMillis;
+
+    /**
+     * @param waitTimeoutMillis how long callers wait for a computation in
+     * flight before giving up on it
+     */
+    public SingleFlight(long waitTimeoutMillis) {
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        flights = new ConcurrentHashMap<>();
+        executedCount = new LongAdder();
+        sharedCount = new LongAdder();
+        timedOutCount = new LongAdder();
+    }
+
+    public V execute(K key, Supplier<V> supplier) {
+        return execute(key, supplier, supplier);
+    }
+
+    /**
+     * @param key the key of the computation
+     * @param supplier the computation, run unless one is in flight for the key
+     * @param timedOutSupplier what callers run instead of waiting any longer
+     * for the computation in flight
+     * @return the value of the computation
+     */
+    public V execute(K key, Supplier<V> supplier, Supplier<V> timedOutSupplier) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            sharedCount.increment();
+            return await(inFlight, timedOutSupplier);
+        }
+        executedCount.increment();
+        try {
+            V value = supplier.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    @ManagedAttribute
+    public int getInFlightCount() {
+        return flights.size();
+    }
+
+    @ManagedAttribute
+    public long getExecutedCount() {
+        return executedCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getSharedCount() {
+        return sharedCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getTimedOutCount() {
+        return timedOutCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getWaitTimeoutMillis() {
+        return waitTimeoutMillis;
+    }
+
+    protected V await(CompletableFuture<V> inFlight, Supplier<V> timedOutSupplier) {
+        try {
+            return inFlight.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            timedOutCount.increment();
+            return timedOutSupplier.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a computation in flight", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Optional;
+import javax.inject.Inject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+public class ClusterSecret {
+
+    public static final String HEADER = "X-Cluster-Secret";
+
+    protected final String secret;
+
+    protected final byte[] secretBytes;
+
+    @Inject
+    public ClusterSecret(@Value("${oauth2.security.cluster.secret:}") String secret) {
+        this.secret = secret;
+        secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public boolean isEnabled() {
+        return !secret.isEmpty();
+    }
+
+    /**
+     * @param requestSecret the secret sent with a request
+     * @return whether it is this secret, compared in constant time
+     */
+    public boolean matches(String requestSecret) {
+        return isEnabled() && Optional.ofNullable(requestSecret)
+                .map(theRequestSecret -> MessageDigest.isEqual(secretBytes, theRequestSecret.getBytes(StandardCharsets.UTF_8)))
+                .orElse(false);
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import org.filetec.oauth2.security.store.OffHeapHashIndex;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class ConsistentHashRing {
+
+    protected final List<String> nodes;
+
+    protected final long[] points;
+
+    protected final String[] pointNodes;
+
+    /**
+     * @param nodes the nodes on the ring
+     * @param virtualNodeCount the number of points each node is placed at
+     */
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodeCount) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(nodes)));
+        int pointCount = this.nodes.size() * virtualNodeCount;
+        long[][] sortedPoints = new long[pointCount][];
+        int index = 0;
+        for (int nodeIndex = 0; nodeIndex < this.nodes.size(); nodeIndex++) {
+            for (int virtualNode = 0; virtualNode < virtualNodeCount; virtualNode++) {
+                sortedPoints[index++] = new long[]{hash(this.nodes.get(nodeIndex) + '#' + virtualNode), nodeIndex};
+            }
+        }
+        Arrays.sort(sortedPoints, (first, second) -> Long.compare(first[0], second[0]));
+        points = new long[pointCount];
+        pointNodes = new String[pointCount];
+        for (index = 0; index < pointCount; index++) {
+            points[index] = sortedPoints[index][0];
+            pointNodes[index] = this.nodes.get((int) sortedPoints[index][1]);
+        }
+    }
+
+    /**
+     * @param key the key
+     * @param replicaCount the number of owners wanted
+     * @return up to {@code replicaCount} distinct nodes owning the key, the
+     * primary owner first
+     */
+    public List<String> owners(String key, int replicaCount) {
+        int ownerCount = Math.min(replicaCount, nodes.size());
+        List<String> owners = new ArrayList<>(ownerCount);
+        if (ownerCount == 0) {
+            return owners;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (int step = 0; owners.size() < ownerCount; step++) {
+            String node = pointNodes[(index + step) % points.length];
+            if (!owners.contains(node)) {
+                owners.add(node);
+            }
+        }
+        return owners;
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    protected static long hash(String key) {
+        return OffHeapHashIndex.hash(key);
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.event.EventListener;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class DiscoveryTokenStoreMembership {
+
+    protected final PartitionedTokenStore partitionedTokenStore;
+
+    protected final DiscoveryClient discoveryClient;
+
+    protected final String serviceId;
+
+    public DiscoveryTokenStoreMembership(PartitionedTokenStore partitionedTokenStore,
+            DiscoveryClient discoveryClient, String serviceId) {
+        this.partitionedTokenStore = partitionedTokenStore;
+        this.discoveryClient = discoveryClient;
+        this.serviceId = serviceId;
+    }
+
+    @EventListener({ApplicationReadyEvent.class, HeartbeatEvent.class})
+    public void updateNodes() {
+        List<String> nodes = discoveryClient.getInstances(serviceId).stream()
+                .map(serviceInstance -> serviceInstance.getHost() + ':' + serviceInstance.getPort())
+                .collect(Collectors.toList());
+        partitionedTokenStore.setNodes(nodes);
+    }
+
+}
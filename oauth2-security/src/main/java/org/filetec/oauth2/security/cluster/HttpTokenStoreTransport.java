@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.io.IOException;
+import java.util.Collections;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class HttpTokenStoreTransport implements TokenStoreTransport {
+
+    protected final RestTemplate restTemplate;
+
+    protected final String secret;
+
+    /**
+     * @param secret the secret shared by the nodes
+     * @param connectTimeoutMillis the connect timeout
+     * @param readTimeoutMillis the read timeout
+     */
+    public HttpTokenStoreTransport(String secret, int connectTimeoutMillis, int readTimeoutMillis) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMillis);
+        requestFactory.setReadTimeout(readTimeoutMillis);
+        restTemplate = new RestTemplate(requestFactory);
+        this.secret = secret;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public byte[] exchange(String node, byte[] request) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_OCTET_STREAM));
+        headers.set(ClusterSecret.HEADER, secret);
+        try {
+            return restTemplate.postForObject("http://" + node + TokenStoreEndpoint.PATH,
+                    new HttpEntity<>(request, headers), byte[].class);
+        } catch (RestClientException ex) {
+            throw new IOException("Token store request to " + node + " failed", ex);
+        }
+    }
+
+}
@@ -0,0 +1,600 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.filetec.oauth2.security.codec.OAuth2AuthenticationCodec;
+import org.filetec.oauth2.security.codec.OAuth2TokenCodec;
+import org.filetec.oauth2.security.store.ShardedInMemoryTokenStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@ManagedResource
+public class PartitionedTokenStore implements TokenStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedTokenStore.class);
+
+    private static final byte STORE_ACCESS_TOKEN = 1;
+
+    private static final byte READ_ACCESS_TOKEN = 2;
+
+    private static final byte READ_AUTHENTICATION = 3;
+
+    private static final byte REMOVE_ACCESS_TOKEN = 4;
+
+    private static final byte GET_ACCESS_TOKEN = 5;
+
+    private static final byte FIND_TOKENS_BY_CLIENT_ID = 6;
+
+    private static final byte FIND_TOKENS_BY_CLIENT_ID_AND_USER_NAME = 7;
+
+    private static final byte STORE_REFRESH_TOKEN = 8;
+
+    private static final byte READ_REFRESH_TOKEN = 9;
+
+    private static final byte READ_AUTHENTICATION_FOR_REFRESH_TOKEN = 10;
+
+    private static final byte REMOVE_REFRESH_TOKEN = 11;
+
+    private static final byte READ_ACCESS_TOKEN_VALUE_FOR_REFRESH_TOKEN = 12;
+
+    protected final ShardedInMemoryTokenStore localTokenStore;
+
+    protected final AuthenticationKeyGenerator authenticationKeyGenerator;
+
+    protected final OAuth2AuthenticationCodec authenticationCodec;
+
+    protected final TokenStoreTransport transport;
+
+    protected final String localNode;
+
+    protected final int replicaCount;
+
+    protected final int virtualNodeCount;
+
+    protected final Object membershipLock;
+
+    protected final LongAdder forwardedRequestCount;
+
+    protected final LongAdder failedRequestCount;
+
+    protected final LongAdder handedOffTokenCount;
+
+    protected volatile ConsistentHashRing ring;
+
+    /**
+     * @param localTokenStore the {@link ShardedInMemoryTokenStore} holding the
+     * tokens owned by this node
+     * @param authenticationKeyGenerator the {@link AuthenticationKeyGenerator}
+     * keying access tokens by authentication
+     * @param authenticationCodec the {@link OAuth2AuthenticationCodec}
+     * encoding authentications sent to other nodes
+     * @param transport the {@link TokenStoreTransport} to other nodes
+     * @param localNode this node, as it is named on the ring
+     * @param replicaCount the number of nodes holding each token
+     * @param virtualNodeCount the number of points each node is placed at on
+     * the ring
+     */
+    public PartitionedTokenStore(ShardedInMemoryTokenStore localTokenStore,
+            AuthenticationKeyGenerator authenticationKeyGenerator,
+            OAuth2AuthenticationCodec authenticationCodec,
+            TokenStoreTransport transport,
+            String localNode, int replicaCount, int virtualNodeCount) {
+        this.localTokenStore = localTokenStore;
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
+        this.authenticationCodec = authenticationCodec;
+        this.transport = transport;
+        this.localNode = localNode;
+        this.replicaCount = replicaCount;
+        this.virtualNodeCount = virtualNodeCount;
+        membershipLock = new Object();
+        forwardedRequestCount = new LongAdder();
+        failedRequestCount = new LongAdder();
+        handedOffTokenCount = new LongAdder();
+        ring = new ConsistentHashRing(Collections.singleton(localNode), virtualNodeCount);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        return read(owners(token),
+                theLocalTokenStore -> theLocalTokenStore.readAuthentication(token),
+                request(READ_AUTHENTICATION, out -> out.writeUTF(token)),
+                this::readAuthentication);
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        write(holders(ring, token, authentication),
+                theLocalTokenStore -> theLocalTokenStore.storeAccessToken(token, authentication),
+                request(STORE_ACCESS_TOKEN, out -> writeAccessToken(out, token, authentication)));
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return read(owners(tokenValue),
+                theLocalTokenStore -> theLocalTokenStore.readAccessToken(tokenValue),
+                request(READ_ACCESS_TOKEN, out -> out.writeUTF(tokenValue)),
+                OAuth2TokenCodec::readAccessToken);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        String tokenValue = token.getValue();
+        ConsistentHashRing theRing = ring;
+        Set<String> holders = new LinkedHashSet<>(theRing.owners(tokenValue, replicaCount));
+        Optional.ofNullable(readAuthentication(tokenValue))
+                .ifPresent(authentication -> holders.addAll(theRing.owners(authenticationKeyGenerator.extractKey(authentication), replicaCount)));
+        Optional.ofNullable(token.getRefreshToken())
+                .map(Optional::of)
+                .orElseGet(() -> Optional.ofNullable(readAccessToken(tokenValue))
+                        .map(OAuth2AccessToken::getRefreshToken))
+                .ifPresent(refreshToken -> holders.addAll(theRing.owners(refreshToken.getValue(), replicaCount)));
+        write(holders,
+                theLocalTokenStore -> theLocalTokenStore.removeAccessToken(new DefaultOAuth2AccessToken(tokenValue)),
+                request(REMOVE_ACCESS_TOKEN, out -> out.writeUTF(tokenValue)));
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        write(owners(refreshToken.getValue()),
+                theLocalTokenStore -> theLocalTokenStore.storeRefreshToken(refreshToken, authentication),
+                request(STORE_REFRESH_TOKEN, out -> writeRefreshToken(out, refreshToken, authentication)));
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return read(owners(tokenValue),
+                theLocalTokenStore -> theLocalTokenStore.readRefreshToken(tokenValue),
+                request(READ_REFRESH_TOKEN, out -> out.writeUTF(tokenValue)),
+                OAuth2TokenCodec::readRefreshToken);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        return read(owners(token.getValue()),
+                theLocalTokenStore -> theLocalTokenStore.readAuthenticationForRefreshToken(token),
+                request(READ_AUTHENTICATION_FOR_REFRESH_TOKEN, out -> out.writeUTF(token.getValue())),
+                this::readAuthentication);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        write(owners(token.getValue()),
+                theLocalTokenStore -> theLocalTokenStore.removeRefreshToken(token),
+                request(REMOVE_REFRESH_TOKEN, out -> out.writeUTF(token.getValue())));
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        Optional.ofNullable(read(owners(refreshToken.getValue()),
+                theLocalTokenStore -> theLocalTokenStore.readAccessTokenValueForRefreshToken(refreshToken.getValue()),
+                request(READ_ACCESS_TOKEN_VALUE_FOR_REFRESH_TOKEN, out -> out.writeUTF(refreshToken.getValue())),
+                in -> in.readUTF()))
+                .map(DefaultOAuth2AccessToken::new)
+                .ifPresent(accessToken -> {
+                    accessToken.setRefreshToken(refreshToken);
+                    removeAccessToken(accessToken);
+                });
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        return read(owners(authenticationKeyGenerator.extractKey(authentication)),
+                theLocalTokenStore -> theLocalTokenStore.getAccessToken(authentication),
+                request(GET_ACCESS_TOKEN, out -> OAuth2TokenCodec.writeBytes(out, authenticationCodec.encode(authentication))),
+                OAuth2TokenCodec::readAccessToken);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return findTokens(theLocalTokenStore -> theLocalTokenStore.findTokensByClientIdAndUserName(clientId, userName),
+                request(FIND_TOKENS_BY_CLIENT_ID_AND_USER_NAME, out -> {
+                    out.writeUTF(clientId);
+                    out.writeUTF(userName);
+                }));
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return findTokens(theLocalTokenStore -> theLocalTokenStore.findTokensByClientId(clientId),
+                request(FIND_TOKENS_BY_CLIENT_ID, out -> out.writeUTF(clientId)));
+    }
+
+    /**
+     * This answers a request sent by the {@link PartitionedTokenStore} of
+     * another node, from the tokens held by this node only.
+     *
+     * @param request the encoded request
+     * @return the encoded response
+     * @throws IOException if the request cannot be decoded
+     */
+    public byte[] handle(byte[] request) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+        byte operation = in.readByte();
+        switch (operation) {
+            case STORE_ACCESS_TOKEN: {
+                OAuth2AccessToken accessToken = OAuth2TokenCodec.readAccessToken(in);
+                localTokenStore.storeAccessToken(accessToken, readAuthentication(in));
+                return response(null, null);
+            }
+            case READ_ACCESS_TOKEN:
+                return response(localTokenStore.readAccessToken(in.readUTF()), OAuth2TokenCodec::writeAccessToken);
+            case READ_AUTHENTICATION:
+                return response(localTokenStore.readAuthentication(in.readUTF()), this::writeAuthentication);
+            case REMOVE_ACCESS_TOKEN:
+                localTokenStore.removeAccessToken(new DefaultOAuth2AccessToken(in.readUTF()));
+                return response(null, null);
+            case GET_ACCESS_TOKEN:
+                return response(localTokenStore.getAccessToken(readAuthentication(in)), OAuth2TokenCodec::writeAccessToken);
+            case FIND_TOKENS_BY_CLIENT_ID:
+                return response(localTokenStore.findTokensByClientId(in.readUTF()), this::writeAccessTokens);
+            case FIND_TOKENS_BY_CLIENT_ID_AND_USER_NAME:
+                return response(localTokenStore.findTokensByClientIdAndUserName(in.readUTF(), in.readUTF()), this::writeAccessTokens);
+            case STORE_REFRESH_TOKEN: {
+                OAuth2RefreshToken refreshToken = OAuth2TokenCodec.readRefreshToken(in);
+                localTokenStore.storeRefreshToken(refreshToken, readAuthentication(in));
+                return response(null, null);
+            }
+            case READ_REFRESH_TOKEN:
+                return response(localTokenStore.readRefreshToken(in.readUTF()), OAuth2TokenCodec::writeRefreshToken);
+            case READ_AUTHENTICATION_FOR_REFRESH_TOKEN:
+                return response(localTokenStore.readAuthenticationForRefreshToken(new DefaultOAuth2RefreshToken(in.readUTF())),
+                        this::writeAuthentication);
+            case REMOVE_REFRESH_TOKEN:
+                localTokenStore.removeRefreshToken(new DefaultOAuth2RefreshToken(in.readUTF()));
+                return response(null, null);
+            case READ_ACCESS_TOKEN_VALUE_FOR_REFRESH_TOKEN:
+                return response(localTokenStore.readAccessTokenValueForRefreshToken(in.readUTF()), DataOutputStream::writeUTF);
+            default:
+                throw new IOException("Unknown token store operation " + operation);
+        }
+    }
+
+    /**
+     * This places tokens on a ring of the given nodes and this node, handing
+     * the tokens whose owners changed over to their new owners.
+     *
+     * @param nodes the nodes, named as their {@link TokenStoreTransport}
+     * expects
+     */
+    public void setNodes(Collection<String> nodes) {
+        synchronized (membershipLock) {
+            Set<String> theNodes = new LinkedHashSet<>(nodes);
+            theNodes.add(localNode);
+            ConsistentHashRing oldRing = ring;
+            ConsistentHashRing newRing = new ConsistentHashRing(theNodes, virtualNodeCount);
+            if (newRing.getNodes().equals(oldRing.getNodes())) {
+                return;
+            }
+            LOGGER.info("Token store nodes changed from {} to {}", oldRing.getNodes(), newRing.getNodes());
+            ring = newRing;
+            handOff(oldRing, newRing);
+        }
+    }
+
+    /**
+     * This removes the expired tokens held by this node.
+     */
+    @Scheduled(fixedDelayString = "${oauth2.security.token-store.tick-millis:1000}")
+    public void removeExpiredTokens() {
+        localTokenStore.removeExpiredTokens();
+    }
+
+    public ShardedInMemoryTokenStore getLocalTokenStore() {
+        return localTokenStore;
+    }
+
+    @ManagedAttribute
+    public String getLocalNode() {
+        return localNode;
+    }
+
+    @ManagedAttribute
+    public List<String> getNodes() {
+        return ring.getNodes();
+    }
+
+    @ManagedAttribute
+    public int getReplicaCount() {
+        return replicaCount;
+    }
+
+    @ManagedAttribute
+    public int getLocalAccessTokenCount() {
+        return localTokenStore.getAccessTokenCount();
+    }
+
+    @ManagedAttribute
+    public int getLocalRefreshTokenCount() {
+        return localTokenStore.getRefreshTokenCount();
+    }
+
+    @ManagedAttribute
+    public long getForwardedRequestCount() {
+        return forwardedRequestCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getFailedRequestCount() {
+        return failedRequestCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getHandedOffTokenCount() {
+        return handedOffTokenCount.sum();
+    }
+
+    protected void handOff(ConsistentHashRing oldRing, ConsistentHashRing newRing) {
+        List<OAuth2RefreshToken> droppedRefreshTokens = new ArrayList<>();
+        localTokenStore.forEachRefreshToken((refreshToken, authentication) -> {
+            List<String> oldHolders = oldRing.owners(refreshToken.getValue(), replicaCount);
+            List<String> newHolders = newRing.owners(refreshToken.getValue(), replicaCount);
+            boolean handedOff = handOff(oldHolders, newHolders, newRing,
+                    request(STORE_REFRESH_TOKEN, out -> writeRefreshToken(out, refreshToken, authentication)),
+                    request(READ_REFRESH_TOKEN, out -> out.writeUTF(refreshToken.getValue())));
+            if (handedOff && !newHolders.contains(localNode)) {
+                droppedRefreshTokens.add(refreshToken);
+            }
+        });
+        List<OAuth2AccessToken> droppedAccessTokens = new ArrayList<>();
+        localTokenStore.forEachAccessToken((accessToken, authentication) -> {
+            Set<String> oldHolders = holders(oldRing, accessToken, authentication);
+            Set<String> newHolders = holders(newRing, accessToken, authentication);
+            boolean handedOff = handOff(oldHolders, newHolders, newRing,
+                    request(STORE_ACCESS_TOKEN, out -> writeAccessToken(out, accessToken, authentication)),
+                    request(READ_ACCESS_TOKEN, out -> out.writeUTF(accessToken.getValue())));
+            if (handedOff && !newHolders.contains(localNode)) {
+                droppedAccessTokens.add(accessToken);
+            }
+        });
+        droppedRefreshTokens.forEach(localTokenStore::removeRefreshToken);
+        droppedAccessTokens.forEach(localTokenStore::removeAccessToken);
+    }
+
+    /**
+     * @return whether the token reached all its new holders, so that this
+     * node may drop it
+     */
+    protected boolean handOff(Collection<String> oldHolders, Collection<String> newHolders,
+            ConsistentHashRing newRing, byte[] storeRequest, byte[] readRequest) {
+        // Only the first old holder still on the ring sends, so each token moves once
+        boolean sender = oldHolders.stream()
+                .filter(newRing.getNodes()::contains)
+                .findFirst()
+                .map(localNode::equals)
+                .orElse(false);
+        if (!sender && newHolders.contains(localNode)) {
+            return true;
+        }
+        boolean handedOff = true;
+        for (String node : newHolders) {
+            // Other old holders only send if the sender has not reached the node, before dropping the token
+            if (!oldHolders.contains(node) && (sender || !isHeldBy(node, readRequest))) {
+                handedOff &= exchange(node, storeRequest) != null;
+                handedOffTokenCount.increment();
+            }
+        }
+        return handedOff;
+    }
+
+    protected boolean isHeldBy(String node, byte[] readRequest) {
+        return Optional.ofNullable(exchange(node, readRequest))
+                .map(response -> readResponse(response, in -> Boolean.TRUE))
+                .orElse(false);
+    }
+
+    protected Set<String> holders(ConsistentHashRing theRing, OAuth2AccessToken token,
+            OAuth2Authentication authentication) {
+        Set<String> holders = new LinkedHashSet<>(theRing.owners(token.getValue(), replicaCount));
+        holders.addAll(theRing.owners(authenticationKeyGenerator.extractKey(authentication), replicaCount));
+        Optional.ofNullable(token.getRefreshToken())
+                .ifPresent(refreshToken -> holders.addAll(theRing.owners(refreshToken.getValue(), replicaCount)));
+        return holders;
+    }
+
+    protected List<String> owners(String key) {
+        return ring.owners(key, replicaCount);
+    }
+
+    protected <T> T read(Collection<String> owners, Function<ShardedInMemoryTokenStore, T> localRead,
+            byte[] request, ResponseReader<T> responseReader) {
+        for (String owner : owners) {
+            T value;
+            if (owner.equals(localNode)) {
+                value = localRead.apply(localTokenStore);
+            } else {
+                value = Optional.ofNullable(exchange(owner, request))
+                        .map(response -> readResponse(response, responseReader))
+                        .orElse(null);
+            }
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    protected void write(Collection<String> owners, Consumer<ShardedInMemoryTokenStore> localWrite, byte[] request) {
+        for (String owner : owners) {
+            if (owner.equals(localNode)) {
+                localWrite.accept(localTokenStore);
+            } else {
+                exchange(owner, request);
+            }
+        }
+    }
+
+    protected Collection<OAuth2AccessToken> findTokens(Function<ShardedInMemoryTokenStore, Collection<OAuth2AccessToken>> localFind,
+            byte[] request) {
+        Map<String, OAuth2AccessToken> accessTokens = new LinkedHashMap<>();
+        for (String node : ring.getNodes()) {
+            Collection<OAuth2AccessToken> nodeAccessTokens;
+            if (node.equals(localNode)) {
+                nodeAccessTokens = localFind.apply(localTokenStore);
+            } else {
+                nodeAccessTokens = Optional.ofNullable(exchange(node, request))
+                        .map(response -> readResponse(response, this::readAccessTokens))
+                        .orElse(Collections.emptyList());
+            }
+            nodeAccessTokens.forEach(accessToken -> accessTokens.putIfAbsent(accessToken.getValue(), accessToken));
+        }
+        return Collections.unmodifiableCollection(accessTokens.values());
+    }
+
+    /**
+     * @return the response, or {@code null} if the node could not answer
+     */
+    protected byte[] exchange(String node, byte[] request) {
+        forwardedRequestCount.increment();
+        try {
+            return transport.exchange(node, request);
+        } catch (IOException ex) {
+            failedRequestCount.increment();
+            LOGGER.warn("Token store request to {} failed", node, ex);
+            return null;
+        }
+    }
+
+    protected void writeAccessToken(DataOutputStream out, OAuth2AccessToken token,
+            OAuth2Authentication authentication) throws IOException {
+        OAuth2TokenCodec.writeAccessToken(out, token);
+        writeAuthentication(out, authentication);
+    }
+
+    protected void writeRefreshToken(DataOutputStream out, OAuth2RefreshToken refreshToken,
+            OAuth2Authentication authentication) throws IOException {
+        OAuth2TokenCodec.writeRefreshToken(out, refreshToken);
+        writeAuthentication(out, authentication);
+    }
+
+    protected void writeAuthentication(DataOutputStream out, OAuth2Authentication authentication) throws IOException {
+        OAuth2TokenCodec.writeBytes(out, authenticationCodec.encode(authentication));
+    }
+
+    protected OAuth2Authentication readAuthentication(DataInputStream in) throws IOException {
+        return authenticationCodec.decode(OAuth2TokenCodec.readBytes(in));
+    }
+
+    protected void writeAccessTokens(DataOutputStream out, Collection<OAuth2AccessToken> accessTokens) throws IOException {
+        out.writeInt(accessTokens.size());
+        for (OAuth2AccessToken accessToken : accessTokens) {
+            OAuth2TokenCodec.writeAccessToken(out, accessToken);
+        }
+    }
+
+    protected Collection<OAuth2AccessToken> readAccessTokens(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<OAuth2AccessToken> accessTokens = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            accessTokens.add(OAuth2TokenCodec.readAccessToken(in));
+        }
+        return accessTokens;
+    }
+
+    protected static byte[] request(byte operation, RequestWriter requestWriter) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(operation);
+            requestWriter.write(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return a response of whether there is a value, followed by the value
+     */
+    protected static <T> byte[] response(T value, ResponseWriter<T> responseWriter) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeBoolean(value != null);
+        if (value != null) {
+            responseWriter.write(out, value);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    protected static <T> T readResponse(byte[] response, ResponseReader<T> responseReader) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(response));
+            return in.readBoolean() ? responseReader.read(in) : null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @FunctionalInterface
+    protected interface RequestWriter {
+
+        void write(DataOutputStream out) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    protected interface ResponseWriter<T> {
+
+        void write(DataOutputStream out, T value) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    protected interface ResponseReader<T> {
+
+        T read(DataInputStream in) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.io.IOException;
+import javax.inject.Inject;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@RestController
+@ConditionalOnProperty(name = "oauth2.security.token-store",
+        havingValue = "partitioned")
+public class TokenStoreEndpoint {
+
+    public static final String PATH = "/internal/token-store";
+
+    protected final PartitionedTokenStore partitionedTokenStore;
+
+    protected final ClusterSecret clusterSecret;
+
+    @Inject
+    public TokenStoreEndpoint(PartitionedTokenStore partitionedTokenStore, ClusterSecret clusterSecret) {
+        this.partitionedTokenStore = partitionedTokenStore;
+        this.clusterSecret = clusterSecret;
+    }
+
+    @RequestMapping(path = PATH,
+            method = RequestMethod.POST,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> handle(@RequestHeader(name = ClusterSecret.HEADER, required = false) String requestSecret,
+            @RequestBody byte[] request) {
+        if (!clusterSecret.matches(requestSecret)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(partitionedTokenStore.handle(request));
+        } catch (IOException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.io.IOException;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@FunctionalInterface
+public interface TokenStoreTransport {
+
+    /**
+     * @param node the node to send the request to
+     * @param request the encoded request
+     * @return the encoded response
+     * @throws IOException if the node cannot be reached or refuses the
+     * request
+     */
+    byte[] exchange(String node, byte[] request) throws IOException;
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class UserCacheInvalidationBroadcaster {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserCacheInvalidationBroadcaster.class);
+
+    protected final DiscoveryClient discoveryClient;
+
+    protected final ClusterSecret clusterSecret;
+
+    protected final String serviceId;
+
+    protected final RestTemplate restTemplate;
+
+    protected final ExecutorService executorService;
+
+    protected final LongAdder sentCount;
+
+    protected final LongAdder failedCount;
+
+    protected final LongAdder skippedCount;
+
+    protected final AtomicBoolean skippedWarned;
+
+    @Inject
+    public UserCacheInvalidationBroadcaster(DiscoveryClient discoveryClient,
+            ClusterSecret clusterSecret,
+            @Value("${spring.application.name}") String serviceId,
+            @Value("${oauth2.security.user-cache.broadcast-timeout-millis:1000}") int timeoutMillis) {
+        this.discoveryClient = discoveryClient;
+        this.clusterSecret = clusterSecret;
+        this.serviceId = serviceId;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMillis);
+        requestFactory.setReadTimeout(timeoutMillis);
+        restTemplate = new RestTemplate(requestFactory);
+        executorService = Executors.newSingleThreadExecutor();
+        sentCount = new LongAdder();
+        failedCount = new LongAdder();
+        skippedCount = new LongAdder();
+        skippedWarned = new AtomicBoolean();
+    }
+
+    public void removeUserFromCache(String username) {
+        broadcast(username);
+    }
+
+    public void removeAllUsersFromCache() {
+        broadcast("");
+    }
+
+    /**
+     * Without the cluster secret, the other nodes would keep serving changed
+     * accounts from their user caches, so like the partitioned token store
+     * this refuses to start once other instances of the service are
+     * registered. A single node needs no secret.
+     */
+    @PostConstruct
+    public void checkClusterSecret() {
+        if (!clusterSecret.isEnabled()) {
+            List<String> otherNodes = otherNodes();
+            if (!otherNodes.isEmpty()) {
+                throw new IllegalStateException("oauth2.security.cluster.secret must be set for the user caches of "
+                        + otherNodes + " to be invalidated");
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdown();
+    }
+
+    @ManagedAttribute
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    /**
+     * @param username the username, or empty for every account
+     */
+    protected void broadcast(String username) {
+        if (!clusterSecret.isEnabled()) {
+            executorService.execute(() -> {
+                List<String> otherNodes = otherNodes();
+                if (otherNodes.isEmpty()) {
+                    return;
+                }
+                skippedCount.increment();
+                if (skippedWarned.compareAndSet(false, true)) {
+                    LOGGER.warn("oauth2.security.cluster.secret is not set, {} will keep serving changed accounts "
+                            + "from their user caches until they expire", otherNodes);
+                }
+            });
+            return;
+        }
+        executorService.execute(() -> {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.TEXT_PLAIN);
+            headers.set(ClusterSecret.HEADER, clusterSecret.getSecret());
+            HttpEntity<String> request = new HttpEntity<>(username, headers);
+            for (String node : otherNodes()) {
+                try {
+                    restTemplate.postForLocation("http://" + node + UserCacheInvalidationEndpoint.PATH, request);
+                    sentCount.increment();
+                } catch (RestClientException ex) {
+                    failedCount.increment();
+                    LOGGER.warn("Unable to remove {} from the user cache of {}", username, node, ex);
+                }
+            }
+        });
+    }
+
+    protected List<String> otherNodes() {
+        ServiceInstance localServiceInstance = discoveryClient.getLocalServiceInstance();
+        String localNode = localServiceInstance.getHost() + ':' + localServiceInstance.getPort();
+        return discoveryClient.getInstances(serviceId).stream()
+                .map(serviceInstance -> serviceInstance.getHost() + ':' + serviceInstance.getPort())
+                .filter(node -> !node.equals(localNode))
+                .collect(Collectors.toList());
+    }
+
+}
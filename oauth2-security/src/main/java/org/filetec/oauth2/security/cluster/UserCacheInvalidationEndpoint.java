@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import javax.inject.Inject;
+import org.filetec.oauth2.security.cache.AccountUserCache;
+import org.filetec.oauth2.security.cache.AccountUserSecondLevelCache;
+import org.filetec.oauth2.security.service.VerifiedCredentialCache;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@RestController
+public class UserCacheInvalidationEndpoint {
+
+    public static final String PATH = "/internal/user-cache/invalidations";
+
+    protected final AccountUserCache accountUserCache;
+
+    protected final VerifiedCredentialCache verifiedCredentialCache;
+
+    protected final AccountUserSecondLevelCache accountUserSecondLevelCache;
+
+    protected final ClusterSecret clusterSecret;
+
+    @Inject
+    public UserCacheInvalidationEndpoint(AccountUserCache accountUserCache,
+            VerifiedCredentialCache verifiedCredentialCache,
+            AccountUserSecondLevelCache accountUserSecondLevelCache,
+            ClusterSecret clusterSecret) {
+        this.accountUserCache = accountUserCache;
+        this.verifiedCredentialCache = verifiedCredentialCache;
+        this.accountUserSecondLevelCache = accountUserSecondLevelCache;
+        this.clusterSecret = clusterSecret;
+    }
+
+    @RequestMapping(path = PATH,
+            method = RequestMethod.POST,
+            consumes = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<Void> invalidate(@RequestHeader(name = ClusterSecret.HEADER, required = false) String requestSecret,
+            @RequestBody(required = false) String username) {
+        if (!clusterSecret.matches(requestSecret)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        // Evicted first, so the caches below are not refilled from stale entities
+        accountUserSecondLevelCache.evictAccountUsers();
+        if (username == null || username.isEmpty()) {
+            accountUserCache.removeAllUsersFromCache();
+            verifiedCredentialCache.invalidateAll();
+        } else {
+            accountUserCache.removeUserFromCache(username);
+            verifiedCredentialCache.invalidate(username);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+}
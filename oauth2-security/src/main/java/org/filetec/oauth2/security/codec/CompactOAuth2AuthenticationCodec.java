@@ -0,0 +1,327 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.registry.CompactUserDetails;
+import org.filetec.oauth2.security.registry.GrantedAuthorityRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ConditionalOnProperty(name = "oauth2.security.authentication-codec",
+        havingValue = "compact",
+        matchIfMissing = true)
+public class CompactOAuth2AuthenticationCodec implements OAuth2AuthenticationCodec {
+
+    public static final byte MAGIC = 0x4F;
+
+    public static final byte VERSION = 2;
+
+    /**
+     * The version of authentications without a user principal or user
+     * details, which nodes that only read this version still decode.
+     */
+    public static final byte STRING_PRINCIPAL_VERSION = 1;
+
+    protected static final int APPROVED = 1;
+
+    protected static final int REDIRECT_URI = 1 << 1;
+
+    protected static final int USER_AUTHENTICATION = 1 << 2;
+
+    protected static final int USER_PRINCIPAL = 1 << 3;
+
+    protected static final int USER_DETAILS = 1 << 4;
+
+    protected static final int COMPACT_USER_PRINCIPAL = 1 << 5;
+
+    protected final JavaSerializationOAuth2AuthenticationCodec javaSerializationCodec;
+
+    protected final GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    @Inject
+    public CompactOAuth2AuthenticationCodec(GrantedAuthorityRegistry grantedAuthorityRegistry) {
+        javaSerializationCodec = new JavaSerializationOAuth2AuthenticationCodec();
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
+    }
+
+    /**
+     * {@inheritDoc }
+     * <p>
+     * Authentications this format cannot rebuild exactly are Java-serialized
+     * instead, those with request extensions or details, and those whose user
+     * authentication is not a {@link UsernamePasswordAuthenticationToken}
+     * without credentials, whose principal is neither a {@link String}, a
+     * {@link User} nor a {@link CompactUserDetails}, or whose details are not
+     * a map of strings.
+     */
+    @Override
+    public byte[] encode(OAuth2Authentication authentication) {
+        OAuth2Request request = authentication.getOAuth2Request();
+        Authentication userAuthentication = authentication.getUserAuthentication();
+        if (!request.getExtensions().isEmpty() || authentication.getDetails() != null
+                || (userAuthentication != null && !isCompact(userAuthentication))) {
+            return javaSerializationCodec.encode(authentication);
+        }
+        boolean userPrincipal = userAuthentication != null && userAuthentication.getPrincipal() instanceof User;
+        boolean compactUserPrincipal = userAuthentication != null
+                && userAuthentication.getPrincipal() instanceof CompactUserDetails;
+        boolean userDetails = userAuthentication != null && userAuthentication.getDetails() != null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(MAGIC);
+            output.writeByte(userPrincipal || compactUserPrincipal || userDetails ? VERSION : STRING_PRINCIPAL_VERSION);
+            output.writeByte((request.isApproved() ? APPROVED : 0)
+                    | (request.getRedirectUri() != null ? REDIRECT_URI : 0)
+                    | (userAuthentication != null ? USER_AUTHENTICATION : 0)
+                    | (userPrincipal ? USER_PRINCIPAL : 0)
+                    | (compactUserPrincipal ? COMPACT_USER_PRINCIPAL : 0)
+                    | (userDetails ? USER_DETAILS : 0));
+            writeString(output, request.getClientId());
+            writeStrings(output, request.getScope());
+            writeStrings(output, request.getResourceIds());
+            writeStrings(output, request.getResponseTypes());
+            writeAuthorities(output, request.getAuthorities());
+            writeVarInt(output, request.getRequestParameters().size());
+            for (Map.Entry<String, String> parameter : request.getRequestParameters().entrySet()) {
+                writeString(output, parameter.getKey());
+                writeString(output, parameter.getValue());
+            }
+            if (request.getRedirectUri() != null) {
+                writeString(output, request.getRedirectUri());
+            }
+            if (userAuthentication != null) {
+                writeString(output, userAuthentication.getName());
+                writeAuthorities(output, userAuthentication.getAuthorities());
+            }
+            if (userPrincipal || compactUserPrincipal) {
+                UserDetails user = (UserDetails) userAuthentication.getPrincipal();
+                output.writeByte((user.isEnabled() ? 1 : 0)
+                        | (user.isAccountNonExpired() ? 1 << 1 : 0)
+                        | (user.isCredentialsNonExpired() ? 1 << 2 : 0)
+                        | (user.isAccountNonLocked() ? 1 << 3 : 0));
+                writeAuthorities(output, user.getAuthorities());
+            }
+            if (userDetails) {
+                Map<?, ?> details = (Map<?, ?>) userAuthentication.getDetails();
+                writeVarInt(output, details.size());
+                for (Map.Entry<?, ?> detail : details.entrySet()) {
+                    writeString(output, (String) detail.getKey());
+                    writeString(output, (String) detail.getValue());
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to encode authentication", ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public OAuth2Authentication decode(byte[] bytes) {
+        if (JavaSerializationOAuth2AuthenticationCodec.isJavaSerialized(bytes)) {
+            return javaSerializationCodec.decode(bytes);
+        }
+        if (bytes.length < 2 || bytes[0] != MAGIC) {
+            throw new IllegalArgumentException("Unknown authentication format");
+        }
+        if (bytes[1] != VERSION && bytes[1] != STRING_PRINCIPAL_VERSION) {
+            throw new IllegalArgumentException("Unsupported authentication format version " + bytes[1]);
+        }
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2))) {
+            int flags = input.readUnsignedByte();
+            String clientId = readString(input);
+            Set<String> scope = readScopes(input);
+            Set<String> resourceIds = readStrings(input);
+            Set<String> responseTypes = readStrings(input);
+            List<GrantedAuthority> authorities = readAuthorities(input);
+            Map<String, String> requestParameters = readStringMap(input);
+            String redirectUri = (flags & REDIRECT_URI) != 0 ? readString(input) : null;
+            OAuth2Request request = new OAuth2Request(requestParameters, clientId, authorities,
+                    (flags & APPROVED) != 0, scope, resourceIds, redirectUri, responseTypes, null);
+            UsernamePasswordAuthenticationToken userAuthentication = null;
+            if ((flags & USER_AUTHENTICATION) != 0) {
+                String username = readString(input);
+                List<GrantedAuthority> userAuthorities = readAuthorities(input);
+                Object principal = username;
+                if ((flags & (USER_PRINCIPAL | COMPACT_USER_PRINCIPAL)) != 0) {
+                    int userFlags = input.readUnsignedByte();
+                    // The password is not kept, as with erased credentials
+                    User user = new User(username, "", (userFlags & 1) != 0, (userFlags & 1 << 1) != 0,
+                            (userFlags & 1 << 2) != 0, (userFlags & 1 << 3) != 0, readAuthorities(input));
+                    principal = (flags & COMPACT_USER_PRINCIPAL) != 0
+                            ? new CompactUserDetails(user, grantedAuthorityRegistry)
+                            : user;
+                }
+                userAuthentication = new UsernamePasswordAuthenticationToken(principal, null, userAuthorities);
+                if ((flags & USER_DETAILS) != 0) {
+                    userAuthentication.setDetails(readStringMap(input));
+                }
+            }
+            return new OAuth2Authentication(request, userAuthentication);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Truncated authentication", ex);
+        }
+    }
+
+    /**
+     * @param userAuthentication the user authentication
+     * @return whether this format rebuilds it exactly
+     */
+    protected boolean isCompact(Authentication userAuthentication) {
+        Object principal = userAuthentication.getPrincipal();
+        Object details = userAuthentication.getDetails();
+        return userAuthentication.getClass() == UsernamePasswordAuthenticationToken.class
+                && userAuthentication.getCredentials() == null
+                && (principal instanceof String || (principal != null && (principal.getClass() == User.class
+                        || principal.getClass() == CompactUserDetails.class)))
+                && (details == null || (details instanceof Map && ((Map<?, ?>) details).entrySet().stream()
+                        .allMatch(detail -> detail.getKey() instanceof String && detail.getValue() instanceof String)));
+    }
+
+    protected Map<String, String> readStringMap(DataInputStream input) throws IOException {
+        int size = readLength(input);
+        Map<String, String> strings = new LinkedHashMap<>(size * 2);
+        for (int index = 0; index < size; index++) {
+            strings.put(readString(input), readString(input));
+        }
+        return strings;
+    }
+
+    protected void writeAuthorities(DataOutputStream output, Collection<? extends GrantedAuthority> authorities)
+            throws IOException {
+        writeVarInt(output, authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            writeString(output, authority.getAuthority());
+        }
+    }
+
+    protected List<GrantedAuthority> readAuthorities(DataInputStream input) throws IOException {
+        int size = readLength(input);
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            authorities.add(grantedAuthorityRegistry.authority(readString(input)));
+        }
+        return authorities;
+    }
+
+    protected void writeStrings(DataOutputStream output, Collection<String> strings) throws IOException {
+        writeVarInt(output, strings.size());
+        for (String string : strings) {
+            writeString(output, string);
+        }
+    }
+
+    protected Set<String> readStrings(DataInputStream input) throws IOException {
+        int size = readLength(input);
+        Set<String> strings = new LinkedHashSet<>(size * 2);
+        for (int index = 0; index < size; index++) {
+            strings.add(readString(input));
+        }
+        return strings;
+    }
+
+    protected Set<String> readScopes(DataInputStream input) throws IOException {
+        int size = readLength(input);
+        Set<String> scopes = new LinkedHashSet<>(size * 2);
+        for (int index = 0; index < size; index++) {
+            scopes.add(grantedAuthorityRegistry.scope(readString(input)));
+        }
+        return scopes;
+    }
+
+    protected void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    protected String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[readLength(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    protected void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    protected int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int part = input.readUnsignedByte();
+            value |= (part & 0x7F) << shift;
+            if ((part & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed length");
+    }
+
+    /**
+     * This reads the length of a string or the size of a collection, each of
+     * whose bytes or elements takes at least one of the remaining bytes.
+     *
+     * @param input the input
+     * @return the length
+     * @throws IOException
+     * @throws IllegalArgumentException if the length is negative or larger
+     * than the remaining bytes
+     */
+    protected int readLength(DataInputStream input) throws IOException {
+        int length = readVarInt(input);
+        if (length < 0 || length > input.available()) {
+            throw new IllegalArgumentException("Malformed length " + length);
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.codec;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ConditionalOnProperty(name = "oauth2.security.authentication-codec",
+        havingValue = "java")
+public class JavaSerializationOAuth2AuthenticationCodec implements OAuth2AuthenticationCodec {
+
+    /**
+     * The first two bytes of every Java serialization stream.
+     */
+    public static final byte[] STREAM_MAGIC = {(byte) 0xAC, (byte) 0xED};
+
+    public static boolean isJavaSerialized(byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == STREAM_MAGIC[0] && bytes[1] == STREAM_MAGIC[1];
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public byte[] encode(OAuth2Authentication authentication) {
+        return SerializationUtils.serialize(authentication);
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public OAuth2Authentication decode(byte[] bytes) {
+        if (!isJavaSerialized(bytes)) {
+            throw new IllegalArgumentException("Not a Java-serialized authentication");
+        }
+        return SerializationUtils.deserialize(bytes);
+    }
+
+}
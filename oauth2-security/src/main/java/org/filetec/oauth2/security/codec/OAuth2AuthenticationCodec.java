@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.codec;
+
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public interface OAuth2AuthenticationCodec {
+
+    /**
+     * This encodes an {@link OAuth2Authentication} for storage.
+     *
+     * @param authentication the {@link OAuth2Authentication} to encode
+     * @return the encoded {@link OAuth2Authentication}
+     */
+    byte[] encode(OAuth2Authentication authentication);
+
+    /**
+     * This decodes an {@link OAuth2Authentication} previously encoded by this
+     * or an older codec.
+     *
+     * @param bytes the encoded {@link OAuth2Authentication}
+     * @return the {@link OAuth2Authentication}
+     * @throws IllegalArgumentException if the bytes are not in a supported
+     * format
+     */
+    OAuth2Authentication decode(byte[] bytes);
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class OAuth2TokenCodec {
+
+    public static final long NO_EXPIRATION = -1L;
+
+    private static final byte STRING = 1;
+
+    private static final byte INTEGER = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte DOUBLE = 4;
+
+    private static final byte BOOLEAN = 5;
+
+    protected OAuth2TokenCodec() {
+    }
+
+    public static void writeAccessToken(DataOutput out, OAuth2AccessToken token) throws IOException {
+        out.writeUTF(token.getValue());
+        out.writeUTF(token.getTokenType());
+        out.writeLong(Optional.ofNullable(token.getExpiration())
+                .map(Date::getTime)
+                .orElse(NO_EXPIRATION));
+        Set<String> scope = Optional.ofNullable(token.getScope())
+                .orElse(new LinkedHashSet<>());
+        out.writeInt(scope.size());
+        for (String aScope : scope) {
+            out.writeUTF(aScope);
+        }
+        out.writeBoolean(token.getRefreshToken() != null);
+        if (token.getRefreshToken() != null) {
+            writeRefreshToken(out, token.getRefreshToken());
+        }
+        writeAdditionalInformation(out, Optional.ofNullable(token.getAdditionalInformation())
+                .orElse(Collections.emptyMap()));
+    }
+
+    public static OAuth2AccessToken readAccessToken(DataInput in) throws IOException {
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(in.readUTF());
+        accessToken.setTokenType(in.readUTF());
+        long expiration = in.readLong();
+        accessToken.setExpiration(expiration == NO_EXPIRATION ? null : new Date(expiration));
+        int scopeCount = in.readInt();
+        Set<String> scope = new LinkedHashSet<>();
+        for (int index = 0; index < scopeCount; index++) {
+            scope.add(in.readUTF());
+        }
+        accessToken.setScope(scope);
+        if (in.readBoolean()) {
+            accessToken.setRefreshToken(readRefreshToken(in));
+        }
+        accessToken.setAdditionalInformation(readAdditionalInformation(in));
+        return accessToken;
+    }
+
+    public static void writeRefreshToken(DataOutput out, OAuth2RefreshToken refreshToken) throws IOException {
+        out.writeUTF(refreshToken.getValue());
+        out.writeLong(expiration(refreshToken));
+    }
+
+    public static OAuth2RefreshToken readRefreshToken(DataInput in) throws IOException {
+        String value = in.readUTF();
+        long expiration = in.readLong();
+        return expiration == NO_EXPIRATION ? new DefaultOAuth2RefreshToken(value)
+                : new DefaultExpiringOAuth2RefreshToken(value, new Date(expiration));
+    }
+
+    /**
+     * @param out the {@link DataOutput} to write to
+     * @param additionalInformation the additional information of an access
+     * token
+     * @throws IOException if it cannot be written
+     * @throws IllegalArgumentException if a value is not a string, integer,
+     * long, double or boolean
+     */
+    public static void writeAdditionalInformation(DataOutput out, Map<String, Object> additionalInformation) throws IOException {
+        out.writeInt(additionalInformation.size());
+        for (Map.Entry<String, Object> entry : additionalInformation.entrySet()) {
+            out.writeUTF(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                out.writeByte(STRING);
+                out.writeUTF((String) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                throw new IllegalArgumentException("Unsupported additional information " + entry.getKey() + ": "
+                        + (value == null ? null : value.getClass().getName()));
+            }
+        }
+    }
+
+    public static Map<String, Object> readAdditionalInformation(DataInput in) throws IOException {
+        int entryCount = in.readInt();
+        Map<String, Object> additionalInformation = new LinkedHashMap<>();
+        for (int index = 0; index < entryCount; index++) {
+            String key = in.readUTF();
+            byte type = in.readByte();
+            switch (type) {
+                case STRING:
+                    additionalInformation.put(key, in.readUTF());
+                    break;
+                case INTEGER:
+                    additionalInformation.put(key, in.readInt());
+                    break;
+                case LONG:
+                    additionalInformation.put(key, in.readLong());
+                    break;
+                case DOUBLE:
+                    additionalInformation.put(key, in.readDouble());
+                    break;
+                case BOOLEAN:
+                    additionalInformation.put(key, in.readBoolean());
+                    break;
+                default:
+                    throw new IOException("Unknown additional information type " + type);
+            }
+        }
+        return additionalInformation;
+    }
+
+    public static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param refreshToken the {@link OAuth2RefreshToken}
+     * @return the expiration in milliseconds, or {@link #NO_EXPIRATION}
+     */
+    public static long expiration(OAuth2RefreshToken refreshToken) {
+        return refreshToken instanceof ExpiringOAuth2RefreshToken
+                && ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() != null
+                ? ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration().getTime()
+                : NO_EXPIRATION;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.model;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class AccessTokenProjection {
+
+    protected final String value;
+
+    protected final Date expiration;
+
+    protected final String tokenType;
+
+    protected final String refreshTokenValue;
+
+    protected final Date refreshTokenExpiration;
+
+    protected final byte[] scopeIds;
+
+    public AccessTokenProjection(String value, Date expiration, String tokenType,
+            String refreshTokenValue, Date refreshTokenExpiration, byte[] scopeIds) {
+        this.value = value;
+        this.expiration = expiration;
+        this.tokenType = tokenType;
+        this.refreshTokenValue = refreshTokenValue;
+        this.refreshTokenExpiration = refreshTokenExpiration;
+        this.scopeIds = scopeIds;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public String getTokenType() {
+        return tokenType;
+    }
+
+    public String getRefreshTokenValue() {
+        return refreshTokenValue;
+    }
+
+    public Date getRefreshTokenExpiration() {
+        return refreshTokenExpiration;
+    }
+
+    public byte[] getScopeIds() {
+        return scopeIds;
+    }
+
+    /**
+     * This assembles the access token of this projection, with its refresh
+     * token if it has one, and its scopes decoded from {@link #scopeIds}.
+     *
+     * @param scopeDecoder the decoder of {@link #scopeIds}
+     * @return the {@link OAuth2AccessToken}
+     */
+    public OAuth2AccessToken toAccessToken(Function<byte[], Set<String>> scopeDecoder) {
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(value);
+        accessToken.setExpiration(expiration);
+        accessToken.setTokenType(tokenType);
+        accessToken.setScope(scopeDecoder.apply(scopeIds));
+        Optional.ofNullable(refreshTokenValue)
+                .ifPresent(theRefreshTokenValue -> accessToken.setRefreshToken(new DefaultExpiringOAuth2RefreshToken(
+                        theRefreshTokenValue, refreshTokenExpiration)));
+        return accessToken;
+    }
+
+    /**
+     * This assembles access tokens from their projections, in the order they
+     * were read.
+     *
+     * @param accessTokenProjections the projections, one per access token
+     * @param scopeDecoder the decoder of {@link #scopeIds}
+     * @return the {@link OAuth2AccessToken}s
+     */
+    public static List<OAuth2AccessToken> toAccessTokens(List<AccessTokenProjection> accessTokenProjections,
+            Function<byte[], Set<String>> scopeDecoder) {
+        return accessTokenProjections.stream()
+                .map(accessTokenProjection -> accessTokenProjection.toAccessToken(scopeDecoder))
+                .collect(Collectors.toList());
+    }
+
+}
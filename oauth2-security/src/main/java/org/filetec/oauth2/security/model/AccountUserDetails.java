@@ -43,6 +43,8 @@ import javax.persistence.Table;
 import javax.persistence.TableGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.data.annotation.CreatedBy;
 
 /**
@@ -64,10 +66,11 @@ public class AccountUserDetails implements Comparable<AccountUserDetails>, UserD
     @Id
     @Column(nullable = false,
             name = "id")
-    @TableGenerator(initialValue = 1,
+    @TableGenerator(allocationSize = 50,
+            initialValue = 1,
             name = "account_user_details_id_generator",
             pkColumnName = "table_name",
-            pkColumnValue = "account_user_details",
+            pkColumnValue = "account_user_details_pooled_lo",
             table = "id_generator",
             valueColumnName = "available_id")
     @GeneratedValue(generator = "account_user_details_id_generator",
@@ -85,6 +88,7 @@ public class AccountUserDetails implements Comparable<AccountUserDetails>, UserD
                     referencedColumnName = "id"),
             inverseForeignKey = @ForeignKey(ConstraintMode.CONSTRAINT),
             name = "account_user_details_granted_authority")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @NotNull
     protected Collection<AccountUserGrantedAuthority> grantedAuthorities;
 
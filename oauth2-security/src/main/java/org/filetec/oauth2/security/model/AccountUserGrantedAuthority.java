@@ -56,10 +56,11 @@ public class AccountUserGrantedAuthority
     @Id
     @Column(nullable = false,
             name = "id")
-    @TableGenerator(initialValue = 1,
+    @TableGenerator(allocationSize = 50,
+            initialValue = 1,
             name = "account_user_granted_authority_id_generator",
             pkColumnName = "table_name",
-            pkColumnValue = "user_granted_authority",
+            pkColumnValue = "user_granted_authority_pooled_lo",
             table = "id_generator",
             valueColumnName = "available_id")
     @GeneratedValue(generator = "account_user_granted_authority_id_generator",
@@ -67,10 +67,11 @@ public class ApplicationClientDetails
     @Id
     @Column(nullable = false,
             name = "id")
-    @TableGenerator(initialValue = 1,
+    @TableGenerator(allocationSize = 50,
+            initialValue = 1,
             name = "account_client_details_id_generator",
             pkColumnName = "table_name",
-            pkColumnValue = "account_client_details",
+            pkColumnValue = "account_client_details_pooled_lo",
             table = "id_generator",
             valueColumnName = "available_id")
     @GeneratedValue(generator = "account_client_details_id_generator",
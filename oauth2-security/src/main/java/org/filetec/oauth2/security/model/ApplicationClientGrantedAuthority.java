@@ -53,10 +53,11 @@ public class ApplicationClientGrantedAuthority
     @Id
     @Column(nullable = false,
             name = "id")
-    @TableGenerator(initialValue = 1,
+    @TableGenerator(allocationSize = 50,
+            initialValue = 1,
             name = "application_client_granted_authority_id_generator",
             pkColumnName = "table_name",
-            pkColumnValue = "application_client_granted_authority",
+            pkColumnValue = "application_client_granted_authority_pooled_lo",
             table = "id_generator",
             valueColumnName = "available_id")
     @GeneratedValue(generator = "application_client_granted_authority_id_generator",
@@ -17,19 +17,18 @@ package org.filetec.oauth2.security.model;
 
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
-import javax.persistence.CollectionTable;
 import javax.persistence.Column;
 import javax.persistence.ConstraintMode;
-import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
-import javax.persistence.FetchType;
 import javax.persistence.ForeignKey;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.OneToOne;
@@ -37,6 +36,7 @@ import javax.persistence.Table;
 import javax.persistence.TableGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Transient;
 import javax.validation.constraints.NotNull;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
@@ -46,7 +46,10 @@ import org.springframework.security.oauth2.common.OAuth2RefreshToken;
  * @author warren.nocos
  */
 @Entity
-@Table(name = "application_oauth2_access_token")
+@Table(name = "application_oauth2_access_token",
+        indexes = {
+            @Index(name = "application_oauth2_access_token_client_id_user_name_index",
+                    columnList = "client_id, user_name")})
 public class ApplicationOAuth2AccessToken implements OAuth2AccessToken, Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -56,34 +59,29 @@ public class ApplicationOAuth2AccessToken implements OAuth2AccessToken, Serializ
     @Id
     @Column(nullable = false,
             name = "id")
-    @TableGenerator(initialValue = 1,
+    @TableGenerator(allocationSize = 1000,
+            initialValue = 1,
             name = "application_oauth2_access_token_id_generator",
             pkColumnName = "table_name",
-            pkColumnValue = "application_oauth2_access_token",
+            pkColumnValue = "application_oauth2_access_token_pooled_lo",
             table = "id_generator",
             valueColumnName = "available_id")
     @GeneratedValue(generator = "application_oauth2_access_token_id_generator",
             strategy = GenerationType.TABLE)
     protected BigInteger id;
 
-    @ElementCollection(fetch = FetchType.EAGER,
-            targetClass = String.class)
-    @CollectionTable(foreignKey = @ForeignKey(ConstraintMode.CONSTRAINT),
-            joinColumns = @JoinColumn(name = "application_oauth2_access_token_id",
-                    nullable = false,
-                    referencedColumnName = "id"),
-            name = "application_oauth2_access_token_scope")
-    @Column(name = "scope",
-            nullable = false)
-    @NotNull
+    // Encoded from scope with ScopeDictionary when written, and decoded into scope when loaded
+    @Column(name = "scope_ids",
+            length = 255)
+    protected byte[] scopeIds;
+
+    @Transient
     protected Set<String> scope;
 
     @OneToOne(targetEntity = ApplicationOAuth2RefreshToken.class)
     @JoinColumn(foreignKey = @ForeignKey(ConstraintMode.CONSTRAINT),
             name = "application_oAuth2_refresh_token_id",
-            nullable = false,
             referencedColumnName = "id")
-    @NotNull
     protected ApplicationOAuth2RefreshToken applicationOAuth2RefreshToken;
 
     @Column(name = "token_type",
@@ -104,16 +102,26 @@ public class ApplicationOAuth2AccessToken implements OAuth2AccessToken, Serializ
     protected String value;
 
     @Column(name = "oauth2_authentication_key",
-            nullable = false)
+            nullable = false,
+            unique = true)
     @NotNull
     protected String oauth2AuthenticationKey;
 
+    @Column(name = "client_id")
+    protected String clientId;
+
+    @Column(name = "user_name")
+    protected String userName;
+
     @Lob
     @Column(name = "serialized_oAuth2_authentication",
             nullable = false)
     @NotNull
     protected byte[] serializedOAuth2Authentication;
 
+    @Column(name = "serialized_oAuth2_authentication_digest")
+    protected String serializedOAuth2AuthenticationDigest;
+
     public ApplicationOAuth2AccessToken() {
         tokenType = DEFAULT_TOKEN_TYPE;
     }
@@ -128,7 +136,7 @@ public class ApplicationOAuth2AccessToken implements OAuth2AccessToken, Serializ
 
     @Override
     public Map<String, Object> getAdditionalInformation() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return Collections.emptyMap();
     }
 
     @Override
@@ -138,6 +146,16 @@ public class ApplicationOAuth2AccessToken implements OAuth2AccessToken, Serializ
 
     public void setScope(Set<String> scope) {
         this.scope = scope;
+        // Left for AccessTokenScopeListener to encode, which also marks the row as changed
+        this.scopeIds = null;
+    }
+
+    public byte[] getScopeIds() {
+        return scopeIds;
+    }
+
+    public void setScopeIds(byte[] scopeIds) {
+        this.scopeIds = scopeIds;
     }
 
     @Override
@@ -183,7 +201,7 @@ public class ApplicationOAuth2AccessToken implements OAuth2AccessToken, Serializ
     }
 
     public void setExpiresIn(int expiresIn) {
-        setExpiration(new Date(System.currentTimeMillis() + expiresIn));
+        setExpiration(new Date(System.currentTimeMillis() + (expiresIn * 1000L)));
     }
 
     @Override
@@ -203,6 +221,22 @@ public class ApplicationOAuth2AccessToken implements OAuth2AccessToken, Serializ
         this.oauth2AuthenticationKey = oauth2AuthenticationKey;
     }
 
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public void setUserName(String userName) {
+        this.userName = userName;
+    }
+
     public byte[] getSerializedOAuth2Authentication() {
         return serializedOAuth2Authentication;
     }
@@ -211,4 +245,12 @@ public class ApplicationOAuth2AccessToken implements OAuth2AccessToken, Serializ
         this.serializedOAuth2Authentication = serializedOAuth2Authentication;
     }
 
+    public String getSerializedOAuth2AuthenticationDigest() {
+        return serializedOAuth2AuthenticationDigest;
+    }
+
+    public void setSerializedOAuth2AuthenticationDigest(String serializedOAuth2AuthenticationDigest) {
+        this.serializedOAuth2AuthenticationDigest = serializedOAuth2AuthenticationDigest;
+    }
+
 }
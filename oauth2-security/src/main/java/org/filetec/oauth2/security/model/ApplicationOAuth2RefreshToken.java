@@ -24,11 +24,13 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Lob;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 import javax.persistence.TableGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 
@@ -43,10 +45,11 @@ public class ApplicationOAuth2RefreshToken implements ExpiringOAuth2RefreshToken
     @Id
     @Column(nullable = false,
             name = "id")
-    @TableGenerator(initialValue = 1,
+    @TableGenerator(allocationSize = 1000,
+            initialValue = 1,
             name = "application_oauth2_refresh_token_id_generator",
             pkColumnName = "table_name",
-            pkColumnValue = "application_oauth2_refresh_token",
+            pkColumnValue = "application_oauth2_refresh_token_pooled_lo",
             table = "id_generator",
             valueColumnName = "available_id")
     @GeneratedValue(generator = "application_oauth2_refresh_token_id_generator",
@@ -66,12 +69,24 @@ public class ApplicationOAuth2RefreshToken implements ExpiringOAuth2RefreshToken
     protected Date expiration;
 
     @OneToOne(fetch = FetchType.LAZY,
-            optional = false,
             mappedBy = "applicationOAuth2RefreshToken",
             targetEntity = ApplicationOAuth2AccessToken.class)
-    @NotNull
     protected ApplicationOAuth2AccessToken applicationOAuth2AccessToken;
 
+    /**
+     * This is the authentication the refresh token was issued for, kept only
+     * when the refresh token is stored through a token store, where it
+     * outlives the access tokens issued with it.
+     */
+    @Lob
+    @Column(name = "serialized_oAuth2_authentication")
+    protected byte[] serializedOAuth2Authentication;
+
+    @Version
+    @Column(name = "version",
+            nullable = false)
+    protected long version;
+
     public BigInteger getId() {
         return id;
     }
@@ -110,4 +125,20 @@ public class ApplicationOAuth2RefreshToken implements ExpiringOAuth2RefreshToken
         this.applicationOAuth2AccessToken = applicationOAuth2AccessToken;
     }
 
+    public byte[] getSerializedOAuth2Authentication() {
+        return serializedOAuth2Authentication;
+    }
+
+    public void setSerializedOAuth2Authentication(byte[] serializedOAuth2Authentication) {
+        this.serializedOAuth2Authentication = serializedOAuth2Authentication;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
 }
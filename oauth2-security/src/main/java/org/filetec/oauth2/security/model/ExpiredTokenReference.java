@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.model;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class ExpiredTokenReference {
+
+    protected final BigInteger id;
+
+    protected final Date expiration;
+
+    protected final BigInteger refreshTokenId;
+
+    public ExpiredTokenReference(BigInteger id, Date expiration, BigInteger refreshTokenId) {
+        this.id = id;
+        this.expiration = expiration;
+        this.refreshTokenId = refreshTokenId;
+    }
+
+    public BigInteger getId() {
+        return id;
+    }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public BigInteger getRefreshTokenId() {
+        return refreshTokenId;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.model;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.validation.constraints.NotNull;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Entity
+@Table(name = "oauth2_scope")
+public class OAuth2Scope implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(nullable = false,
+            name = "id")
+    @TableGenerator(allocationSize = 50,
+            initialValue = 1,
+            name = "oauth2_scope_id_generator",
+            pkColumnName = "table_name",
+            pkColumnValue = "oauth2_scope",
+            table = "id_generator",
+            valueColumnName = "available_id")
+    @GeneratedValue(generator = "oauth2_scope_id_generator",
+            strategy = GenerationType.TABLE)
+    protected Integer id;
+
+    @Column(name = "name",
+            nullable = false,
+            unique = true)
+    @NotNull
+    protected String name;
+
+    public OAuth2Scope() {
+    }
+
+    public OAuth2Scope(String name) {
+        this.name = name;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class ReadOnlyClientDetails implements ClientDetails {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final String clientId;
+
+    protected final String clientSecret;
+
+    protected final Set<String> scope;
+
+    protected final Set<String> resourceIds;
+
+    protected final Set<String> authorizedGrantTypes;
+
+    protected final Set<String> registeredRedirectUri;
+
+    protected final Set<String> autoApproveScopes;
+
+    protected final Collection<GrantedAuthority> authorities;
+
+    protected final Integer accessTokenValiditySeconds;
+
+    protected final Integer refreshTokenValiditySeconds;
+
+    protected final boolean scoped;
+
+    protected final boolean secretRequired;
+
+    public ReadOnlyClientDetails(String clientId, String clientSecret,
+            Set<String> scope, Set<String> resourceIds, Set<String> authorizedGrantTypes,
+            Set<String> registeredRedirectUri, Set<String> autoApproveScopes,
+            Collection<GrantedAuthority> authorities,
+            Integer accessTokenValiditySeconds, Integer refreshTokenValiditySeconds,
+            boolean scoped, boolean secretRequired) {
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.scope = Collections.unmodifiableSet(new LinkedHashSet<>(scope));
+        this.resourceIds = Collections.unmodifiableSet(new LinkedHashSet<>(resourceIds));
+        this.authorizedGrantTypes = Collections.unmodifiableSet(new LinkedHashSet<>(authorizedGrantTypes));
+        this.registeredRedirectUri = Collections.unmodifiableSet(new LinkedHashSet<>(registeredRedirectUri));
+        this.autoApproveScopes = Collections.unmodifiableSet(new LinkedHashSet<>(autoApproveScopes));
+        this.authorities = Collections.unmodifiableList(new ArrayList<>(authorities));
+        this.accessTokenValiditySeconds = accessTokenValiditySeconds;
+        this.refreshTokenValiditySeconds = refreshTokenValiditySeconds;
+        this.scoped = scoped;
+        this.secretRequired = secretRequired;
+    }
+
+    @Override
+    public String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public Set<String> getResourceIds() {
+        return resourceIds;
+    }
+
+    @Override
+    public boolean isSecretRequired() {
+        return secretRequired;
+    }
+
+    @Override
+    public String getClientSecret() {
+        return clientSecret;
+    }
+
+    @Override
+    public boolean isScoped() {
+        return scoped;
+    }
+
+    @Override
+    public Set<String> getScope() {
+        return scope;
+    }
+
+    @Override
+    public Set<String> getAuthorizedGrantTypes() {
+        return authorizedGrantTypes;
+    }
+
+    @Override
+    public Set<String> getRegisteredRedirectUri() {
+        return registeredRedirectUri;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public Integer getAccessTokenValiditySeconds() {
+        return accessTokenValiditySeconds;
+    }
+
+    @Override
+    public Integer getRefreshTokenValiditySeconds() {
+        return refreshTokenValiditySeconds;
+    }
+
+    public Set<String> getAutoApproveScopes() {
+        return autoApproveScopes;
+    }
+
+    @Override
+    public boolean isAutoApprove(String scope) {
+        return autoApproveScopes.contains(scope);
+    }
+
+    @Override
+    public Map<String, Object> getAdditionalInformation() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String toString() {
+        return "ReadOnlyClientDetails{" + "clientId=" + clientId + ", scope=" + scope + ", resourceIds=" + resourceIds + ", authorizedGrantTypes=" + authorizedGrantTypes + ", registeredRedirectUri=" + registeredRedirectUri + ", autoApproveScopes=" + autoApproveScopes + ", authorities=" + authorities + ", accessTokenValiditySeconds=" + accessTokenValiditySeconds + ", refreshTokenValiditySeconds=" + refreshTokenValiditySeconds + ", scoped=" + scoped + ", secretRequired=" + secretRequired + '}';
+    }
+
+}
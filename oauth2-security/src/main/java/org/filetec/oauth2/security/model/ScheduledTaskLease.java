@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.model;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.NotNull;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Entity
+@Table(name = "scheduled_task_lease")
+public class ScheduledTaskLease implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(nullable = false,
+            name = "id")
+    @TableGenerator(allocationSize = 50,
+            initialValue = 1,
+            name = "scheduled_task_lease_id_generator",
+            pkColumnName = "table_name",
+            pkColumnValue = "scheduled_task_lease_pooled_lo",
+            table = "id_generator",
+            valueColumnName = "available_id")
+    @GeneratedValue(generator = "scheduled_task_lease_id_generator",
+            strategy = GenerationType.TABLE)
+    protected BigInteger id;
+
+    @Column(name = "name",
+            nullable = false,
+            unique = true)
+    @NotNull
+    protected String name;
+
+    @Column(name = "owner",
+            nullable = false)
+    @NotNull
+    protected String owner;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "leased_until",
+            nullable = false)
+    @NotNull
+    protected Date leasedUntil;
+
+    public ScheduledTaskLease() {
+    }
+
+    public ScheduledTaskLease(String name) {
+        this.name = name;
+        owner = "";
+        leasedUntil = new Date(0L);
+    }
+
+    public BigInteger getId() {
+        return id;
+    }
+
+    public void setId(BigInteger id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public Date getLeasedUntil() {
+        return leasedUntil;
+    }
+
+    public void setLeasedUntil(Date leasedUntil) {
+        this.leasedUntil = leasedUntil;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.model;
+
+import java.util.Date;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class SerializedOAuth2AuthenticationProjection {
+
+    protected final Date expiration;
+
+    protected final byte[] serializedOAuth2Authentication;
+
+    public SerializedOAuth2AuthenticationProjection(Date expiration, byte[] serializedOAuth2Authentication) {
+        this.expiration = expiration;
+        this.serializedOAuth2Authentication = serializedOAuth2Authentication;
+    }
+
+    public boolean isExpired() {
+        return expiration != null && expiration.getTime() < System.currentTimeMillis();
+    }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public byte[] getSerializedOAuth2Authentication() {
+        return serializedOAuth2Authentication;
+    }
+
+}
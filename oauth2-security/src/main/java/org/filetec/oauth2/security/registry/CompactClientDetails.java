@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.registry;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class CompactClientDetails implements ClientDetails {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int NO_VALIDITY = Integer.MIN_VALUE;
+
+    protected final String clientId;
+
+    protected final String clientSecret;
+
+    protected final DictionarySet scope;
+
+    protected final DictionarySet autoApproveScopes;
+
+    protected final DictionarySet authorizedGrantTypes;
+
+    protected final DictionarySet resourceIds;
+
+    protected final Set<String> registeredRedirectUri;
+
+    protected final List<GrantedAuthority> authorities;
+
+    protected final int accessTokenValiditySeconds;
+
+    protected final int refreshTokenValiditySeconds;
+
+    protected final boolean scoped;
+
+    protected final boolean secretRequired;
+
+    protected CompactClientDetails(String clientId, String clientSecret,
+            DictionarySet scope, DictionarySet autoApproveScopes,
+            DictionarySet authorizedGrantTypes, DictionarySet resourceIds,
+            Set<String> registeredRedirectUri, GrantedAuthority[] authorities,
+            Integer accessTokenValiditySeconds, Integer refreshTokenValiditySeconds,
+            boolean scoped, boolean secretRequired) {
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.scope = scope;
+        this.autoApproveScopes = autoApproveScopes;
+        this.authorizedGrantTypes = authorizedGrantTypes;
+        this.resourceIds = resourceIds;
+        this.registeredRedirectUri = registeredRedirectUri;
+        this.authorities = Collections.unmodifiableList(Arrays.asList(authorities));
+        this.accessTokenValiditySeconds = accessTokenValiditySeconds == null ? NO_VALIDITY : accessTokenValiditySeconds;
+        this.refreshTokenValiditySeconds = refreshTokenValiditySeconds == null ? NO_VALIDITY : refreshTokenValiditySeconds;
+        this.scoped = scoped;
+        this.secretRequired = secretRequired;
+    }
+
+    @Override
+    public String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public Set<String> getResourceIds() {
+        return resourceIds;
+    }
+
+    @Override
+    public boolean isSecretRequired() {
+        return secretRequired;
+    }
+
+    @Override
+    public String getClientSecret() {
+        return clientSecret;
+    }
+
+    @Override
+    public boolean isScoped() {
+        return scoped;
+    }
+
+    @Override
+    public Set<String> getScope() {
+        return scope;
+    }
+
+    @Override
+    public Set<String> getAuthorizedGrantTypes() {
+        return authorizedGrantTypes;
+    }
+
+    public boolean isAuthorizedGrantType(String grantType) {
+        return authorizedGrantTypes.contains(grantType);
+    }
+
+    @Override
+    public Set<String> getRegisteredRedirectUri() {
+        return registeredRedirectUri;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public Integer getAccessTokenValiditySeconds() {
+        return accessTokenValiditySeconds == NO_VALIDITY ? null : accessTokenValiditySeconds;
+    }
+
+    @Override
+    public Integer getRefreshTokenValiditySeconds() {
+        return refreshTokenValiditySeconds == NO_VALIDITY ? null : refreshTokenValiditySeconds;
+    }
+
+    @Override
+    public boolean isAutoApprove(String scope) {
+        return autoApproveScopes.contains(scope);
+    }
+
+    @Override
+    public Map<String, Object> getAdditionalInformation() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String toString() {
+        return "CompactClientDetails{" + "clientId=" + clientId + ", scope=" + scope + ", autoApproveScopes=" + autoApproveScopes + ", authorizedGrantTypes=" + authorizedGrantTypes + ", resourceIds=" + resourceIds + ", registeredRedirectUri=" + registeredRedirectUri + ", authorities=" + authorities + ", accessTokenValiditySeconds=" + getAccessTokenValiditySeconds() + ", refreshTokenValiditySeconds=" + getRefreshTokenValiditySeconds() + ", scoped=" + scoped + ", secretRequired=" + secretRequired + '}';
+    }
+
+}
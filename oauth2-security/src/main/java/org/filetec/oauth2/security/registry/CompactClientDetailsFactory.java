@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.registry;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.model.ReadOnlyClientDetails;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class CompactClientDetailsFactory {
+
+    protected final GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    protected final StringDictionary grantTypeDictionary;
+
+    protected final StringDictionary resourceIdDictionary;
+
+    @Inject
+    public CompactClientDetailsFactory(GrantedAuthorityRegistry grantedAuthorityRegistry) {
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
+        grantTypeDictionary = new StringDictionary();
+        resourceIdDictionary = new StringDictionary();
+    }
+
+    /**
+     * @param clientDetails the {@link ClientDetails} to snapshot
+     * @return the {@link CompactClientDetails}
+     */
+    public CompactClientDetails create(ClientDetails clientDetails) {
+        if (clientDetails instanceof CompactClientDetails) {
+            return (CompactClientDetails) clientDetails;
+        }
+        Set<String> scope = Optional.ofNullable(clientDetails.getScope())
+                .orElse(Collections.emptySet());
+        Set<String> autoApproveScopes = new LinkedHashSet<>();
+        if (clientDetails instanceof ReadOnlyClientDetails) {
+            autoApproveScopes.addAll(((ReadOnlyClientDetails) clientDetails).getAutoApproveScopes());
+        } else {
+            // ClientDetails only answers isAutoApprove, so the auto-approved scopes are found among the scopes
+            scope.stream()
+                    .filter(clientDetails::isAutoApprove)
+                    .forEach(autoApproveScopes::add);
+        }
+        Set<String> registeredRedirectUri = Optional.ofNullable(clientDetails.getRegisteredRedirectUri())
+                .filter(redirectUris -> !redirectUris.isEmpty())
+                .map(redirectUris -> Collections.unmodifiableSet(new LinkedHashSet<>(redirectUris)))
+                .orElse(Collections.emptySet());
+        GrantedAuthority[] clientAuthorities = Optional.ofNullable(clientDetails.getAuthorities())
+                .orElse(Collections.emptyList())
+                .stream()
+                .map(GrantedAuthority::getAuthority)
+                .map(grantedAuthorityRegistry::authority)
+                .toArray(GrantedAuthority[]::new);
+        return new CompactClientDetails(clientDetails.getClientId(), clientDetails.getClientSecret(),
+                grantedAuthorityRegistry.scopes(scope),
+                grantedAuthorityRegistry.scopes(autoApproveScopes),
+                new DictionarySet(grantTypeDictionary, Optional.ofNullable(clientDetails.getAuthorizedGrantTypes())
+                        .orElse(Collections.emptySet())),
+                new DictionarySet(resourceIdDictionary, Optional.ofNullable(clientDetails.getResourceIds())
+                        .orElse(Collections.emptySet())),
+                registeredRedirectUri, clientAuthorities,
+                clientDetails.getAccessTokenValiditySeconds(), clientDetails.getRefreshTokenValiditySeconds(),
+                clientDetails.isScoped(), clientDetails.isSecretRequired());
+    }
+
+    @ManagedAttribute
+    public int getGrantTypeCount() {
+        return grantTypeDictionary.size();
+    }
+
+    @ManagedAttribute
+    public int getResourceIdCount() {
+        return resourceIdDictionary.size();
+    }
+
+}
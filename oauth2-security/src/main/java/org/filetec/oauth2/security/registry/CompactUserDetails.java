@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.registry;
+
+import java.util.Collection;
+import java.util.Objects;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class CompactUserDetails implements UserDetails {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final String username;
+
+    protected final String password;
+
+    protected final Collection<GrantedAuthority> authorities;
+
+    protected final boolean accountNonExpired;
+
+    protected final boolean accountNonLocked;
+
+    protected final boolean credentialsNonExpired;
+
+    protected final boolean enabled;
+
+    /**
+     * @param userDetails the {@link UserDetails} to snapshot
+     * @param grantedAuthorityRegistry the {@link GrantedAuthorityRegistry}
+     * holding the shared authorities
+     */
+    public CompactUserDetails(UserDetails userDetails, GrantedAuthorityRegistry grantedAuthorityRegistry) {
+        username = userDetails.getUsername();
+        password = userDetails.getPassword();
+        authorities = grantedAuthorityRegistry.authorities(userDetails.getAuthorities());
+        accountNonExpired = userDetails.isAccountNonExpired();
+        accountNonLocked = userDetails.isAccountNonLocked();
+        credentialsNonExpired = userDetails.isCredentialsNonExpired();
+        enabled = userDetails.isEnabled();
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return accountNonExpired;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return accountNonLocked;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return credentialsNonExpired;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(username);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return Objects.equals(username, ((CompactUserDetails) obj).username);
+    }
+
+    @Override
+    public String toString() {
+        return username;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.registry;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class DictionarySet extends AbstractSet<String> {
+
+    private static final long[] NO_WORDS = new long[0];
+
+    protected final StringDictionary dictionary;
+
+    protected final long[] words;
+
+    protected final int size;
+
+    /**
+     * @param dictionary the {@link StringDictionary} to intern the strings in
+     * @param values the strings
+     */
+    public DictionarySet(StringDictionary dictionary, Collection<String> values) {
+        this.dictionary = dictionary;
+        long[] theWords = NO_WORDS;
+        int theSize = 0;
+        for (String value : values) {
+            int id = dictionary.intern(value);
+            int word = id >>> 6;
+            if (word >= theWords.length) {
+                long[] grownWords = new long[word + 1];
+                System.arraycopy(theWords, 0, grownWords, 0, theWords.length);
+                theWords = grownWords;
+            }
+            if ((theWords[word] & (1L << id)) == 0L) {
+                theWords[word] |= 1L << id;
+                theSize++;
+            }
+        }
+        words = theWords;
+        size = theSize;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        int id = dictionary.idOf(value);
+        return id >= 0 && (id >>> 6) < words.length && (words[id >>> 6] & (1L << id)) != 0L;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            protected int nextId = nextId(0);
+
+            @Override
+            public boolean hasNext() {
+                return nextId >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (nextId < 0) {
+                    throw new NoSuchElementException();
+                }
+                String value = dictionary.valueOf(nextId);
+                nextId = nextId(nextId + 1);
+                return value;
+            }
+
+        };
+    }
+
+    /**
+     * @return the lowest id in this set from the given id, or {@code -1}
+     */
+    protected int nextId(int fromId) {
+        int word = fromId >>> 6;
+        if (word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & (-1L << fromId);
+        while (bits == 0L) {
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+}
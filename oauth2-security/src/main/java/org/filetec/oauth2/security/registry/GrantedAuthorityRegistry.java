@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.registry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class GrantedAuthorityRegistry {
+
+    protected final StringDictionary authorityDictionary;
+
+    protected final StringDictionary scopeDictionary;
+
+    protected final ConcurrentMap<String, GrantedAuthority> authorities;
+
+    public GrantedAuthorityRegistry() {
+        authorityDictionary = new StringDictionary();
+        scopeDictionary = new StringDictionary();
+        authorities = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param authority the authority
+     * @return the shared {@link GrantedAuthority} of the authority
+     */
+    public GrantedAuthority authority(String authority) {
+        GrantedAuthority grantedAuthority = authorities.get(authority);
+        if (grantedAuthority != null) {
+            return grantedAuthority;
+        }
+        return authorities.computeIfAbsent(authority, theAuthority -> new SimpleGrantedAuthority(
+                authorityDictionary.valueOf(authorityDictionary.intern(theAuthority))));
+    }
+
+    /**
+     * @param authorities the authorities
+     * @return the shared {@link GrantedAuthority} of each authority, in the
+     * same order
+     */
+    public List<GrantedAuthority> authorities(Collection<? extends GrantedAuthority> authorities) {
+        if (authorities == null || authorities.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<GrantedAuthority> sharedAuthorities = new ArrayList<>(authorities.size());
+        for (GrantedAuthority grantedAuthority : authorities) {
+            sharedAuthorities.add(authority(grantedAuthority.getAuthority()));
+        }
+        return Collections.unmodifiableList(sharedAuthorities);
+    }
+
+    /**
+     * @param authority the authority
+     * @return the id of the authority, assigning one if it has none
+     */
+    public int authorityId(String authority) {
+        return authorityDictionary.intern(authority(authority).getAuthority());
+    }
+
+    /**
+     * @param id an id returned by {@link #authorityId(String)}
+     * @return the shared {@link GrantedAuthority} with the id
+     */
+    public GrantedAuthority authorityOf(int id) {
+        return authorities.get(authorityDictionary.valueOf(id));
+    }
+
+    /**
+     * @param scope the scope
+     * @return the shared instance of the scope
+     */
+    public String scope(String scope) {
+        return scopeDictionary.valueOf(scopeDictionary.intern(scope));
+    }
+
+    /**
+     * @param scopes the scopes
+     * @return the immutable set of the scopes
+     */
+    public DictionarySet scopes(Collection<String> scopes) {
+        return new DictionarySet(scopeDictionary, scopes == null ? Collections.emptySet() : scopes);
+    }
+
+    /**
+     * @param scope the scope
+     * @return the id of the scope, assigning one if it has none
+     */
+    public int scopeId(String scope) {
+        return scopeDictionary.intern(scope);
+    }
+
+    /**
+     * @param id an id returned by {@link #scopeId(String)}
+     * @return the scope with the id
+     */
+    public String scopeOf(int id) {
+        return scopeDictionary.valueOf(id);
+    }
+
+    /**
+     * This copies an {@link OAuth2Authentication} onto the shared authorities
+     * and scopes. User authentications other than
+     * {@link UsernamePasswordAuthenticationToken} are kept as they are.
+     *
+     * @param authentication the {@link OAuth2Authentication}
+     * @return the equal {@link OAuth2Authentication} referring to the shared
+     * authorities and scopes
+     */
+    public OAuth2Authentication share(OAuth2Authentication authentication) {
+        OAuth2Request request = authentication.getOAuth2Request();
+        OAuth2Request sharedRequest = new OAuth2Request(request.getRequestParameters(), request.getClientId(),
+                authorities(request.getAuthorities()), request.isApproved(), scopes(request.getScope()),
+                request.getResourceIds(), request.getRedirectUri(), request.getResponseTypes(),
+                request.getExtensions());
+        Authentication userAuthentication = authentication.getUserAuthentication();
+        if (userAuthentication != null && userAuthentication.getClass() == UsernamePasswordAuthenticationToken.class) {
+            UsernamePasswordAuthenticationToken sharedUserAuthentication = new UsernamePasswordAuthenticationToken(
+                    userAuthentication.getPrincipal(), userAuthentication.getCredentials(),
+                    authorities(userAuthentication.getAuthorities()));
+            sharedUserAuthentication.setDetails(userAuthentication.getDetails());
+            userAuthentication = sharedUserAuthentication;
+        }
+        OAuth2Authentication sharedAuthentication = new OAuth2Authentication(sharedRequest, userAuthentication);
+        sharedAuthentication.setDetails(authentication.getDetails());
+        return sharedAuthentication;
+    }
+
+    /**
+     * @return the {@link StringDictionary} of the scopes, for sets of scopes
+     * kept as {@link DictionarySet}
+     */
+    public StringDictionary getScopeDictionary() {
+        return scopeDictionary;
+    }
+
+    @ManagedAttribute
+    public int getAuthorityCount() {
+        return authorities.size();
+    }
+
+    @ManagedAttribute
+    public int getScopeCount() {
+        return scopeDictionary.size();
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.registry;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.model.OAuth2Scope;
+import org.filetec.oauth2.security.repository.OAuth2ScopeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class ScopeDictionary {
+
+    private static final byte[] NO_SCOPE_IDS = new byte[0];
+
+    protected final OAuth2ScopeRepository oauth2ScopeRepository;
+
+    protected final GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    protected final TransactionTemplate transactionTemplate;
+
+    protected final long maximumSize;
+
+    protected final ConcurrentMap<String, Integer> ids;
+
+    protected final ConcurrentMap<Integer, String> scopes;
+
+    @Inject
+    public ScopeDictionary(OAuth2ScopeRepository oauth2ScopeRepository,
+            GrantedAuthorityRegistry grantedAuthorityRegistry,
+            PlatformTransactionManager transactionManager,
+            @Value("${oauth2.security.scope-dictionary.maximum-size:10000}") long maximumSize) {
+        this.oauth2ScopeRepository = oauth2ScopeRepository;
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maximumSize = maximumSize;
+        ids = new ConcurrentHashMap<>();
+        scopes = new ConcurrentHashMap<>();
+    }
+
+    @PostConstruct
+    public void load() {
+        oauth2ScopeRepository.findAll()
+                .forEach(this::put);
+    }
+
+    /**
+     * @param scope the scopes
+     * @return the encoded ids of the scopes
+     * @throws InvalidScopeException if a scope is new and the dictionary is
+     * full
+     */
+    public byte[] encode(Collection<String> scope) {
+        if (scope == null || scope.isEmpty()) {
+            return NO_SCOPE_IDS;
+        }
+        int[] scopeIds = scope.stream()
+                .mapToInt(this::idOf)
+                .sorted()
+                .distinct()
+                .toArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(scopeIds.length * 2);
+        int previousId = 0;
+        for (int id : scopeIds) {
+            int delta = id - previousId;
+            while ((delta & ~0x7F) != 0) {
+                bytes.write((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            bytes.write(delta);
+            previousId = id;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param scopeIds the ids encoded by {@link #encode(Collection)}
+     * @return the scopes
+     */
+    public Set<String> decode(byte[] scopeIds) {
+        if (scopeIds == null || scopeIds.length == 0) {
+            return new LinkedHashSet<>();
+        }
+        Set<String> scope = new LinkedHashSet<>(scopeIds.length * 2);
+        int id = 0;
+        int index = 0;
+        while (index < scopeIds.length) {
+            int delta = 0;
+            int part;
+            int shift = 0;
+            do {
+                if (index == scopeIds.length || shift > 28) {
+                    throw new IllegalArgumentException("Malformed scope ids");
+                }
+                part = scopeIds[index++];
+                delta |= (part & 0x7F) << shift;
+                shift += 7;
+            } while ((part & 0x80) != 0);
+            id += delta;
+            scope.add(scopeOf(id));
+        }
+        return scope;
+    }
+
+    @ManagedAttribute
+    public int getScopeCount() {
+        return scopes.size();
+    }
+
+    protected int idOf(String scope) {
+        Integer id = ids.get(scope);
+        return id != null ? id : add(scope);
+    }
+
+    protected String scopeOf(int id) {
+        String scope = scopes.get(id);
+        if (scope != null) {
+            return scope;
+        }
+        // Added by another node since this one loaded the dictionary
+        return Optional.ofNullable(oauth2ScopeRepository.findOne(id))
+                .map(this::put)
+                .orElseThrow(() -> new IllegalStateException("Unknown scope id " + id));
+    }
+
+    /**
+     * Clients without configured scopes may request any, so the dictionary
+     * refuses new scopes once it holds {@link #maximumSize} of them, counted
+     * across every node.
+     *
+     * @param scope the scope
+     * @return the id of the scope
+     */
+    protected synchronized int add(String scope) {
+        Integer id = ids.get(scope);
+        if (id != null) {
+            return id;
+        }
+        OAuth2Scope oauth2Scope;
+        try {
+            oauth2Scope = transactionTemplate.execute(status -> oauth2ScopeRepository.findByName(scope)
+                    .orElseGet(() -> {
+                        if (oauth2ScopeRepository.count() >= maximumSize) {
+                            throw new InvalidScopeException("Unknown scope " + scope);
+                        }
+                        return oauth2ScopeRepository.saveAndFlush(new OAuth2Scope(scope));
+                    }));
+        } catch (DataIntegrityViolationException ex) {
+            // Another node inserted the scope first
+            oauth2Scope = transactionTemplate.execute(status -> oauth2ScopeRepository.findByName(scope))
+                    .orElseThrow(() -> ex);
+        }
+        put(oauth2Scope);
+        return oauth2Scope.getId();
+    }
+
+    protected String put(OAuth2Scope oauth2Scope) {
+        String scope = grantedAuthorityRegistry.scope(oauth2Scope.getName());
+        scopes.put(oauth2Scope.getId(), scope);
+        ids.put(scope, oauth2Scope.getId());
+        return scope;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.registry;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class StringDictionary {
+
+    protected final ConcurrentMap<String, Integer> ids;
+
+    protected volatile String[] values;
+
+    protected int size;
+
+    public StringDictionary() {
+        ids = new ConcurrentHashMap<>();
+        values = new String[16];
+    }
+
+    /**
+     * @param value the string
+     * @return the id of the string, assigning one if it has none
+     */
+    public int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            // The value is published before its id, so any id read maps back
+            values[size] = value;
+            ids.put(value, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @param value the string
+     * @return the id of the string, or {@code -1} if it has none
+     */
+    public int idOf(Object value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id an id returned by {@link #intern(String)}
+     * @return the string with the id
+     */
+    public String valueOf(int id) {
+        return values[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+}
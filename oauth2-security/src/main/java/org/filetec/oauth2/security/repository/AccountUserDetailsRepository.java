@@ -17,8 +17,10 @@ package org.filetec.oauth2.security.repository;
 
 import java.math.BigInteger;
 import java.util.Optional;
+import javax.persistence.QueryHint;
 import org.filetec.oauth2.security.model.AccountUserDetails;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -42,6 +44,7 @@ public interface AccountUserDetailsRepository
      * {@link AccountUserDetails}
      * @return the {@link AccountUserDetails}
      */
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     Optional<AccountUserDetails> findByUsername(@Param("username") String username);
 
 }
@@ -32,7 +32,7 @@ import org.springframework.stereotype.Repository;
  */
 @Repository
 public interface ApplicationClientDetailsRepository
-        extends JpaRepository<ApplicationClientDetails, BigInteger> {
+        extends JpaRepository<ApplicationClientDetails, BigInteger>, ApplicationClientDetailsRepositoryCustom {
 
     /**
      * This queries for {@link ApplicationClientDetails} using
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.repository;
+
+import java.util.Optional;
+import org.filetec.oauth2.security.model.ApplicationClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public interface ApplicationClientDetailsRepositoryCustom {
+
+    /**
+     * This reads the {@link ClientDetails} of an
+     * {@link ApplicationClientDetails} using
+     * {@link ApplicationClientDetails#clientId}, with one query for its
+     * columns and one for the rows of all its collections, instead of loading
+     * the entity and its six eager collections.
+     *
+     * @param clientId the {@link ApplicationClientDetails#clientId} of the
+     * {@link ApplicationClientDetails}
+     * @return the {@link ClientDetails}
+     */
+    Optional<ClientDetails> findClientDetailsByClientId(String clientId);
+
+}
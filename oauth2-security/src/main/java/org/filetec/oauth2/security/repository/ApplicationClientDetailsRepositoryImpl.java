@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.filetec.oauth2.security.model.ApplicationClientDetails;
+import org.filetec.oauth2.security.model.ReadOnlyClientDetails;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Transactional(readOnly = true)
+public class ApplicationClientDetailsRepositoryImpl implements ApplicationClientDetailsRepositoryCustom {
+
+    private static final String CLIENT_DETAILS_QUERY
+            = "SELECT c.id, c.clientId, c.clientSecret, c.accessTokenValiditySeconds, c.refreshTokenValiditySeconds, "
+            + "c.scoped, c.secretRequired "
+            + "FROM ApplicationClientDetails c "
+            + "WHERE c.clientId = :clientId";
+
+    private static final int SCOPE = 1;
+
+    private static final int RESOURCE_ID = 2;
+
+    private static final int AUTHORIZED_GRANT_TYPE = 3;
+
+    private static final int REGISTERED_REDIRECT_URI = 4;
+
+    private static final int AUTO_APPROVE_SCOPE = 5;
+
+    private static final int AUTHORITY = 6;
+
+    // Each collection is read as its own rows, so their sizes add up instead of multiplying
+    private static final String CLIENT_DETAILS_VALUES_QUERY
+            = "SELECT " + SCOPE + ", scope FROM account_client_details_scope "
+            + "WHERE account_client_details_id = :id "
+            + "UNION ALL SELECT " + RESOURCE_ID + ", resource_id FROM account_client_details_resource_id "
+            + "WHERE account_client_details_id = :id "
+            + "UNION ALL SELECT " + AUTHORIZED_GRANT_TYPE + ", authorized_grant_type FROM account_client_details_authorized_grant_type "
+            + "WHERE account_client_details_id = :id "
+            + "UNION ALL SELECT " + REGISTERED_REDIRECT_URI + ", registered_redirect_uri FROM account_client_details_registered_redirect_uri "
+            + "WHERE account_client_details_id = :id "
+            + "UNION ALL SELECT " + AUTO_APPROVE_SCOPE + ", auto_approve_scope FROM account_client_details_auto_approve_scope "
+            + "WHERE account_client_details_id = :id "
+            + "UNION ALL SELECT " + AUTHORITY + ", a.authority FROM account_client_details_authority ca "
+            + "JOIN account_client_granted_authority a ON a.id = ca.account_client_granted_authority_id "
+            + "WHERE ca.account_client_details_id = :id";
+
+    @PersistenceContext
+    protected EntityManager entityManager;
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Optional<ClientDetails> findClientDetailsByClientId(String clientId) {
+        List<?> clientDetailsRows = entityManager.createQuery(CLIENT_DETAILS_QUERY)
+                .setParameter("clientId", clientId)
+                .setMaxResults(1)
+                .getResultList();
+        return clientDetailsRows.stream()
+                .findFirst()
+                .map(Object[].class::cast)
+                .map(this::toClientDetails);
+    }
+
+    protected ClientDetails toClientDetails(Object[] clientDetailsRow) {
+        Set<String> scope = new HashSet<>();
+        Set<String> resourceIds = new HashSet<>();
+        Set<String> authorizedGrantTypes = new HashSet<>();
+        Set<String> registeredRedirectUri = new HashSet<>();
+        Set<String> autoApproveScopes = new HashSet<>();
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        List<?> valueRows = entityManager.createNativeQuery(CLIENT_DETAILS_VALUES_QUERY)
+                .setParameter("id", clientDetailsRow[0])
+                .getResultList();
+        for (Object row : valueRows) {
+            Object[] valueRow = (Object[]) row;
+            String value = (String) valueRow[1];
+            switch (((Number) valueRow[0]).intValue()) {
+                case SCOPE:
+                    scope.add(value);
+                    break;
+                case RESOURCE_ID:
+                    resourceIds.add(value);
+                    break;
+                case AUTHORIZED_GRANT_TYPE:
+                    authorizedGrantTypes.add(value);
+                    break;
+                case REGISTERED_REDIRECT_URI:
+                    registeredRedirectUri.add(value);
+                    break;
+                case AUTO_APPROVE_SCOPE:
+                    autoApproveScopes.add(value);
+                    break;
+                case AUTHORITY:
+                    authorities.add(new SimpleGrantedAuthority(value));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown client details value kind " + valueRow[0]);
+            }
+        }
+        return new ReadOnlyClientDetails((String) clientDetailsRow[1], (String) clientDetailsRow[2],
+                scope, resourceIds, authorizedGrantTypes, registeredRedirectUri, autoApproveScopes, authorities,
+                (Integer) clientDetailsRow[3], (Integer) clientDetailsRow[4],
+                (Boolean) clientDetailsRow[5], (Boolean) clientDetailsRow[6]);
+    }
+
+}
@@ -16,9 +16,18 @@
 package org.filetec.oauth2.security.repository;
 
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import org.filetec.oauth2.security.model.AccessTokenProjection;
 import org.filetec.oauth2.security.model.ApplicationOAuth2AccessToken;
+import org.filetec.oauth2.security.model.ExpiredTokenReference;
+import org.filetec.oauth2.security.model.SerializedOAuth2AuthenticationProjection;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -33,4 +42,103 @@ public interface ApplicationOAuth2AccessTokenRepository
     Optional<ApplicationOAuth2AccessToken> findByOauth2AuthenticationKey(
             @Param("oauth2AuthenticationKey") String oauth2AuthenticationKey);
 
+    Optional<ApplicationOAuth2AccessToken> findByValue(@Param("value") String value);
+
+    long countByValue(@Param("value") String value);
+
+    /**
+     * This reads an access token by its {@link ApplicationOAuth2AccessToken#value},
+     * without its stored authentication.
+     *
+     * @param value the {@link ApplicationOAuth2AccessToken#value}
+     * @return the projection of the access token, empty if it does not exist
+     */
+    @Query("select new org.filetec.oauth2.security.model.AccessTokenProjection("
+            + "a.value, a.expiration, a.tokenType, r.value, r.expiration, a.scopeIds) "
+            + "from ApplicationOAuth2AccessToken a left join a.applicationOAuth2RefreshToken r "
+            + "where a.value = :value")
+    Optional<AccessTokenProjection> findProjectionByValue(@Param("value") String value);
+
+    /**
+     * This reads an access token by its
+     * {@link ApplicationOAuth2AccessToken#oauth2AuthenticationKey}, without its
+     * stored authentication.
+     *
+     * @param oauth2AuthenticationKey the
+     * {@link ApplicationOAuth2AccessToken#oauth2AuthenticationKey}
+     * @return the projection of the access token, empty if it does not exist
+     */
+    @Query("select new org.filetec.oauth2.security.model.AccessTokenProjection("
+            + "a.value, a.expiration, a.tokenType, r.value, r.expiration, a.scopeIds) "
+            + "from ApplicationOAuth2AccessToken a left join a.applicationOAuth2RefreshToken r "
+            + "where a.oauth2AuthenticationKey = :oauth2AuthenticationKey")
+    Optional<AccessTokenProjection> findProjectionByOauth2AuthenticationKey(
+            @Param("oauth2AuthenticationKey") String oauth2AuthenticationKey);
+
+    @Query("select new org.filetec.oauth2.security.model.AccessTokenProjection("
+            + "a.value, a.expiration, a.tokenType, r.value, r.expiration, a.scopeIds) "
+            + "from ApplicationOAuth2AccessToken a left join a.applicationOAuth2RefreshToken r "
+            + "where a.clientId = :clientId "
+            + "order by a.id")
+    List<AccessTokenProjection> findProjectionsByClientId(@Param("clientId") String clientId);
+
+    @Query("select new org.filetec.oauth2.security.model.AccessTokenProjection("
+            + "a.value, a.expiration, a.tokenType, r.value, r.expiration, a.scopeIds) "
+            + "from ApplicationOAuth2AccessToken a left join a.applicationOAuth2RefreshToken r "
+            + "where a.clientId = :clientId and a.userName = :userName "
+            + "order by a.id")
+    List<AccessTokenProjection> findProjectionsByClientIdAndUserName(@Param("clientId") String clientId,
+            @Param("userName") String userName);
+
+    @Query("select new org.filetec.oauth2.security.model.SerializedOAuth2AuthenticationProjection("
+            + "a.expiration, a.serializedOAuth2Authentication) "
+            + "from ApplicationOAuth2AccessToken a where a.value = :value")
+    Optional<SerializedOAuth2AuthenticationProjection> findSerializedOAuth2AuthenticationByValue(@Param("value") String value);
+
+    /**
+     * This pages through access tokens that have expired, together with
+     * their refresh token if they have one, once it has expired too. They are
+     * ordered by expiration and id, starting after the given keyset position.
+     *
+     * @param now the current date
+     * @param afterExpiration the expiration of the last access token of the
+     * previous page
+     * @param afterId the id of the last access token of the previous page
+     * @param pageable the size of the page
+     * @return the expired access tokens
+     */
+    @Query("select new org.filetec.oauth2.security.model.ExpiredTokenReference(a.id, a.expiration, r.id) "
+            + "from ApplicationOAuth2AccessToken a left join a.applicationOAuth2RefreshToken r "
+            + "where a.expiration < :now and (r is null or r.expiration < :now) "
+            + "and (a.expiration > :afterExpiration or (a.expiration = :afterExpiration and a.id > :afterId)) "
+            + "order by a.expiration, a.id")
+    List<ExpiredTokenReference> findExpired(@Param("now") Date now,
+            @Param("afterExpiration") Date afterExpiration, @Param("afterId") BigInteger afterId,
+            Pageable pageable);
+
+    @Modifying
+    @Query("delete from ApplicationOAuth2AccessToken a where a.id in :ids and a.expiration < :now")
+    int deleteExpired(@Param("ids") Collection<BigInteger> ids, @Param("now") Date now);
+
+    /**
+     * This replaces the stored authentication of an access token, unless the
+     * access token has since been re-issued under another value or removed.
+     *
+     * @param id the {@link ApplicationOAuth2AccessToken#id}
+     * @param value the {@link ApplicationOAuth2AccessToken#value} the
+     * authentication was written for
+     * @param serializedOAuth2Authentication the encoded authentication
+     * @param serializedOAuth2AuthenticationDigest the digest of the encoded
+     * authentication
+     * @return {@code 1} if the authentication was replaced, otherwise
+     * {@code 0}
+     */
+    @Modifying
+    @Query("update ApplicationOAuth2AccessToken a set a.serializedOAuth2Authentication = :serializedOAuth2Authentication, "
+            + "a.serializedOAuth2AuthenticationDigest = :serializedOAuth2AuthenticationDigest "
+            + "where a.id = :id and a.value = :value")
+    int updateSerializedOAuth2Authentication(@Param("id") BigInteger id, @Param("value") String value,
+            @Param("serializedOAuth2Authentication") byte[] serializedOAuth2Authentication,
+            @Param("serializedOAuth2AuthenticationDigest") String serializedOAuth2AuthenticationDigest);
+
 }
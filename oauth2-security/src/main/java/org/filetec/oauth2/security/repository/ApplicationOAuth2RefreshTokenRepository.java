@@ -16,10 +16,18 @@
 package org.filetec.oauth2.security.repository;
 
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import org.filetec.oauth2.security.model.ApplicationOAuth2RefreshToken;
+import org.filetec.oauth2.security.model.ExpiredTokenReference;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -32,4 +40,47 @@ public interface ApplicationOAuth2RefreshTokenRepository
 
     Optional<ApplicationOAuth2RefreshToken> findByValue(@Param("value") String value);
 
+    /**
+     * This queries for {@link ApplicationOAuth2RefreshToken} using
+     * {@link ApplicationOAuth2RefreshToken#value}, together with its
+     * {@link ApplicationOAuth2RefreshToken#applicationOAuth2AccessToken} if it
+     * still has one.
+     *
+     * @param value the {@link ApplicationOAuth2RefreshToken#value}
+     * @return the {@link ApplicationOAuth2RefreshToken}
+     */
+    @Query("select r from ApplicationOAuth2RefreshToken r left join fetch r.applicationOAuth2AccessToken where r.value = :value")
+    Optional<ApplicationOAuth2RefreshToken> findWithAccessTokenByValue(@Param("value") String value);
+
+    @Query("select new org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken(r.value, r.expiration) "
+            + "from ApplicationOAuth2RefreshToken r where r.value = :value")
+    Optional<DefaultExpiringOAuth2RefreshToken> findProjectionByValue(@Param("value") String value);
+
+    /**
+     * This pages through expired refresh tokens no longer referenced by an
+     * access token, ordered by expiration and id, starting after the given
+     * keyset position.
+     *
+     * @param now the current date
+     * @param afterExpiration the expiration of the last refresh token of the
+     * previous page
+     * @param afterId the id of the last refresh token of the previous page
+     * @param pageable the size of the page
+     * @return the expired refresh tokens
+     */
+    @Query("select new org.filetec.oauth2.security.model.ExpiredTokenReference(r.id, r.expiration, r.id) "
+            + "from ApplicationOAuth2RefreshToken r "
+            + "where r.expiration < :now "
+            + "and not exists (select a from ApplicationOAuth2AccessToken a where a.applicationOAuth2RefreshToken = r) "
+            + "and (r.expiration > :afterExpiration or (r.expiration = :afterExpiration and r.id > :afterId)) "
+            + "order by r.expiration, r.id")
+    List<ExpiredTokenReference> findExpiredUnreferenced(@Param("now") Date now,
+            @Param("afterExpiration") Date afterExpiration, @Param("afterId") BigInteger afterId,
+            Pageable pageable);
+
+    @Modifying
+    @Query("delete from ApplicationOAuth2RefreshToken r where r.id in :ids and r.expiration < :now "
+            + "and not exists (select a from ApplicationOAuth2AccessToken a where a.applicationOAuth2RefreshToken = r)")
+    int deleteExpiredUnreferenced(@Param("ids") Collection<BigInteger> ids, @Param("now") Date now);
+
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.repository;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Optional;
+import org.filetec.oauth2.security.model.ScheduledTaskLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Repository
+public interface ScheduledTaskLeaseRepository
+        extends JpaRepository<ScheduledTaskLease, BigInteger> {
+
+    Optional<ScheduledTaskLease> findByName(@Param("name") String name);
+
+    /**
+     * This takes the lease of a task if it has lapsed or is already held by
+     * the owner.
+     *
+     * @param name the {@link ScheduledTaskLease#name} of the task
+     * @param owner the {@link ScheduledTaskLease#owner} taking the lease
+     * @param now the current date
+     * @param leasedUntil the date the lease lapses
+     * @return {@code 1} if the lease was taken, otherwise {@code 0}
+     */
+    @Modifying
+    @Query("update ScheduledTaskLease l set l.owner = :owner, l.leasedUntil = :leasedUntil "
+            + "where l.name = :name and (l.leasedUntil < :now or l.owner = :owner)")
+    int acquire(@Param("name") String name, @Param("owner") String owner,
+            @Param("now") Date now, @Param("leasedUntil") Date leasedUntil);
+
+    /**
+     * This extends the lease of a task while it is still held by the owner.
+     *
+     * @param name the {@link ScheduledTaskLease#name} of the task
+     * @param owner the {@link ScheduledTaskLease#owner} holding the lease
+     * @param now the current date
+     * @param leasedUntil the date the lease lapses
+     * @return {@code 1} if the lease was extended, otherwise {@code 0}
+     */
+    @Modifying
+    @Query("update ScheduledTaskLease l set l.leasedUntil = :leasedUntil "
+            + "where l.name = :name and l.owner = :owner and l.leasedUntil >= :now")
+    int renew(@Param("name") String name, @Param("owner") String owner,
+            @Param("now") Date now, @Param("leasedUntil") Date leasedUntil);
+
+    @Modifying
+    @Query("update ScheduledTaskLease l set l.leasedUntil = :now where l.name = :name and l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") Date now);
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.util.Arrays;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import org.filetec.oauth2.security.model.ApplicationOAuth2AccessToken;
+import org.filetec.oauth2.security.registry.ScopeDictionary;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreInsertEventListener;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.event.spi.PreUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+public class AccessTokenScopeListener implements PostLoadEventListener, PreInsertEventListener, PreUpdateEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final transient EntityManagerFactory entityManagerFactory;
+
+    protected final transient ScopeDictionary scopeDictionary;
+
+    @Inject
+    public AccessTokenScopeListener(EntityManagerFactory entityManagerFactory, ScopeDictionary scopeDictionary) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.scopeDictionary = scopeDictionary;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry eventListenerRegistry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        eventListenerRegistry.appendListeners(EventType.POST_LOAD, this);
+        eventListenerRegistry.appendListeners(EventType.PRE_INSERT, this);
+        eventListenerRegistry.appendListeners(EventType.PRE_UPDATE, this);
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        if (event.getEntity() instanceof ApplicationOAuth2AccessToken) {
+            ApplicationOAuth2AccessToken applicationOAuth2AccessToken = (ApplicationOAuth2AccessToken) event.getEntity();
+            byte[] scopeIds = applicationOAuth2AccessToken.getScopeIds();
+            applicationOAuth2AccessToken.setScope(scopeDictionary.decode(scopeIds));
+            // The loaded scopes need no encoding
+            applicationOAuth2AccessToken.setScopeIds(scopeIds);
+        }
+    }
+
+    @Override
+    public boolean onPreInsert(PreInsertEvent event) {
+        encodeScope(event.getEntity(), event.getPersister(), event.getState());
+        return false;
+    }
+
+    @Override
+    public boolean onPreUpdate(PreUpdateEvent event) {
+        encodeScope(event.getEntity(), event.getPersister(), event.getState());
+        return false;
+    }
+
+    protected void encodeScope(Object entity, EntityPersister persister, Object[] state) {
+        if (entity instanceof ApplicationOAuth2AccessToken) {
+            ApplicationOAuth2AccessToken applicationOAuth2AccessToken = (ApplicationOAuth2AccessToken) entity;
+            byte[] scopeIds = scopeDictionary.encode(applicationOAuth2AccessToken.getScope());
+            applicationOAuth2AccessToken.setScopeIds(scopeIds);
+            // The state, not the entity, is what Hibernate writes
+            state[Arrays.asList(persister.getPropertyNames()).indexOf("scopeIds")] = scopeIds;
+        }
+    }
+
+}
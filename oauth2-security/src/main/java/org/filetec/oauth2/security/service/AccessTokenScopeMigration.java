@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import org.filetec.oauth2.security.registry.ScopeDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ConditionalOnProperty(name = "oauth2.security.access-token.scope-migration.enabled",
+        havingValue = "true",
+        matchIfMissing = true)
+public class AccessTokenScopeMigration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessTokenScopeMigration.class);
+
+    public static final String LEGACY_SCOPE_TABLE = "application_oauth2_access_token_scope";
+
+    protected final ScopeDictionary scopeDictionary;
+
+    protected final JdbcTemplate jdbcTemplate;
+
+    protected final JdbcTemplate batchJdbcTemplate;
+
+    protected final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    protected final TransactionTemplate transactionTemplate;
+
+    @Inject
+    public AccessTokenScopeMigration(ScopeDictionary scopeDictionary,
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            @Value("${oauth2.security.access-token.scope-migration.batch-size:1000}") int batchSize) {
+        this.scopeDictionary = scopeDictionary;
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        batchJdbcTemplate = new JdbcTemplate(dataSource);
+        batchJdbcTemplate.setMaxRows(batchSize);
+        namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!legacyScopeTableExists()) {
+            return;
+        }
+        long startMillis = System.currentTimeMillis();
+        int migratedCount = 0;
+        int batchCount;
+        while ((batchCount = transactionTemplate.execute(status -> migrateBatch())) > 0) {
+            migratedCount += batchCount;
+        }
+        if (migratedCount > 0) {
+            LOGGER.info("Moved the scopes of {} access tokens out of {} in {} ms", migratedCount, LEGACY_SCOPE_TABLE,
+                    System.currentTimeMillis() - startMillis);
+        }
+    }
+
+    /**
+     * @return the number of access tokens migrated
+     */
+    protected int migrateBatch() {
+        List<Long> accessTokenIds = batchJdbcTemplate.queryForList("SELECT DISTINCT application_oauth2_access_token_id FROM "
+                + LEGACY_SCOPE_TABLE, Long.class);
+        if (accessTokenIds.isEmpty()) {
+            return 0;
+        }
+        Map<String, List<Long>> parameters = Collections.singletonMap("ids", accessTokenIds);
+        Map<Long, Set<String>> scopes = new LinkedHashMap<>();
+        namedParameterJdbcTemplate.query("SELECT application_oauth2_access_token_id, scope FROM " + LEGACY_SCOPE_TABLE
+                + " WHERE application_oauth2_access_token_id IN (:ids)", parameters,
+                (RowCallbackHandler) resultSet -> scopes.computeIfAbsent(resultSet.getLong(1), id -> new LinkedHashSet<>())
+                        .add(resultSet.getString(2)));
+        jdbcTemplate.batchUpdate("UPDATE application_oauth2_access_token SET scope_ids = ? WHERE id = ? AND scope_ids IS NULL",
+                scopes.entrySet().stream()
+                        .map(accessTokenScopes -> new Object[]{scopeDictionary.encode(accessTokenScopes.getValue()),
+                            accessTokenScopes.getKey()})
+                        .collect(Collectors.toList()));
+        namedParameterJdbcTemplate.update("DELETE FROM " + LEGACY_SCOPE_TABLE
+                + " WHERE application_oauth2_access_token_id IN (:ids)", parameters);
+        return accessTokenIds.size();
+    }
+
+    protected boolean legacyScopeTableExists() {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            // Unquoted names are stored upper or lower case depending on the database
+            for (String tableName : new String[]{LEGACY_SCOPE_TABLE, LEGACY_SCOPE_TABLE.toUpperCase()}) {
+                try (ResultSet tables = metaData.getTables(null, null, tableName, null)) {
+                    if (tables.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+    }
+
+}
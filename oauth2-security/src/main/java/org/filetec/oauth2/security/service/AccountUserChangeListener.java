@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.util.Optional;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import org.filetec.oauth2.security.cache.AccountUserCache;
+import org.filetec.oauth2.security.cache.AccountUserSecondLevelCache;
+import org.filetec.oauth2.security.cluster.UserCacheInvalidationBroadcaster;
+import org.filetec.oauth2.security.model.AccountUserDetails;
+import org.filetec.oauth2.security.model.AccountUserGrantedAuthority;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+public class AccountUserChangeListener implements PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionUpdateEventListener, PostCollectionRemoveEventListener, PostCollectionRecreateEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final transient EntityManagerFactory entityManagerFactory;
+
+    protected final transient AccountUserCache accountUserCache;
+
+    protected final transient VerifiedCredentialCache verifiedCredentialCache;
+
+    protected final transient AccountUserSecondLevelCache accountUserSecondLevelCache;
+
+    protected final transient UserCacheInvalidationBroadcaster userCacheInvalidationBroadcaster;
+
+    @Inject
+    public AccountUserChangeListener(EntityManagerFactory entityManagerFactory,
+            AccountUserCache accountUserCache,
+            VerifiedCredentialCache verifiedCredentialCache,
+            AccountUserSecondLevelCache accountUserSecondLevelCache,
+            UserCacheInvalidationBroadcaster userCacheInvalidationBroadcaster) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.accountUserCache = accountUserCache;
+        this.verifiedCredentialCache = verifiedCredentialCache;
+        this.accountUserSecondLevelCache = accountUserSecondLevelCache;
+        this.userCacheInvalidationBroadcaster = userCacheInvalidationBroadcaster;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry eventListenerRegistry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        eventListenerRegistry.appendListeners(EventType.POST_UPDATE, this);
+        eventListenerRegistry.appendListeners(EventType.POST_DELETE, this);
+        eventListenerRegistry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        eventListenerRegistry.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+        eventListenerRegistry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof AccountUserDetails) {
+            // A renamed account is cached under its previous username
+            String[] propertyNames = event.getPersister().getPropertyNames();
+            for (int index = 0; index < propertyNames.length; index++) {
+                if ("username".equals(propertyNames[index]) && event.getOldState() != null) {
+                    Optional.ofNullable((String) event.getOldState()[index])
+                            .ifPresent(this::removeUserFromCache);
+                }
+            }
+            removeUserFromCache(((AccountUserDetails) event.getEntity()).getUsername());
+        } else if (event.getEntity() instanceof AccountUserGrantedAuthority) {
+            removeAllUsersFromCache();
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof AccountUserDetails) {
+            removeUserFromCache(((AccountUserDetails) event.getEntity()).getUsername());
+        } else if (event.getEntity() instanceof AccountUserGrantedAuthority) {
+            removeAllUsersFromCache();
+        }
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        onCollectionChange(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        onCollectionChange(event);
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        onCollectionChange(event);
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    protected void onCollectionChange(AbstractCollectionEvent event) {
+        Optional.ofNullable(event.getAffectedOwnerOrNull())
+                .filter(AccountUserDetails.class::isInstance)
+                .map(AccountUserDetails.class::cast)
+                .ifPresent(accountUserDetails -> removeUserFromCache(accountUserDetails.getUsername()));
+    }
+
+    protected void removeUserFromCache(String username) {
+        Runnable removal = () -> {
+            accountUserCache.removeUserFromCache(username);
+            verifiedCredentialCache.invalidate(username);
+        };
+        removal.run();
+        afterCompletion(() -> {
+            accountUserSecondLevelCache.evictAccountUsers();
+            removal.run();
+        }, () -> userCacheInvalidationBroadcaster.removeUserFromCache(username));
+    }
+
+    protected void removeAllUsersFromCache() {
+        Runnable removal = () -> {
+            accountUserCache.removeAllUsersFromCache();
+            verifiedCredentialCache.invalidateAll();
+        };
+        removal.run();
+        afterCompletion(() -> {
+            accountUserSecondLevelCache.evictAccountUsers();
+            removal.run();
+        }, userCacheInvalidationBroadcaster::removeAllUsersFromCache);
+    }
+
+    protected void afterCompletion(Runnable onCompletion, Runnable onCommit) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                onCommit.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                onCompletion.run();
+            }
+
+        });
+    }
+
+}
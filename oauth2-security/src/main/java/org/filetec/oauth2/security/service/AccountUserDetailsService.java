@@ -16,6 +16,9 @@
 package org.filetec.oauth2.security.service;
 
 import javax.inject.Inject;
+import org.filetec.oauth2.security.cache.AccountUserCache;
+import org.filetec.oauth2.security.registry.CompactUserDetails;
+import org.filetec.oauth2.security.registry.GrantedAuthorityRegistry;
 import org.filetec.oauth2.security.repository.AccountUserDetailsRepository;
 import org.springframework.context.annotation.Primary;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -33,15 +36,31 @@ public class AccountUserDetailsService implements UserDetailsService {
 
     protected final AccountUserDetailsRepository accountUserDetailsRepository;
 
+    protected final AccountUserCache accountUserCache;
+
+    protected final GrantedAuthorityRegistry grantedAuthorityRegistry;
+
     @Inject
-    public AccountUserDetailsService(AccountUserDetailsRepository accountUserDetailsRepository) {
+    public AccountUserDetailsService(AccountUserDetailsRepository accountUserDetailsRepository,
+            AccountUserCache accountUserCache,
+            GrantedAuthorityRegistry grantedAuthorityRegistry) {
         this.accountUserDetailsRepository = accountUserDetailsRepository;
+        this.accountUserCache = accountUserCache;
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return accountUserDetailsRepository.findByUsername(username)
+        UserDetails userDetails = accountUserCache.getUserFromCache(username);
+        if (userDetails != null) {
+            return userDetails;
+        }
+        long invalidationCount = accountUserCache.getInvalidationCount();
+        userDetails = accountUserDetailsRepository.findByUsername(username)
+                .map(accountUserDetails -> new CompactUserDetails(accountUserDetails, grantedAuthorityRegistry))
                 .orElseThrow(() -> new UsernameNotFoundException("Bad credentials"));
+        accountUserCache.putUserInCache(userDetails, invalidationCount);
+        return userDetails;
     }
 
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.util.TreeSet;
+import javax.inject.Inject;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+public class ApplicationAuthenticationKeyGenerator implements AuthenticationKeyGenerator {
+
+    protected final TokenHasher tokenHasher;
+
+    @Inject
+    public ApplicationAuthenticationKeyGenerator(TokenHasher tokenHasher) {
+        this.tokenHasher = tokenHasher;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String extractKey(OAuth2Authentication authentication) {
+        OAuth2Request request = authentication.getOAuth2Request();
+        StringBuilder key = new StringBuilder(128)
+                .append("client_id=").append(request.getClientId());
+        if (!authentication.isClientOnly()) {
+            key.append(",username=").append(authentication.getName());
+        }
+        if (request.getScope() != null) {
+            key.append(",scope=");
+            boolean first = true;
+            for (String scope : new TreeSet<>(request.getScope())) {
+                if (!first) {
+                    key.append(' ');
+                }
+                key.append(scope);
+                first = false;
+            }
+        }
+        return tokenHasher.hashToHex(key.toString());
+    }
+
+}
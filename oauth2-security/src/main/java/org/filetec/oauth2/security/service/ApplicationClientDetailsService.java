@@ -17,7 +17,6 @@ package org.filetec.oauth2.security.service;
 
 import javax.inject.Inject;
 import org.filetec.oauth2.security.repository.ApplicationClientDetailsRepository;
-import org.springframework.context.annotation.Primary;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.ClientRegistrationException;
@@ -28,7 +27,6 @@ import org.springframework.stereotype.Service;
  * @author warren.nocos
  */
 @Service
-@Primary
 public class ApplicationClientDetailsService implements ClientDetailsService {
 
     protected ApplicationClientDetailsRepository applicationClientDetailsRepository;
@@ -40,7 +38,7 @@ public class ApplicationClientDetailsService implements ClientDetailsService {
 
     @Override
     public ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
-        return applicationClientDetailsRepository.findByClientId(clientId)
+        return applicationClientDetailsRepository.findClientDetailsByClientId(clientId)
                 .orElseThrow(() -> new ClientRegistrationException("Bad credentials"));
     }
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.util.Map;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class ApplicationJwtAccessTokenConverter extends JwtAccessTokenConverter {
+
+    protected final JsonParser jsonParser = JsonParserFactory.create();
+
+    /**
+     * This verifies the signature of an access token and reads its claims.
+     *
+     * @param token the encoded access token
+     * @return the claims of the access token
+     * @throws InvalidTokenException if the access token is malformed or its
+     * signature does not match
+     */
+    @Override
+    public Map<String, Object> decode(String token) {
+        return super.decode(token);
+    }
+
+    /**
+     * This reads the {@code jti} claim of an access token without verifying
+     * its signature, for tokens that have already been verified.
+     *
+     * @param token the encoded access token
+     * @return the {@code jti} claim of the access token
+     * @throws InvalidTokenException if the access token is malformed
+     */
+    public String readTokenId(String token) {
+        try {
+            return (String) jsonParser.parseMap(JwtHelper.decode(token).getClaims())
+                    .get(AccessTokenConverter.JTI);
+        } catch (RuntimeException ex) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", ex);
+        }
+    }
+
+}
@@ -15,37 +15,58 @@
  */
 package org.filetec.oauth2.security.service;
 
-import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.function.Supplier;
 import javax.inject.Inject;
+import javax.inject.Named;
+import org.filetec.oauth2.security.cache.ExpiringCache;
+import org.filetec.oauth2.security.cache.SingleFlight;
+import org.filetec.oauth2.security.codec.OAuth2AuthenticationCodec;
 import org.filetec.oauth2.security.model.ApplicationOAuth2AccessToken;
 import org.filetec.oauth2.security.model.ApplicationOAuth2RefreshToken;
+import org.filetec.oauth2.security.registry.ScopeDictionary;
 import org.filetec.oauth2.security.repository.ApplicationOAuth2AccessTokenRepository;
 import org.filetec.oauth2.security.repository.ApplicationOAuth2RefreshTokenRepository;
+import org.filetec.oauth2.security.store.JpaTokenStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
 import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
 import org.springframework.security.oauth2.provider.token.AuthorizationServerTokenServices;
 import org.springframework.security.oauth2.provider.token.ConsumerTokenServices;
-import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
 import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
 import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  *
@@ -57,6 +78,8 @@ import org.springframework.transaction.annotation.Transactional;
 public class ApplicationTokenServices implements AuthorizationServerTokenServices,
         ResourceServerTokenServices, ConsumerTokenServices {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApplicationTokenServices.class);
+
     protected final ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository;
 
     protected final ApplicationOAuth2RefreshTokenRepository applicationOAuth2RefreshTokenRepository;
@@ -69,88 +92,604 @@ public class ApplicationTokenServices implements AuthorizationServerTokenService
 
     protected final AuthenticationKeyGenerator authenticationKeyGenerator;
 
+    protected final ExpiringCache<String, OAuth2Authentication> authenticationCache;
+
+    protected final OAuth2AuthenticationCodec authenticationCodec;
+
+    protected final boolean revocationCheck;
+
+    protected final TokenValueGenerator tokenValueGenerator;
+
+    protected final TokenHasher tokenHasher;
+
+    protected final AuthenticationWriteBehind authenticationWriteBehind;
+
+    protected final SingleFlight<String, OAuth2AccessToken> accessTokenSingleFlight;
+
+    protected final TransactionTemplate transactionTemplate;
+
+    protected final ScopeDictionary scopeDictionary;
+
+    protected final TokenStore tokenStore;
+
     @Inject
     public ApplicationTokenServices(ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository,
             ApplicationOAuth2RefreshTokenRepository applicationOAuth2RefreshTokenRepository,
             ClientDetailsService clientDetailsService, TokenEnhancer accessTokenEnhancer,
-            AuthenticationManager authenticationManager) {
+            AuthenticationManager authenticationManager,
+            @Named("authenticationCache") ExpiringCache<String, OAuth2Authentication> authenticationCache,
+            OAuth2AuthenticationCodec authenticationCodec,
+            @Value("${oauth2.security.access-token.revocation-check:true}") boolean revocationCheck,
+            TokenValueGenerator tokenValueGenerator,
+            AuthenticationKeyGenerator authenticationKeyGenerator,
+            TokenHasher tokenHasher,
+            AuthenticationWriteBehind authenticationWriteBehind,
+            @Named("accessTokenSingleFlight") SingleFlight<String, OAuth2AccessToken> accessTokenSingleFlight,
+            PlatformTransactionManager transactionManager,
+            ScopeDictionary scopeDictionary,
+            TokenStore tokenStore) {
         this.applicationOAuth2AccessTokenRepository = applicationOAuth2AccessTokenRepository;
         this.applicationOAuth2RefreshTokenRepository = applicationOAuth2RefreshTokenRepository;
         this.clientDetailsService = clientDetailsService;
         this.accessTokenEnhancer = accessTokenEnhancer;
         this.authenticationManager = authenticationManager;
-        authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+        this.authenticationCache = authenticationCache;
+        this.authenticationCodec = authenticationCodec;
+        this.revocationCheck = revocationCheck;
+        this.tokenValueGenerator = tokenValueGenerator;
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
+        this.tokenHasher = tokenHasher;
+        this.authenticationWriteBehind = authenticationWriteBehind;
+        this.accessTokenSingleFlight = accessTokenSingleFlight;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        this.scopeDictionary = scopeDictionary;
+        this.tokenStore = tokenStore;
     }
 
+    /**
+     * This issues the access token of an authentication, re-using the
+     * existing one while it has not expired. Concurrent requests for the same
+     * authentication key share one issuing transaction, run through
+     * {@link #accessTokenSingleFlight}, and all receive the token it issues
+     * once it has committed. Requests that wait past its timeout read what has
+     * been committed instead of issuing another token, and an insert that
+     * loses the race with another node re-uses the access token that won it.
+     *
+     * @param authentication the {@link OAuth2Authentication} to issue for
+     * @return the {@link OAuth2AccessToken}
+     * @throws AuthenticationException
+     * @throws AccessTokenUnavailableException if the issuing transaction
+     * waited for has still not committed an access token
+     */
     @Override
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
-        return applicationOAuth2AccessTokenRepository.findByOauth2AuthenticationKey(authenticationKeyGenerator.extractKey(authentication))
-                .map(applicationOAuth2Access -> Optional.of(applicationOAuth2Access)
-                .filter(theApplicationOAuth2Access -> !theApplicationOAuth2Access.isExpired())
-                // If not expired, re-store the access token in case the authentication has changed
-                .map(nonExpiredApplicationOAuth2Access -> {
-                    nonExpiredApplicationOAuth2Access.setSerializedOAuth2Authentication(SerializationUtils.serialize(authentication));
-                    applicationOAuth2AccessTokenRepository.save(nonExpiredApplicationOAuth2Access);
-                    return nonExpiredApplicationOAuth2Access.getApplicationOAuth2RefreshToken();
-                })
-                // Remove expired token, should be replaced
-                .orElseGet(() -> {
-                    ApplicationOAuth2RefreshToken applicationOAuth2RefreshToken = applicationOAuth2Access.getApplicationOAuth2RefreshToken();
-                    applicationOAuth2RefreshToken.setApplicationOAuth2AccessToken(null);
-                    applicationOAuth2AccessTokenRepository.delete(applicationOAuth2Access);
-                    return applicationOAuth2RefreshToken;
-                }))
-                .map(applicationOAuth2RefreshToken -> Optional.of(applicationOAuth2RefreshToken)
+        String authenticationKey = authenticationKeyGenerator.extractKey(authentication);
+        return accessTokenSingleFlight.execute(authenticationKey,
+                () -> issueOrReuseAccessToken(authentication, authenticationKey),
+                () -> readIssuedAccessToken(authentication, authenticationKey));
+    }
+
+    protected OAuth2AccessToken issueOrReuseAccessToken(OAuth2Authentication authentication, String authenticationKey) {
+        try {
+            return transactionTemplate.execute(status -> createAccessToken(authentication, authenticationKey));
+        } catch (DataIntegrityViolationException ex) {
+            // Another node inserted the access token of this authentication key first, re-use it
+            return transactionTemplate.execute(status -> createAccessToken(authentication, authenticationKey));
+        }
+    }
+
+    protected OAuth2AccessToken readIssuedAccessToken(OAuth2Authentication authentication, String authenticationKey) {
+        return transactionTemplate.execute(status -> applicationOAuth2AccessTokenRepository.findByOauth2AuthenticationKey(authenticationKey)
+                .filter(applicationOAuth2AccessToken -> !applicationOAuth2AccessToken.isExpired())
+                .map(applicationOAuth2AccessToken -> accessTokenEnhancer.enhance(applicationOAuth2AccessToken, authentication)))
+                .orElseThrow(() -> new AccessTokenUnavailableException("The access token is still being issued, try again later"));
+    }
+
+    protected OAuth2AccessToken createAccessToken(OAuth2Authentication authentication, String authenticationKey) {
+        OAuth2AccessToken accessToken = applicationOAuth2AccessTokenRepository.findByOauth2AuthenticationKey(authenticationKey)
+                .map(applicationOAuth2AccessToken -> applicationOAuth2AccessToken.isExpired()
+                        ? reissueExpiredAccessToken(applicationOAuth2AccessToken, authentication)
+                        : reuseAccessToken(applicationOAuth2AccessToken, authentication))
+                .orElseGet(() -> issueAccessToken(authentication));
+        storeAccessTokenAfterCommit(accessToken, authentication);
+        return accessTokenEnhancer.enhance(accessToken, authentication);
+    }
+
+    /**
+     * This returns an access token that has not expired, whether or not it
+     * was issued with a refresh token, re-storing the authentication in case
+     * it has changed.
+     *
+     * @param applicationOAuth2AccessToken the access token that has not
+     * expired
+     * @param authentication the current authentication
+     * @return the same access token
+     */
+    protected ApplicationOAuth2AccessToken reuseAccessToken(ApplicationOAuth2AccessToken applicationOAuth2AccessToken,
+            OAuth2Authentication authentication) {
+        restoreAuthentication(applicationOAuth2AccessToken, authentication);
+        return applicationOAuth2AccessToken;
+    }
+
+    /**
+     * This re-issues an expired access token in place. Clients might be
+     * holding its refresh token, so it stays with the access token while it
+     * has not expired. A new refresh token is only issued if there was none,
+     * or it has expired, in which case the expired one is removed.
+     *
+     * @param applicationOAuth2AccessToken the expired access token
+     * @param authentication the current authentication
+     * @return the re-issued access token
+     */
+    protected ApplicationOAuth2AccessToken reissueExpiredAccessToken(ApplicationOAuth2AccessToken applicationOAuth2AccessToken,
+            OAuth2Authentication authentication) {
+        ClientDetails clientDetails = clientDetailsService.loadClientByClientId(authentication.getOAuth2Request().getClientId());
+        Optional<ApplicationOAuth2RefreshToken> previousApplicationOAuth2RefreshToken = Optional.ofNullable(applicationOAuth2AccessToken.getApplicationOAuth2RefreshToken());
+        ApplicationOAuth2RefreshToken applicationOAuth2RefreshToken = previousApplicationOAuth2RefreshToken
                 .filter(theApplicationOAuth2RefreshToken -> !theApplicationOAuth2RefreshToken.isExpired())
-                .map(ApplicationOAuth2RefreshToken::getApplicationOAuth2AccessToken)
-                // But the refresh token itself might need to be re-issued if it has
-                // expired.
-                .orElseGet(() -> {
-                    ClientDetails clientDetails = clientDetailsService.loadClientByClientId(authentication.getOAuth2Request().getClientId());
-                    ApplicationOAuth2RefreshToken newApplicationOAuth2RefreshToken = createApplicationOAuth2RefreshToken(clientDetails);
-                    Optional.ofNullable(applicationOAuth2RefreshToken.getApplicationOAuth2AccessToken())
-                            .ifPresent(applicationOAuth2AccessToken -> {
-                                applicationOAuth2AccessToken.setApplicationOAuth2RefreshToken(newApplicationOAuth2RefreshToken);
-                                newApplicationOAuth2RefreshToken.setApplicationOAuth2AccessToken(applicationOAuth2AccessToken);
-                            });
-                    return newApplicationOAuth2RefreshToken.getApplicationOAuth2AccessToken();
-                }))
-                // Only create a new refresh token if there wasn't an existing one
-                // associated with an expired access token.
-                // Clients might be holding existing refresh tokens, so we re-use it in
-                // the case that the old access token
-                // expired.
-                .orElseGet(() -> {
-                    ClientDetails clientDetails = clientDetailsService.loadClientByClientId(authentication.getOAuth2Request().getClientId());
-                    return createApplicationOAuth2AccessToken(clientDetails, authentication, createApplicationOAuth2RefreshToken(clientDetails));
-                });
+                .orElseGet(() -> saveApplicationOAuth2RefreshToken(clientDetails));
+        previousApplicationOAuth2RefreshToken
+                .filter(theApplicationOAuth2RefreshToken -> theApplicationOAuth2RefreshToken != applicationOAuth2RefreshToken)
+                .ifPresent(applicationOAuth2RefreshTokenRepository::delete);
+        return applicationOAuth2AccessTokenRepository.save(issueApplicationOAuth2AccessToken(applicationOAuth2AccessToken,
+                clientDetails, authentication, applicationOAuth2RefreshToken));
+    }
+
+    protected ApplicationOAuth2AccessToken issueAccessToken(OAuth2Authentication authentication) {
+        ClientDetails clientDetails = clientDetailsService.loadClientByClientId(authentication.getOAuth2Request().getClientId());
+        // Flushed, so that losing the race for the authentication key fails here
+        return applicationOAuth2AccessTokenRepository.saveAndFlush(createApplicationOAuth2AccessToken(clientDetails, authentication,
+                saveApplicationOAuth2RefreshToken(clientDetails)));
     }
 
+    protected ApplicationOAuth2RefreshToken saveApplicationOAuth2RefreshToken(ClientDetails clientDetails) {
+        return Optional.ofNullable(createApplicationOAuth2RefreshToken(clientDetails))
+                // Clients without the refresh_token grant get no refresh token
+                .map(applicationOAuth2RefreshTokenRepository::save)
+                .orElse(null);
+    }
+
+    /**
+     * This rotates a refresh token, re-issuing its access token in place. The
+     * refresh token, its access token and the stored authentication are read in
+     * one query, and both rows are updated in one flush. Replays of the same
+     * refresh token racing this one fail the optimistic lock on the refresh
+     * token instead of waiting for a pessimistic lock, and are rejected as
+     * invalid grants without issuing a second token. A refresh token whose
+     * access token has been removed is issued a new access token from the
+     * authentication it carries.
+     *
+     * @param refreshToken the value of the refresh token, or the encoded
+     * refresh token for self-contained access tokens
+     * @param tokenRequest the {@link TokenRequest} of the client
+     * @return the re-issued {@link OAuth2AccessToken}
+     * @throws AuthenticationException
+     */
     @Override
     @Transactional(noRollbackFor = {InvalidTokenException.class, InvalidGrantException.class})
     public OAuth2AccessToken refreshAccessToken(String refreshToken, TokenRequest tokenRequest) throws AuthenticationException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        String storedRefreshTokenValue;
+        try {
+            storedRefreshTokenValue = isSelfContained() ? getTokenId(refreshToken) : refreshToken;
+        } catch (InvalidTokenException ex) {
+            throw new InvalidGrantException("Invalid refresh token: " + refreshToken);
+        }
+        ApplicationOAuth2RefreshToken applicationOAuth2RefreshToken = Optional.ofNullable(storedRefreshTokenValue)
+                .flatMap(applicationOAuth2RefreshTokenRepository::findWithAccessTokenByValue)
+                .orElseThrow(() -> new InvalidGrantException("Invalid refresh token: " + refreshToken));
+        ApplicationOAuth2AccessToken applicationOAuth2AccessToken = applicationOAuth2RefreshToken.getApplicationOAuth2AccessToken();
+        byte[] serializedOAuth2Authentication = Optional.ofNullable(applicationOAuth2AccessToken)
+                .map(ApplicationOAuth2AccessToken::getSerializedOAuth2Authentication)
+                // The access token was removed, the refresh token carries the authentication
+                .orElseGet(applicationOAuth2RefreshToken::getSerializedOAuth2Authentication);
+        OAuth2Authentication authentication = Optional.ofNullable(serializedOAuth2Authentication)
+                .map(authenticationCodec::decode)
+                .orElseThrow(() -> new InvalidGrantException("Invalid refresh token: " + refreshToken));
+        if (!authentication.getOAuth2Request().getClientId().equals(tokenRequest.getClientId())) {
+            throw new InvalidGrantException("Wrong client for this refresh token: " + refreshToken);
+        }
+        // The authentication cache is keyed by the access token as it was handed out
+        Optional<String> previousAccessTokenKey = Optional.ofNullable(applicationOAuth2AccessToken)
+                .map(previousAccessToken -> accessTokenEnhancer.enhance(previousAccessToken, authentication).getValue());
+        Optional<String> previousAccessTokenValue = Optional.ofNullable(applicationOAuth2AccessToken)
+                .map(ApplicationOAuth2AccessToken::getValue);
+        if (applicationOAuth2RefreshToken.isExpired()) {
+            previousAccessTokenKey.ifPresent(authenticationCache::invalidate);
+            previousAccessTokenValue.ifPresent(this::removeAccessTokenAfterCommit);
+            Optional.ofNullable(applicationOAuth2AccessToken)
+                    .ifPresent(applicationOAuth2AccessTokenRepository::delete);
+            applicationOAuth2RefreshTokenRepository.delete(applicationOAuth2RefreshToken);
+            throw new InvalidTokenException("Invalid refresh token (expired): " + refreshToken);
+        }
+        OAuth2Authentication refreshedAuthentication = createRefreshedAuthentication(authentication, tokenRequest);
+        ClientDetails clientDetails = clientDetailsService.loadClientByClientId(tokenRequest.getClientId());
+        String refreshedAuthenticationKey = authenticationKeyGenerator.extractKey(refreshedAuthentication);
+        applicationOAuth2AccessTokenRepository.findByOauth2AuthenticationKey(refreshedAuthenticationKey)
+                .filter(otherApplicationOAuth2AccessToken -> otherApplicationOAuth2AccessToken != applicationOAuth2AccessToken)
+                .ifPresent(this::removeSupersededAccessToken);
+
+        applicationOAuth2RefreshToken.setValue(tokenValueGenerator.generate());
+        applicationOAuth2RefreshToken.setExpiration(new Date(System.currentTimeMillis()
+                + (Optional.ofNullable(clientDetails.getRefreshTokenValiditySeconds())
+                        // default 30 days
+                        .orElse(60 * 60 * 24 * 30) * 1000L)));
+        ApplicationOAuth2AccessToken refreshedApplicationOAuth2AccessToken = Optional.ofNullable(applicationOAuth2AccessToken)
+                .map(existingApplicationOAuth2AccessToken -> {
+                    existingApplicationOAuth2AccessToken.setValue(tokenValueGenerator.generate());
+                    existingApplicationOAuth2AccessToken.setExpiresIn(Optional.ofNullable(clientDetails.getAccessTokenValiditySeconds())
+                            // default 12 hours.
+                            .orElse(60 * 60 * 12));
+                    existingApplicationOAuth2AccessToken.setScope(refreshedAuthentication.getOAuth2Request().getScope());
+                    existingApplicationOAuth2AccessToken.setOauth2AuthenticationKey(refreshedAuthenticationKey);
+                    setSerializedOAuth2Authentication(existingApplicationOAuth2AccessToken, authenticationCodec.encode(refreshedAuthentication));
+                    return existingApplicationOAuth2AccessToken;
+                })
+                .orElseGet(() -> {
+                    applicationOAuth2RefreshToken.setSerializedOAuth2Authentication(null);
+                    return applicationOAuth2AccessTokenRepository.save(createApplicationOAuth2AccessToken(clientDetails,
+                            refreshedAuthentication, applicationOAuth2RefreshToken));
+                });
+        try {
+            applicationOAuth2RefreshTokenRepository.saveAndFlush(applicationOAuth2RefreshToken);
+        } catch (OptimisticLockingFailureException ex) {
+            // Another request rotated this refresh token first, keep its tokens
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            throw new InvalidGrantException("Invalid refresh token: " + refreshToken);
+        }
+        previousAccessTokenKey.ifPresent(authenticationCache::invalidate);
+        previousAccessTokenValue.ifPresent(this::removeAccessTokenAfterCommit);
+        storeAccessTokenAfterCommit(refreshedApplicationOAuth2AccessToken, refreshedAuthentication);
+        return accessTokenEnhancer.enhance(refreshedApplicationOAuth2AccessToken, refreshedAuthentication);
     }
 
+    /**
+     * This reads the access token issued for an authentication, without its
+     * stored authentication.
+     *
+     * @param authentication the {@link OAuth2Authentication}
+     * @return the {@link OAuth2AccessToken}, or {@code null} if none was
+     * issued
+     */
     @Override
     public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return applicationOAuth2AccessTokenRepository.findProjectionByOauth2AuthenticationKey(
+                authenticationKeyGenerator.extractKey(authentication))
+                .map(accessTokenProjection -> accessTokenProjection.toAccessToken(scopeDictionary::decode))
+                .map(accessToken -> accessTokenEnhancer.enhance(accessToken, authentication))
+                .orElse(null);
     }
 
+    /**
+     * This loads the {@link OAuth2Authentication} of an access token, serving
+     * repeated lookups of the same token from {@link #authenticationCache}
+     * until the token expires, or for at most the maximum time to live of the
+     * cache, which bounds how long an opaque token revoked or rotated on
+     * another node is still accepted here. Self-contained access tokens
+     * served from the cache are still checked for revocation. Opaque access
+     * tokens missing from the cache are then read from {@link #tokenStore},
+     * and only from the database if it does not hold them. Callers receive
+     * their own shallow copy, since the framework sets request details on the
+     * returned authentication.
+     *
+     * @param accessToken the value of the access token
+     * @return the {@link OAuth2Authentication} of the access token
+     * @throws AuthenticationException
+     * @throws InvalidTokenException if the access token does not exist, has
+     * expired or has been revoked
+     */
     @Override
     public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        OAuth2Authentication authentication = authenticationCache.get(accessToken)
+                .map(cachedAuthentication -> {
+                    if (isSelfContained()) {
+                        checkRevocation(accessToken, ((ApplicationJwtAccessTokenConverter) accessTokenEnhancer).readTokenId(accessToken));
+                    }
+                    return cachedAuthentication;
+                })
+                .orElseGet(() -> isSelfContained()
+                        ? loadSelfContainedAuthentication(accessToken)
+                        : readTokenStoreAuthentication(accessToken)
+                                .orElseGet(() -> loadStoredAuthentication(accessToken)));
+        return new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
     }
 
+    /**
+     * This reads an access token without its stored authentication.
+     * Self-contained access tokens are read from their own claims, and
+     * opaque ones from {@link #tokenStore} before the database.
+     *
+     * @param accessToken the value of the access token
+     * @return the {@link OAuth2AccessToken}, or {@code null} if it does not
+     * exist
+     */
     @Override
     public OAuth2AccessToken readAccessToken(String accessToken) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        if (isSelfContained()) {
+            ApplicationJwtAccessTokenConverter jwtAccessTokenConverter = (ApplicationJwtAccessTokenConverter) accessTokenEnhancer;
+            try {
+                return jwtAccessTokenConverter.extractAccessToken(accessToken, jwtAccessTokenConverter.decode(accessToken));
+            } catch (InvalidTokenException ex) {
+                return null;
+            }
+        }
+        return readTokenStoreAccessToken(accessToken)
+                .orElseGet(() -> applicationOAuth2AccessTokenRepository.findProjectionByValue(accessToken)
+                        .map(accessTokenProjection -> accessTokenProjection.toAccessToken(scopeDictionary::decode))
+                        .orElse(null));
     }
 
+    /**
+     * This revokes an access token together with its refresh token. For
+     * self-contained access tokens, the stored token is the one named by the
+     * {@code jti} claim.
+     *
+     * @param tokenValue the value of the access token
+     * @return {@code true} if the access token existed
+     */
     @Override
+    @Transactional
     public boolean revokeToken(String tokenValue) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        authenticationCache.invalidate(tokenValue);
+        String storedTokenValue;
+        try {
+            storedTokenValue = isSelfContained() ? getTokenId(tokenValue) : tokenValue;
+        } catch (InvalidTokenException ex) {
+            return false;
+        }
+        return applicationOAuth2AccessTokenRepository.findByValue(storedTokenValue)
+                .map(applicationOAuth2AccessToken -> {
+                    removeAccessTokenAfterCommit(storedTokenValue);
+                    applicationOAuth2AccessTokenRepository.delete(applicationOAuth2AccessToken);
+                    Optional.ofNullable(applicationOAuth2AccessToken.getApplicationOAuth2RefreshToken())
+                            .ifPresent(applicationOAuth2RefreshTokenRepository::delete);
+                    return true;
+                })
+                .orElse(false);
+    }
+
+    /**
+     * This removes the access token that already holds the authentication key
+     * a refresh narrows another access token to, since there is one access
+     * token per authentication key. Its refresh token is kept, carrying the
+     * authentication, and it is removed before the refreshed access token
+     * takes the key.
+     *
+     * @param applicationOAuth2AccessToken the access token holding the key
+     */
+    protected void removeSupersededAccessToken(ApplicationOAuth2AccessToken applicationOAuth2AccessToken) {
+        authenticationCache.invalidate(applicationOAuth2AccessToken.getValue());
+        removeAccessTokenAfterCommit(applicationOAuth2AccessToken.getValue());
+        Optional.ofNullable(applicationOAuth2AccessToken.getApplicationOAuth2RefreshToken())
+                .ifPresent(applicationOAuth2RefreshToken -> {
+                    applicationOAuth2RefreshToken.setSerializedOAuth2Authentication(applicationOAuth2AccessToken.getSerializedOAuth2Authentication());
+                    applicationOAuth2RefreshToken.setApplicationOAuth2AccessToken(null);
+                });
+        applicationOAuth2AccessTokenRepository.delete(applicationOAuth2AccessToken);
+        applicationOAuth2AccessTokenRepository.flush();
+    }
+
+    protected boolean isSelfContained() {
+        return accessTokenEnhancer instanceof ApplicationJwtAccessTokenConverter;
+    }
+
+    /**
+     * Opaque access tokens are kept in {@link #tokenStore} too, once their
+     * rows have been committed, unless the store is the database itself.
+     * Self-contained access tokens carry their own authentication.
+     *
+     * @return whether {@link #tokenStore} holds the access tokens
+     */
+    protected boolean isTokenStoreTier() {
+        return !isSelfContained() && !(tokenStore instanceof JpaTokenStore);
+    }
+
+    /**
+     * This reads the authentication of an opaque access token from
+     * {@link #tokenStore}, caching it like one read from the database.
+     *
+     * @param accessToken the value of the access token
+     * @return the {@link OAuth2Authentication}, empty if the store does not
+     * hold the access token
+     */
+    protected Optional<OAuth2Authentication> readTokenStoreAuthentication(String accessToken) {
+        return readTokenStoreAccessToken(accessToken)
+                .flatMap(storedAccessToken -> readFromTokenStore(() -> tokenStore.readAuthentication(accessToken))
+                        .map(authentication -> {
+                            authenticationCache.put(accessToken, authentication, storedAccessToken.getExpiration());
+                            return authentication;
+                        }));
+    }
+
+    /**
+     * This reads an opaque access token from {@link #tokenStore}. The
+     * database stays the authority on whether it still exists, since it may
+     * have been revoked or rotated on a node whose store this one does not
+     * share, but that is answered from the index on its value instead of
+     * reading and decoding its stored authentication.
+     *
+     * @param accessToken the value of the access token
+     * @return the {@link OAuth2AccessToken}, empty if the store does not hold
+     * it, or it has expired or no longer exists
+     */
+    protected Optional<OAuth2AccessToken> readTokenStoreAccessToken(String accessToken) {
+        if (!isTokenStoreTier()) {
+            return Optional.empty();
+        }
+        return readFromTokenStore(() -> tokenStore.readAccessToken(accessToken))
+                .filter(storedAccessToken -> !storedAccessToken.isExpired())
+                .filter(storedAccessToken -> {
+                    if (applicationOAuth2AccessTokenRepository.countByValue(accessToken) > 0) {
+                        return true;
+                    }
+                    writeToTokenStore(() -> tokenStore.removeAccessToken(storedAccessToken));
+                    return false;
+                });
+    }
+
+    /**
+     * This keeps an issued access token in {@link #tokenStore} once the
+     * current transaction commits. The copy stored holds no entity.
+     *
+     * @param accessToken the issued access token
+     * @param authentication the {@link OAuth2Authentication} of the access
+     * token
+     */
+    protected void storeAccessTokenAfterCommit(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        if (!isTokenStoreTier()) {
+            return;
+        }
+        DefaultOAuth2AccessToken storedAccessToken = new DefaultOAuth2AccessToken(accessToken.getValue());
+        storedAccessToken.setExpiration(accessToken.getExpiration());
+        storedAccessToken.setTokenType(accessToken.getTokenType());
+        storedAccessToken.setScope(accessToken.getScope());
+        Optional.ofNullable(accessToken.getRefreshToken())
+                .ifPresent(refreshToken -> storedAccessToken.setRefreshToken(refreshToken instanceof ExpiringOAuth2RefreshToken
+                        ? new DefaultExpiringOAuth2RefreshToken(refreshToken.getValue(), ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration())
+                        : new DefaultOAuth2RefreshToken(refreshToken.getValue())));
+        afterCommit(() -> writeToTokenStore(() -> tokenStore.storeAccessToken(storedAccessToken, authentication)));
+    }
+
+    protected void removeAccessTokenAfterCommit(String accessTokenValue) {
+        if (isTokenStoreTier()) {
+            afterCommit(() -> writeToTokenStore(() -> tokenStore.removeAccessToken(new DefaultOAuth2AccessToken(accessTokenValue))));
+        }
+    }
+
+    protected void afterCommit(Runnable onCommit) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCommit() {
+                onCommit.run();
+            }
+
+        });
+    }
+
+    /**
+     * The database holds every access token, so a store that cannot be read,
+     * such as a partition whose nodes are unreachable, is read past.
+     *
+     * @param <T> the type read
+     * @param read the read from {@link #tokenStore}
+     * @return what was read, empty if nothing was or the read failed
+     */
+    protected <T> Optional<T> readFromTokenStore(Supplier<T> read) {
+        try {
+            return Optional.ofNullable(read.get());
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Unable to read from the token store, reading the database instead", ex);
+            return Optional.empty();
+        }
+    }
+
+    protected void writeToTokenStore(Runnable write) {
+        try {
+            write.run();
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Unable to write to the token store", ex);
+        }
+    }
+
+    protected OAuth2Authentication loadStoredAuthentication(String accessToken) {
+        return applicationOAuth2AccessTokenRepository.findSerializedOAuth2AuthenticationByValue(accessToken)
+                .map(serializedOAuth2Authentication -> Optional.of(serializedOAuth2Authentication)
+                .filter(theSerializedOAuth2Authentication -> !theSerializedOAuth2Authentication.isExpired())
+                .map(nonExpiredSerializedOAuth2Authentication -> {
+                    OAuth2Authentication authentication = authenticationCodec.decode(nonExpiredSerializedOAuth2Authentication.getSerializedOAuth2Authentication());
+                    authenticationCache.put(accessToken, authentication, nonExpiredSerializedOAuth2Authentication.getExpiration());
+                    return authentication;
+                })
+                .orElseThrow(() -> new InvalidTokenException("Access token expired: " + accessToken)))
+                .orElseThrow(() -> new InvalidTokenException("Invalid access token: " + accessToken));
+    }
+
+    /**
+     * This verifies a self-contained access token without the token store,
+     * except for the optional revocation check against the stored token named
+     * by its {@code jti} claim.
+     *
+     * @param accessToken the encoded access token
+     * @return the {@link OAuth2Authentication} carried by the access token
+     */
+    protected OAuth2Authentication loadSelfContainedAuthentication(String accessToken) {
+        ApplicationJwtAccessTokenConverter jwtAccessTokenConverter = (ApplicationJwtAccessTokenConverter) accessTokenEnhancer;
+        Map<String, Object> claims = jwtAccessTokenConverter.decode(accessToken);
+        Date expiration = Optional.ofNullable((Number) claims.get(AccessTokenConverter.EXP))
+                .map(exp -> new Date(exp.longValue() * 1000L))
+                .orElse(null);
+        if (expiration != null && expiration.getTime() < System.currentTimeMillis()) {
+            throw new InvalidTokenException("Access token expired: " + accessToken);
+        }
+        checkRevocation(accessToken, (String) claims.get(AccessTokenConverter.JTI));
+        OAuth2Authentication authentication = jwtAccessTokenConverter.extractAuthentication(claims);
+        authenticationCache.put(accessToken, authentication, expiration);
+        return authentication;
+    }
+
+    protected void checkRevocation(String selfContainedAccessToken, String tokenId) {
+        if (revocationCheck && applicationOAuth2AccessTokenRepository.countByValue(tokenId) == 0) {
+            authenticationCache.invalidate(selfContainedAccessToken);
+            throw new InvalidTokenException("Access token revoked: " + selfContainedAccessToken);
+        }
+    }
+
+    protected String getTokenId(String selfContainedAccessToken) {
+        return (String) ((ApplicationJwtAccessTokenConverter) accessTokenEnhancer).decode(selfContainedAccessToken)
+                .get(AccessTokenConverter.JTI);
+    }
+
+    /**
+     * This re-stores the authentication of an existing access token if it has
+     * changed since it was stored. The write is handed to
+     * {@link AuthenticationWriteBehind} when it has room, in which case the
+     * cached authentication is replaced right away, otherwise it is written
+     * with the current transaction.
+     *
+     * @param applicationOAuth2AccessToken the existing access token
+     * @param authentication the current authentication
+     */
+    protected void restoreAuthentication(ApplicationOAuth2AccessToken applicationOAuth2AccessToken,
+            OAuth2Authentication authentication) {
+        byte[] serializedOAuth2Authentication = authenticationCodec.encode(authentication);
+        String serializedOAuth2AuthenticationDigest = tokenHasher.hashToBase64Url(serializedOAuth2Authentication);
+        if (serializedOAuth2AuthenticationDigest.equals(applicationOAuth2AccessToken.getSerializedOAuth2AuthenticationDigest())) {
+            return;
+        }
+        if (authenticationWriteBehind.submit(applicationOAuth2AccessToken.getId(), applicationOAuth2AccessToken.getValue(),
+                serializedOAuth2Authentication, serializedOAuth2AuthenticationDigest)) {
+            authenticationCache.put(applicationOAuth2AccessToken.getValue(),
+                    authenticationCodec.decode(serializedOAuth2Authentication), applicationOAuth2AccessToken.getExpiration());
+        } else {
+            applicationOAuth2AccessToken.setSerializedOAuth2Authentication(serializedOAuth2Authentication);
+            applicationOAuth2AccessToken.setSerializedOAuth2AuthenticationDigest(serializedOAuth2AuthenticationDigest);
+            applicationOAuth2AccessTokenRepository.save(applicationOAuth2AccessToken);
+            authenticationCache.invalidate(applicationOAuth2AccessToken.getValue());
+        }
+    }
+
+    protected void setSerializedOAuth2Authentication(ApplicationOAuth2AccessToken applicationOAuth2AccessToken,
+            byte[] serializedOAuth2Authentication) {
+        applicationOAuth2AccessToken.setSerializedOAuth2Authentication(serializedOAuth2Authentication);
+        applicationOAuth2AccessToken.setSerializedOAuth2AuthenticationDigest(tokenHasher.hashToBase64Url(serializedOAuth2Authentication));
+    }
+
+    protected OAuth2Authentication createRefreshedAuthentication(OAuth2Authentication authentication, TokenRequest tokenRequest) {
+        OAuth2Request oAuth2Request = authentication.getOAuth2Request().refresh(tokenRequest);
+        Set<String> scope = tokenRequest.getScope();
+        if (scope != null && !scope.isEmpty()) {
+            Set<String> originalScope = oAuth2Request.getScope();
+            if (originalScope == null || !originalScope.containsAll(scope)) {
+                throw new InvalidScopeException("Unable to narrow the scope of the client authentication to " + scope + ".", originalScope);
+            }
+            oAuth2Request = oAuth2Request.narrowScope(scope);
+        }
+        return new OAuth2Authentication(oAuth2Request, authentication.getUserAuthentication());
     }
 
     protected ApplicationOAuth2RefreshToken createApplicationOAuth2RefreshToken(ClientDetails clientDetails) {
@@ -162,15 +701,7 @@ public class ApplicationTokenServices implements AuthorizationServerTokenService
                 .map(refreshTokenValiditySeconds -> {
                     ApplicationOAuth2RefreshToken applicationOAuth2RefreshToken;
                     applicationOAuth2RefreshToken = new ApplicationOAuth2RefreshToken();
-                    for (boolean exists = true; exists;) {
-                        String hashedRefreshTokenValue = hashObject(UUID.randomUUID().toString());
-                        exists = applicationOAuth2RefreshTokenRepository.findByValue(hashedRefreshTokenValue)
-                                .map(oAuth2RefreshToken -> true)
-                                .orElseGet(() -> {
-                                    applicationOAuth2RefreshToken.setValue(hashedRefreshTokenValue);
-                                    return false;
-                                });
-                    }
+                    applicationOAuth2RefreshToken.setValue(tokenValueGenerator.generate());
                     applicationOAuth2RefreshToken.setExpiration(new Date(System.currentTimeMillis() + (refreshTokenValiditySeconds * 1000L)));
                     return applicationOAuth2RefreshToken;
                 })
@@ -179,32 +710,25 @@ public class ApplicationTokenServices implements AuthorizationServerTokenService
 
     protected ApplicationOAuth2AccessToken createApplicationOAuth2AccessToken(ClientDetails clientDetails,
             OAuth2Authentication authentication, ApplicationOAuth2RefreshToken applicationOAuth2RefreshToken) {
-        ApplicationOAuth2AccessToken applicationOAuth2AccessToken;
-        applicationOAuth2AccessToken = new ApplicationOAuth2AccessToken();
+        return issueApplicationOAuth2AccessToken(new ApplicationOAuth2AccessToken(), clientDetails, authentication,
+                applicationOAuth2RefreshToken);
+    }
+
+    protected ApplicationOAuth2AccessToken issueApplicationOAuth2AccessToken(ApplicationOAuth2AccessToken applicationOAuth2AccessToken,
+            ClientDetails clientDetails, OAuth2Authentication authentication, ApplicationOAuth2RefreshToken applicationOAuth2RefreshToken) {
+        applicationOAuth2AccessToken.setValue(tokenValueGenerator.generate());
         Integer accessTokenValiditySeconds = clientDetails.getAccessTokenValiditySeconds();
         // default 12 hours.
         applicationOAuth2AccessToken.setExpiresIn(accessTokenValiditySeconds == null ? 60 * 60 * 12 : accessTokenValiditySeconds);
         applicationOAuth2AccessToken.setScope(authentication.getOAuth2Request().getScope());
         applicationOAuth2AccessToken.setOauth2AuthenticationKey(authenticationKeyGenerator.extractKey(authentication));
-        applicationOAuth2AccessToken.setSerializedOAuth2Authentication(SerializationUtils.serialize(authentication));
+        applicationOAuth2AccessToken.setClientId(authentication.getOAuth2Request().getClientId());
+        applicationOAuth2AccessToken.setUserName(authentication.isClientOnly() ? null : authentication.getName());
+        setSerializedOAuth2Authentication(applicationOAuth2AccessToken, authenticationCodec.encode(authentication));
         applicationOAuth2AccessToken.setApplicationOAuth2RefreshToken(applicationOAuth2RefreshToken);
-        applicationOAuth2RefreshToken.setApplicationOAuth2AccessToken(applicationOAuth2AccessToken);
+        Optional.ofNullable(applicationOAuth2RefreshToken)
+                .ifPresent(theApplicationOAuth2RefreshToken -> theApplicationOAuth2RefreshToken.setApplicationOAuth2AccessToken(applicationOAuth2AccessToken));
         return applicationOAuth2AccessToken;
     }
 
-    protected String hashObject(Object object) {
-        MessageDigest digest;
-        try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException ex) {
-            throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
-        }
-        try {
-            byte[] bytes = digest.digest(object.toString().getBytes("UTF-8"));
-            return String.format("%032x", new BigInteger(1, bytes));
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
-        }
-    }
-
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2AccessTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class AuthenticationWriteBehind {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuthenticationWriteBehind.class);
+
+    protected final ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository;
+
+    protected final TransactionTemplate transactionTemplate;
+
+    protected final boolean enabled;
+
+    protected final int queueCapacity;
+
+    protected final int batchSize;
+
+    protected final ConcurrentMap<BigInteger, PendingWrite> pendingWrites;
+
+    protected final LongAdder submittedCount;
+
+    protected final LongAdder coalescedCount;
+
+    protected final LongAdder refusedCount;
+
+    protected final LongAdder flushedCount;
+
+    protected final LongAdder failedCount;
+
+    @Inject
+    public AuthenticationWriteBehind(ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${oauth2.security.authentication-write-behind.enabled:true}") boolean enabled,
+            @Value("${oauth2.security.authentication-write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${oauth2.security.authentication-write-behind.batch-size:200}") int batchSize) {
+        this.applicationOAuth2AccessTokenRepository = applicationOAuth2AccessTokenRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        pendingWrites = new ConcurrentHashMap<>();
+        submittedCount = new LongAdder();
+        coalescedCount = new LongAdder();
+        refusedCount = new LongAdder();
+        flushedCount = new LongAdder();
+        failedCount = new LongAdder();
+    }
+
+    /**
+     * This queues the authentication of an access token to be stored.
+     *
+     * @param id the id of the access token
+     * @param value the value of the access token, so that the write is dropped
+     * if the access token is re-issued first
+     * @param serializedOAuth2Authentication the encoded authentication
+     * @param serializedOAuth2AuthenticationDigest the digest of the encoded
+     * authentication
+     * @return {@code false} if write-behind is disabled or the queue is full,
+     * in which case the caller stores the authentication itself
+     */
+    public boolean submit(BigInteger id, String value, byte[] serializedOAuth2Authentication,
+            String serializedOAuth2AuthenticationDigest) {
+        if (!enabled) {
+            return false;
+        }
+        PendingWrite pendingWrite = new PendingWrite(id, value, serializedOAuth2Authentication,
+                serializedOAuth2AuthenticationDigest);
+        boolean[] accepted = {true};
+        pendingWrites.compute(id, (theId, previousPendingWrite) -> {
+            if (previousPendingWrite != null) {
+                coalescedCount.increment();
+                return pendingWrite;
+            }
+            if (pendingWrites.size() >= queueCapacity) {
+                accepted[0] = false;
+                return null;
+            }
+            return pendingWrite;
+        });
+        if (accepted[0]) {
+            submittedCount.increment();
+        } else {
+            refusedCount.increment();
+        }
+        return accepted[0];
+    }
+
+    @ManagedOperation
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${oauth2.security.authentication-write-behind.flush-interval-millis:1000}")
+    public synchronized void flush() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        for (PendingWrite pendingWrite : pendingWrites.values()) {
+            // A newer write submitted meanwhile stays queued for the next batch
+            if (pendingWrites.remove(pendingWrite.id, pendingWrite)) {
+                batch.add(pendingWrite);
+            }
+            if (batch.size() == batchSize) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    @ManagedAttribute
+    public int getPendingCount() {
+        return pendingWrites.size();
+    }
+
+    @ManagedAttribute
+    public long getSubmittedCount() {
+        return submittedCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getRefusedCount() {
+        return refusedCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getFlushedCount() {
+        return flushedCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    protected void write(List<PendingWrite> batch) {
+        try {
+            transactionTemplate.execute(status -> {
+                batch.forEach(pendingWrite -> applicationOAuth2AccessTokenRepository.updateSerializedOAuth2Authentication(
+                        pendingWrite.id, pendingWrite.value, pendingWrite.serializedOAuth2Authentication,
+                        pendingWrite.serializedOAuth2AuthenticationDigest));
+                return null;
+            });
+            flushedCount.add(batch.size());
+        } catch (RuntimeException ex) {
+            // The stored authentication is re-written the next time the client asks for a token
+            failedCount.add(batch.size());
+            LOGGER.warn("Failed to store {} pending authentications", batch.size(), ex);
+        }
+    }
+
+    protected static class PendingWrite {
+
+        protected final BigInteger id;
+
+        protected final String value;
+
+        protected final byte[] serializedOAuth2Authentication;
+
+        protected final String serializedOAuth2AuthenticationDigest;
+
+        protected PendingWrite(BigInteger id, String value, byte[] serializedOAuth2Authentication,
+                String serializedOAuth2AuthenticationDigest) {
+            this.id = id;
+            this.value = value;
+            this.serializedOAuth2Authentication = serializedOAuth2Authentication;
+            this.serializedOAuth2AuthenticationDigest = serializedOAuth2AuthenticationDigest;
+        }
+
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.store.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BoundedPasswordEncoder.class);
+
+    private static final int MAXIMUM_CALIBRATED_STRENGTH = 16;
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
+    /**
+     * This matches values that look like hashes of some other scheme, a
+     * modular crypt value, a {@code {id}} prefixed value, a hex digest of at
+     * least 128 bits or a padded Base64 digest, none of which are taken for
+     * plain text.
+     */
+    private static final Pattern HASH_PATTERN = Pattern.compile("\\A(?:\\$.*|\\{[^}]*}.*|[0-9A-Fa-f]{32,}|[+/0-9A-Za-z]{22,}={1,2})\\z");
+
+    protected final int strength;
+
+    protected final PasswordEncoder passwordEncoder;
+
+    protected final ThreadPoolExecutor executor;
+
+    protected final long waitTimeoutMillis;
+
+    protected final boolean plainTextFallback;
+
+    protected final LatencyHistogram hashTimes;
+
+    protected final LongAdder hashCount;
+
+    protected final LongAdder rejectedCount;
+
+    protected final LongAdder timedOutCount;
+
+    protected final LongAdder plainTextMatchCount;
+
+    @Inject
+    public BoundedPasswordEncoder(@Value("${oauth2.security.password-encoder.strength:0}") int strength,
+            @Value("${oauth2.security.password-encoder.minimum-strength:10}") int minimumStrength,
+            @Value("${oauth2.security.password-encoder.target-millis:100}") long targetMillis,
+            @Value("${oauth2.security.password-encoder.threads:0}") int threads,
+            @Value("${oauth2.security.password-encoder.queue-capacity:64}") int queueCapacity,
+            @Value("${oauth2.security.password-encoder.wait-timeout-millis:2000}") long waitTimeoutMillis,
+            @Value("${oauth2.security.password-encoder.plain-text-fallback:true}") boolean plainTextFallback) {
+        this.strength = strength > 0 ? strength : calibrate(minimumStrength, targetMillis);
+        passwordEncoder = new BCryptPasswordEncoder(this.strength);
+        int theThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(theThreads, theThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "credential-verifier-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.plainTextFallback = plainTextFallback;
+        hashTimes = new LatencyHistogram();
+        hashCount = new LongAdder();
+        rejectedCount = new LongAdder();
+        timedOutCount = new LongAdder();
+        plainTextMatchCount = new LongAdder();
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return hash(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (plainTextFallback && isUpgradeRequired(encodedPassword)) {
+            plainTextMatchCount.increment();
+            return rawPassword != null && MessageDigest.isEqual(rawPassword.toString().getBytes(StandardCharsets.UTF_8),
+                    encodedPassword.getBytes(StandardCharsets.UTF_8));
+        }
+        return hash(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * @param encodedPassword a stored password or client secret
+     * @return whether it is plain text, neither a BCrypt hash nor anything
+     * that looks like a hash of another scheme, and should be hashed
+     */
+    public boolean isUpgradeRequired(String encodedPassword) {
+        return encodedPassword != null
+                && !BCRYPT_PATTERN.matcher(encodedPassword).matches()
+                && !HASH_PATTERN.matcher(encodedPassword).matches();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @ManagedAttribute
+    public int getStrength() {
+        return strength;
+    }
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @ManagedAttribute
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @ManagedAttribute
+    public long getHashCount() {
+        return hashCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getTimedOutCount() {
+        return timedOutCount.sum();
+    }
+
+    @ManagedAttribute
+    public boolean isPlainTextFallback() {
+        return plainTextFallback;
+    }
+
+    @ManagedAttribute
+    public long getPlainTextMatchCount() {
+        return plainTextMatchCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getHashTimeMillisP50() {
+        return TimeUnit.NANOSECONDS.toMillis(hashTimes.getPercentileNanos(0.5D));
+    }
+
+    @ManagedAttribute
+    public long getHashTimeMillisP99() {
+        return TimeUnit.NANOSECONDS.toMillis(hashTimes.getPercentileNanos(0.99D));
+    }
+
+    protected <T> T hash(Callable<T> hashing) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return hashing.call();
+                } finally {
+                    hashTimes.record(System.nanoTime() - start);
+                    hashCount.increment();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejectedCount.increment();
+            throw new CredentialVerificationUnavailableException("Too many credentials are being verified, try again later", ex);
+        }
+        try {
+            return future.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            timedOutCount.increment();
+            throw new CredentialVerificationUnavailableException("Too many credentials are being verified, try again later", ex);
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CredentialVerificationUnavailableException("Interrupted while verifying credentials", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * @return the highest strength, from the minimum strength, whose hash
+     * takes no longer than the target time
+     */
+    protected static int calibrate(int minimumStrength, long targetMillis) {
+        // Warm up, so the first measured strength is not timed interpreted
+        BCryptPasswordEncoder warmUpEncoder = new BCryptPasswordEncoder(4);
+        for (int index = 0; index < 20; index++) {
+            warmUpEncoder.encode("calibration");
+        }
+        int calibratedStrength = minimumStrength;
+        long calibratedMillis = 0L;
+        for (int candidateStrength = minimumStrength; candidateStrength <= MAXIMUM_CALIBRATED_STRENGTH; candidateStrength++) {
+            long start = System.nanoTime();
+            new BCryptPasswordEncoder(candidateStrength).encode("calibration");
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (millis > targetMillis && candidateStrength > minimumStrength) {
+                break;
+            }
+            calibratedStrength = candidateStrength;
+            calibratedMillis = millis;
+            if (millis > targetMillis) {
+                LOGGER.warn("BCrypt strength {} takes {} ms, more than the {} ms target", candidateStrength, millis, targetMillis);
+                break;
+            }
+        }
+        LOGGER.info("Calibrated BCrypt strength {} at {} ms per hash for a {} ms target", calibratedStrength, calibratedMillis, targetMillis);
+        return calibratedStrength;
+    }
+
+}
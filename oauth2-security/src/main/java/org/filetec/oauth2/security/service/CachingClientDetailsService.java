@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.registry.CompactClientDetails;
+import org.filetec.oauth2.security.registry.CompactClientDetailsFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.stereotype.Service;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Service
+@Primary
+@ManagedResource
+public class CachingClientDetailsService implements ClientDetailsService {
+
+    protected final ApplicationClientDetailsService applicationClientDetailsService;
+
+    protected final CompactClientDetailsFactory compactClientDetailsFactory;
+
+    protected final LoadingCache<String, CompactClientDetails> clientDetailsCache;
+
+    protected final Cache<String, Boolean> unknownClientIdCache;
+
+    protected final LongAdder unknownClientIdHitCount;
+
+    @Inject
+    public CachingClientDetailsService(ApplicationClientDetailsService applicationClientDetailsService,
+            CompactClientDetailsFactory compactClientDetailsFactory,
+            @Value("${oauth2.security.client-details-cache.maximum-size:10000}") long maximumSize,
+            @Value("${oauth2.security.client-details-cache.refresh-after-seconds:60}") long refreshAfterSeconds,
+            @Value("${oauth2.security.client-details-cache.time-to-live-seconds:600}") long timeToLiveSeconds,
+            @Value("${oauth2.security.client-details-cache.unknown-client-id.maximum-size:100000}") long unknownClientIdMaximumSize,
+            @Value("${oauth2.security.client-details-cache.unknown-client-id.time-to-live-seconds:30}") long unknownClientIdTimeToLiveSeconds) {
+        this.applicationClientDetailsService = applicationClientDetailsService;
+        this.compactClientDetailsFactory = compactClientDetailsFactory;
+        clientDetailsCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .refreshAfterWrite(refreshAfterSeconds, TimeUnit.SECONDS)
+                .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(new ClientDetailsLoader());
+        unknownClientIdCache = Caffeine.newBuilder()
+                .maximumSize(unknownClientIdMaximumSize)
+                .expireAfterWrite(unknownClientIdTimeToLiveSeconds, TimeUnit.SECONDS)
+                .build();
+        unknownClientIdHitCount = new LongAdder();
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
+        if (unknownClientIdCache.getIfPresent(clientId) != null) {
+            unknownClientIdHitCount.increment();
+            throw new ClientRegistrationException("Bad credentials");
+        }
+        return Optional.ofNullable(clientDetailsCache.get(clientId))
+                .orElseThrow(() -> {
+                    unknownClientIdCache.put(clientId, Boolean.TRUE);
+                    return new ClientRegistrationException("Bad credentials");
+                });
+    }
+
+    @ManagedOperation
+    public void invalidate(String clientId) {
+        clientDetailsCache.invalidate(clientId);
+        unknownClientIdCache.invalidate(clientId);
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        clientDetailsCache.invalidateAll();
+        unknownClientIdCache.invalidateAll();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        return clientDetailsCache.stats().hitRate();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return clientDetailsCache.stats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return clientDetailsCache.stats().missCount();
+    }
+
+    @ManagedAttribute
+    public long getLoadCount() {
+        CacheStats stats = clientDetailsCache.stats();
+        return stats.loadSuccessCount() + stats.loadFailureCount();
+    }
+
+    @ManagedAttribute
+    public double getAverageLoadMillis() {
+        return clientDetailsCache.stats().averageLoadPenalty() / 1000000D;
+    }
+
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return clientDetailsCache.stats().evictionCount();
+    }
+
+    @ManagedAttribute
+    public long getEstimatedSize() {
+        return clientDetailsCache.estimatedSize();
+    }
+
+    @ManagedAttribute
+    public long getUnknownClientIdHitCount() {
+        return unknownClientIdHitCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getUnknownClientIdEstimatedSize() {
+        return unknownClientIdCache.estimatedSize();
+    }
+
+    protected class ClientDetailsLoader implements CacheLoader<String, CompactClientDetails> {
+
+        /**
+         * @return the client, or {@code null} if there is none, which
+         * Caffeine does not cache
+         */
+        @Override
+        public CompactClientDetails load(String clientId) {
+            try {
+                return compactClientDetailsFactory.create(applicationClientDetailsService.loadClientByClientId(clientId));
+            } catch (ClientRegistrationException ex) {
+                return null;
+            }
+        }
+
+    }
+
+}
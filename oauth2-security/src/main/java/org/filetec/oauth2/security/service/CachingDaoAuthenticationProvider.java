@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class CachingDaoAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingDaoAuthenticationProvider.class);
+
+    protected final VerifiedCredentialCache verifiedCredentialCache;
+
+    protected final CredentialMigration credentialMigration;
+
+    public CachingDaoAuthenticationProvider(VerifiedCredentialCache verifiedCredentialCache,
+            CredentialMigration credentialMigration) {
+        this.verifiedCredentialCache = verifiedCredentialCache;
+        this.credentialMigration = credentialMigration;
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+            UsernamePasswordAuthenticationToken authentication) throws AuthenticationException {
+        if (authentication.getCredentials() != null
+                && verifiedCredentialCache.isVerified(userDetails.getUsername(), userDetails.getPassword(),
+                        authentication.getCredentials().toString())) {
+            return;
+        }
+        super.additionalAuthenticationChecks(userDetails, authentication);
+        try {
+            credentialMigration.migratePassword(userDetails.getUsername(), userDetails.getPassword(),
+                    authentication.getCredentials().toString());
+        } catch (RuntimeException ex) {
+            // The login still succeeds, and the password is hashed on a later one
+            LOGGER.warn("Could not hash the plain text password of {}", userDetails.getUsername(), ex);
+        }
+        verifiedCredentialCache.putVerified(userDetails.getUsername(), userDetails.getPassword(),
+                authentication.getCredentials().toString());
+    }
+
+}
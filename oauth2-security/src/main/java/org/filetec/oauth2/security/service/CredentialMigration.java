@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.model.ApplicationClientDetails;
+import org.filetec.oauth2.security.repository.AccountUserDetailsRepository;
+import org.filetec.oauth2.security.repository.ApplicationClientDetailsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+public class CredentialMigration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CredentialMigration.class);
+
+    protected final BoundedPasswordEncoder passwordEncoder;
+
+    protected final AccountUserDetailsRepository accountUserDetailsRepository;
+
+    protected final ApplicationClientDetailsRepository applicationClientDetailsRepository;
+
+    protected final TransactionTemplate transactionTemplate;
+
+    protected final boolean enabled;
+
+    @Inject
+    public CredentialMigration(BoundedPasswordEncoder passwordEncoder,
+            AccountUserDetailsRepository accountUserDetailsRepository,
+            ApplicationClientDetailsRepository applicationClientDetailsRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${oauth2.security.password-encoder.credential-migration.enabled:false}") boolean enabled) {
+        this.passwordEncoder = passwordEncoder;
+        this.accountUserDetailsRepository = accountUserDetailsRepository;
+        this.applicationClientDetailsRepository = applicationClientDetailsRepository;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+    }
+
+    /**
+     * This hashes the client secrets still stored in plain text, once
+     * credential migration has been enabled. Hashing cannot be undone, and
+     * nodes without the plain text fallback reject the hashed secrets, so it
+     * is only enabled once every node runs with the fallback.
+     */
+    @PostConstruct
+    public void migrateClientSecrets() {
+        if (!enabled) {
+            return;
+        }
+        int migratedCount = transactionTemplate.execute(status -> {
+            List<ApplicationClientDetails> plainTextClients = applicationClientDetailsRepository.findAll().stream()
+                    .filter(applicationClientDetails -> passwordEncoder.isUpgradeRequired(applicationClientDetails.getClientSecret()))
+                    .collect(Collectors.toList());
+            plainTextClients.forEach(applicationClientDetails -> applicationClientDetails.setClientSecret(
+                    passwordEncoder.encode(applicationClientDetails.getClientSecret())));
+            return plainTextClients.size();
+        });
+        if (migratedCount > 0) {
+            LOGGER.info("Hashed the plain text secrets of {} clients", migratedCount);
+        }
+    }
+
+    /**
+     * This hashes the password of a user who has just logged in with it, if it
+     * is still stored in plain text and credential migration has been enabled.
+     *
+     * @param username the username of the user
+     * @param encodedPassword the password as it is stored
+     * @param rawPassword the password the user logged in with
+     * @return whether the password was hashed
+     */
+    public boolean migratePassword(String username, String encodedPassword, String rawPassword) {
+        if (!enabled || !passwordEncoder.isUpgradeRequired(encodedPassword)) {
+            return false;
+        }
+        // Hashed before the transaction, so that no connection is held while hashing
+        String hashedPassword = passwordEncoder.encode(rawPassword);
+        return transactionTemplate.execute(status -> accountUserDetailsRepository.findByUsername(username)
+                .filter(accountUserDetails -> encodedPassword.equals(accountUserDetails.getPassword()))
+                .map(accountUserDetails -> {
+                    accountUserDetails.setPassword(hashedPassword);
+                    return true;
+                })
+                .orElse(false));
+    }
+
+}
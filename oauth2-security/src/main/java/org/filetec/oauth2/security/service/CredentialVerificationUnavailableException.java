@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class CredentialVerificationUnavailableException extends OAuth2Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public CredentialVerificationUnavailableException(String message) {
+        super(message);
+    }
+
+    public CredentialVerificationUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public String getOAuth2ErrorCode() {
+        return "temporarily_unavailable";
+    }
+
+    @Override
+    public int getHttpErrorCode() {
+        return 503;
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class CredentialVerificationUnavailableFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } catch (CredentialVerificationUnavailableException ex) {
+            reject(response, ex);
+        } catch (ServletException ex) {
+            if (ex.getRootCause() instanceof CredentialVerificationUnavailableException) {
+                reject(response, (CredentialVerificationUnavailableException) ex.getRootCause());
+            } else {
+                throw ex;
+            }
+        }
+    }
+
+    protected void reject(HttpServletResponse response, CredentialVerificationUnavailableException ex)
+            throws IOException {
+        if (response.isCommitted()) {
+            throw ex;
+        }
+        response.resetBuffer();
+        response.setStatus(ex.getHttpErrorCode());
+        response.setHeader("Retry-After", "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"" + ex.getOAuth2ErrorCode() + "\",\"error_description\":\"" + ex.getMessage() + "\"}");
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.model.ExpiredTokenReference;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2AccessTokenRepository;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2RefreshTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+@ConditionalOnProperty(name = "oauth2.security.token-reaper.enabled",
+        havingValue = "true",
+        matchIfMissing = true)
+public class ExpiredTokenReaper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExpiredTokenReaper.class);
+
+    public static final String LEASE_NAME = "expired-token-reaper";
+
+    protected final ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository;
+
+    protected final ApplicationOAuth2RefreshTokenRepository applicationOAuth2RefreshTokenRepository;
+
+    protected final ScheduledTaskLeaseService scheduledTaskLeaseService;
+
+    protected final TransactionTemplate transactionTemplate;
+
+    protected final int batchSize;
+
+    protected final long pauseMillis;
+
+    protected final int maximumBatchesPerRun;
+
+    protected final long leaseMillis;
+
+    protected final LongAdder deletedAccessTokenCount;
+
+    protected final LongAdder deletedRefreshTokenCount;
+
+    protected final LongAdder batchCount;
+
+    protected final LongAdder totalBatchMillis;
+
+    protected final AtomicLong lastBatchMillis;
+
+    protected final AtomicLong maximumBatchMillis;
+
+    @Inject
+    public ExpiredTokenReaper(ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository,
+            ApplicationOAuth2RefreshTokenRepository applicationOAuth2RefreshTokenRepository,
+            ScheduledTaskLeaseService scheduledTaskLeaseService,
+            PlatformTransactionManager transactionManager,
+            @Value("${oauth2.security.token-reaper.batch-size:500}") int batchSize,
+            @Value("${oauth2.security.token-reaper.pause-millis:250}") long pauseMillis,
+            @Value("${oauth2.security.token-reaper.maximum-batches-per-run:200}") int maximumBatchesPerRun,
+            @Value("${oauth2.security.token-reaper.lease-millis:600000}") long leaseMillis) {
+        this.applicationOAuth2AccessTokenRepository = applicationOAuth2AccessTokenRepository;
+        this.applicationOAuth2RefreshTokenRepository = applicationOAuth2RefreshTokenRepository;
+        this.scheduledTaskLeaseService = scheduledTaskLeaseService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+        this.maximumBatchesPerRun = maximumBatchesPerRun;
+        this.leaseMillis = leaseMillis;
+        deletedAccessTokenCount = new LongAdder();
+        deletedRefreshTokenCount = new LongAdder();
+        batchCount = new LongAdder();
+        totalBatchMillis = new LongAdder();
+        lastBatchMillis = new AtomicLong();
+        maximumBatchMillis = new AtomicLong();
+    }
+
+    @Scheduled(initialDelayString = "${oauth2.security.token-reaper.interval-millis:300000}",
+            fixedDelayString = "${oauth2.security.token-reaper.interval-millis:300000}")
+    public void reap() {
+        if (!scheduledTaskLeaseService.tryAcquire(LEASE_NAME, leaseMillis)) {
+            return;
+        }
+        try {
+            Date now = new Date();
+            long runStart = System.currentTimeMillis();
+            long[] leasedAt = {runStart};
+            int[] deleted = new int[2];
+            int batches = 0;
+
+            Date afterExpiration = new Date(0L);
+            BigInteger afterId = BigInteger.ZERO;
+            for (; batches < maximumBatchesPerRun; batches++) {
+                List<ExpiredTokenReference> expiredAccessTokens = applicationOAuth2AccessTokenRepository
+                        .findExpired(now, afterExpiration, afterId, new PageRequest(0, batchSize));
+                if (expiredAccessTokens.isEmpty()) {
+                    break;
+                }
+                timeBatch(() -> transactionTemplate.execute(status -> {
+                    List<BigInteger> accessTokenIds = expiredAccessTokens.stream()
+                            .map(ExpiredTokenReference::getId)
+                            .collect(Collectors.toList());
+                    List<BigInteger> refreshTokenIds = expiredAccessTokens.stream()
+                            .map(ExpiredTokenReference::getRefreshTokenId)
+                            // Access tokens of clients without the refresh_token grant have none
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList());
+                    deleted[0] += applicationOAuth2AccessTokenRepository.deleteExpired(accessTokenIds, now);
+                    if (!refreshTokenIds.isEmpty()) {
+                        deleted[1] += applicationOAuth2RefreshTokenRepository.deleteExpiredUnreferenced(refreshTokenIds, now);
+                    }
+                    return null;
+                }));
+                ExpiredTokenReference last = expiredAccessTokens.get(expiredAccessTokens.size() - 1);
+                afterExpiration = last.getExpiration();
+                afterId = last.getId();
+                if (!pause() || !renewLease(leasedAt)) {
+                    return;
+                }
+            }
+
+            afterExpiration = new Date(0L);
+            afterId = BigInteger.ZERO;
+            for (; batches < maximumBatchesPerRun; batches++) {
+                List<ExpiredTokenReference> expiredRefreshTokens = applicationOAuth2RefreshTokenRepository
+                        .findExpiredUnreferenced(now, afterExpiration, afterId, new PageRequest(0, batchSize));
+                if (expiredRefreshTokens.isEmpty()) {
+                    break;
+                }
+                timeBatch(() -> transactionTemplate.execute(status -> {
+                    deleted[1] += applicationOAuth2RefreshTokenRepository.deleteExpiredUnreferenced(
+                            expiredRefreshTokens.stream()
+                                    .map(ExpiredTokenReference::getId)
+                                    .collect(Collectors.toList()), now);
+                    return null;
+                }));
+                ExpiredTokenReference last = expiredRefreshTokens.get(expiredRefreshTokens.size() - 1);
+                afterExpiration = last.getExpiration();
+                afterId = last.getId();
+                if (!pause() || !renewLease(leasedAt)) {
+                    return;
+                }
+            }
+
+            deletedAccessTokenCount.add(deleted[0]);
+            deletedRefreshTokenCount.add(deleted[1]);
+            if (deleted[0] > 0 || deleted[1] > 0) {
+                LOGGER.info("Deleted {} expired access tokens and {} expired refresh tokens in {} batches, {} ms",
+                        deleted[0], deleted[1], batches, System.currentTimeMillis() - runStart);
+            }
+        } finally {
+            scheduledTaskLeaseService.release(LEASE_NAME);
+        }
+    }
+
+    @ManagedAttribute
+    public long getDeletedAccessTokenCount() {
+        return deletedAccessTokenCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getDeletedRefreshTokenCount() {
+        return deletedRefreshTokenCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getLastBatchMillis() {
+        return lastBatchMillis.get();
+    }
+
+    @ManagedAttribute
+    public long getMaximumBatchMillis() {
+        return maximumBatchMillis.get();
+    }
+
+    @ManagedAttribute
+    public double getAverageBatchMillis() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0D : (double) totalBatchMillis.sum() / batches;
+    }
+
+    protected void timeBatch(Runnable batch) {
+        long start = System.currentTimeMillis();
+        batch.run();
+        long batchMillis = System.currentTimeMillis() - start;
+        batchCount.increment();
+        totalBatchMillis.add(batchMillis);
+        lastBatchMillis.set(batchMillis);
+        maximumBatchMillis.accumulateAndGet(batchMillis, Math::max);
+    }
+
+    /**
+     * @param leasedAt the time the lease was last taken or renewed, updated
+     * when it is renewed
+     * @return {@code false} if the lease was lost, in which case the run
+     * should stop
+     */
+    protected boolean renewLease(long[] leasedAt) {
+        long now = System.currentTimeMillis();
+        if (now - leasedAt[0] < leaseMillis / 2) {
+            return true;
+        }
+        if (!scheduledTaskLeaseService.renew(LEASE_NAME, leaseMillis)) {
+            LOGGER.warn("Lost the {} lease, stopping", LEASE_NAME);
+            return false;
+        }
+        leasedAt[0] = now;
+        return true;
+    }
+
+    protected boolean pause() {
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.util.Date;
+import java.util.UUID;
+import javax.inject.Inject;
+import org.filetec.oauth2.security.model.ScheduledTaskLease;
+import org.filetec.oauth2.security.repository.ScheduledTaskLeaseRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Service
+public class ScheduledTaskLeaseService {
+
+    protected final ScheduledTaskLeaseRepository scheduledTaskLeaseRepository;
+
+    protected final TransactionTemplate transactionTemplate;
+
+    protected final String owner;
+
+    @Inject
+    public ScheduledTaskLeaseService(ScheduledTaskLeaseRepository scheduledTaskLeaseRepository,
+            PlatformTransactionManager transactionManager) {
+        this.scheduledTaskLeaseRepository = scheduledTaskLeaseRepository;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        owner = UUID.randomUUID().toString();
+    }
+
+    /**
+     * This takes the lease of a task unless another node holds it.
+     *
+     * @param name the name of the task
+     * @param leaseMillis how long the lease is held unless released
+     * @return {@code true} if this node now holds the lease
+     */
+    public boolean tryAcquire(String name, long leaseMillis) {
+        if (!scheduledTaskLeaseRepository.findByName(name).isPresent()) {
+            try {
+                transactionTemplate.execute(status -> scheduledTaskLeaseRepository.saveAndFlush(new ScheduledTaskLease(name)));
+            } catch (DataIntegrityViolationException ex) {
+                // Created by another node at the same time
+            }
+        }
+        Date now = new Date();
+        return transactionTemplate.execute(status -> scheduledTaskLeaseRepository.acquire(name, owner, now,
+                new Date(now.getTime() + leaseMillis))) == 1;
+    }
+
+    /**
+     * This extends the lease of a task held by this node, for tasks running
+     * longer than their lease.
+     *
+     * @param name the name of the task
+     * @param leaseMillis how long the lease is held from now unless released
+     * @return {@code true} if this node still holds the lease
+     */
+    public boolean renew(String name, long leaseMillis) {
+        Date now = new Date();
+        return transactionTemplate.execute(status -> scheduledTaskLeaseRepository.renew(name, owner, now,
+                new Date(now.getTime() + leaseMillis))) == 1;
+    }
+
+    public void release(String name) {
+        transactionTemplate.execute(status -> scheduledTaskLeaseRepository.release(name, owner, new Date()));
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import javax.inject.Inject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+public class TokenHasher {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int MAXIMUM_BUFFER_LENGTH = 4096;
+
+    protected final String algorithm;
+
+    protected final ThreadLocal<HashingState> threadHashingState;
+
+    protected final Base64.Encoder base64UrlEncoder;
+
+    @Inject
+    public TokenHasher(@Value("${oauth2.security.token-hash.algorithm:SHA-256}") String algorithm) {
+        this.algorithm = algorithm;
+        // Fail at startup rather than on the first token
+        createMessageDigest();
+        threadHashingState = ThreadLocal.withInitial(() -> new HashingState(createMessageDigest()));
+        base64UrlEncoder = Base64.getUrlEncoder().withoutPadding();
+    }
+
+    public byte[] hash(String value) {
+        HashingState hashingState = threadHashingState.get();
+        int length = value.length();
+        if (length <= MAXIMUM_BUFFER_LENGTH) {
+            byte[] buffer = hashingState.buffer(length);
+            int index = 0;
+            for (; index < length; index++) {
+                char character = value.charAt(index);
+                if (character >= 0x80) {
+                    break;
+                }
+                buffer[index] = (byte) character;
+            }
+            if (index == length) {
+                hashingState.messageDigest.update(buffer, 0, length);
+                return hashingState.messageDigest.digest();
+            }
+        }
+        return hashingState.messageDigest.digest(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] hash(byte[] value) {
+        return threadHashingState.get().messageDigest.digest(value);
+    }
+
+    public String hashToHex(String value) {
+        return toHex(hash(value));
+    }
+
+    public String hashToBase64Url(String value) {
+        return base64UrlEncoder.encodeToString(hash(value));
+    }
+
+    public String hashToBase64Url(byte[] value) {
+        return base64UrlEncoder.encodeToString(hash(value));
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] characters = new char[bytes.length * 2];
+        for (int index = 0; index < bytes.length; index++) {
+            characters[index * 2] = HEX_DIGITS[(bytes[index] >> 4) & 0x0F];
+            characters[index * 2 + 1] = HEX_DIGITS[bytes[index] & 0x0F];
+        }
+        return new String(characters);
+    }
+
+    protected MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(algorithm + " algorithm not available.", ex);
+        }
+    }
+
+    protected static class HashingState {
+
+        protected final MessageDigest messageDigest;
+
+        protected byte[] buffer;
+
+        protected HashingState(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+            buffer = new byte[128];
+        }
+
+        protected byte[] buffer(int length) {
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            return buffer;
+        }
+
+    }
+
+}
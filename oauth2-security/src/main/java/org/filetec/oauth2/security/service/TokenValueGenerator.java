@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+public class TokenValueGenerator {
+
+    public static final int TOKEN_VALUE_BYTES = 32;
+
+    protected final SecureRandom seedSecureRandom;
+
+    protected final ThreadLocal<SecureRandom> threadSecureRandom;
+
+    protected final Base64.Encoder encoder;
+
+    public TokenValueGenerator() {
+        seedSecureRandom = new SecureRandom();
+        threadSecureRandom = ThreadLocal.withInitial(this::createSecureRandom);
+        encoder = Base64.getUrlEncoder().withoutPadding();
+    }
+
+    public String generate() {
+        byte[] bytes = new byte[TOKEN_VALUE_BYTES];
+        threadSecureRandom.get().nextBytes(bytes);
+        return encoder.encodeToString(bytes);
+    }
+
+    protected SecureRandom createSecureRandom() {
+        SecureRandom secureRandom;
+        try {
+            secureRandom = SecureRandom.getInstance("SHA1PRNG");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA1PRNG algorithm not available.  Fatal (should be in the JDK).");
+        }
+        byte[] seed = new byte[TOKEN_VALUE_BYTES];
+        seedSecureRandom.nextBytes(seed);
+        secureRandom.setSeed(seed);
+        return secureRandom;
+    }
+
+}
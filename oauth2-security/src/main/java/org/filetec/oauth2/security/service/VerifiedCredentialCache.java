@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Component
+@ManagedResource
+public class VerifiedCredentialCache {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    protected final boolean enabled;
+
+    protected final Cache<String, byte[]> cache;
+
+    protected final SecretKeySpec key;
+
+    protected final ThreadLocal<Mac> threadMac;
+
+    protected final LongAdder hitCount;
+
+    protected final LongAdder missCount;
+
+    @Inject
+    public VerifiedCredentialCache(@Value("${oauth2.security.verified-credential-cache.enabled:false}") boolean enabled,
+            @Value("${oauth2.security.verified-credential-cache.maximum-size:10000}") long maximumSize,
+            @Value("${oauth2.security.verified-credential-cache.time-to-live-seconds:60}") long timeToLiveSeconds) {
+        this.enabled = enabled;
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+                .build();
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, ALGORITHM);
+        threadMac = ThreadLocal.withInitial(this::createMac);
+        hitCount = new LongAdder();
+        missCount = new LongAdder();
+    }
+
+    /**
+     * @param username the username
+     * @param encodedPassword the stored password hash
+     * @param presentedPassword the presented password
+     * @return whether the presented password was recently verified against
+     * the stored password hash
+     */
+    public boolean isVerified(String username, String encodedPassword, String presentedPassword) {
+        if (!enabled) {
+            return false;
+        }
+        byte[] verified = cache.getIfPresent(username);
+        if (verified != null && MessageDigest.isEqual(verified, mac(encodedPassword, presentedPassword))) {
+            hitCount.increment();
+            return true;
+        }
+        missCount.increment();
+        return false;
+    }
+
+    public void putVerified(String username, String encodedPassword, String presentedPassword) {
+        if (enabled) {
+            cache.put(username, mac(encodedPassword, presentedPassword));
+        }
+    }
+
+    public void invalidate(String username) {
+        cache.invalidate(username);
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getEstimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    protected byte[] mac(String encodedPassword, String presentedPassword) {
+        Mac mac = threadMac.get();
+        mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(presentedPassword.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ALGORITHM + " algorithm not available.", ex);
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import org.filetec.oauth2.security.cache.ExpiringCache;
+import org.filetec.oauth2.security.codec.OAuth2AuthenticationCodec;
+import org.filetec.oauth2.security.model.AccessTokenProjection;
+import org.filetec.oauth2.security.model.ApplicationOAuth2AccessToken;
+import org.filetec.oauth2.security.model.ApplicationOAuth2RefreshToken;
+import org.filetec.oauth2.security.registry.ScopeDictionary;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2AccessTokenRepository;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2RefreshTokenRepository;
+import org.filetec.oauth2.security.service.TokenHasher;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@Transactional(readOnly = true)
+public class JpaTokenStore implements TokenStore {
+
+    /**
+     * This is stored as the expiration of tokens issued without one, the
+     * last millisecond of the year 9999.
+     */
+    protected static final Date NO_EXPIRATION = new Date(253402300799999L);
+
+    protected final ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository;
+
+    protected final ApplicationOAuth2RefreshTokenRepository applicationOAuth2RefreshTokenRepository;
+
+    protected final AuthenticationKeyGenerator authenticationKeyGenerator;
+
+    protected final OAuth2AuthenticationCodec authenticationCodec;
+
+    protected final TokenHasher tokenHasher;
+
+    protected final ExpiringCache<String, OAuth2AccessToken> accessTokenCache;
+
+    protected final ExpiringCache<String, OAuth2Authentication> authenticationCache;
+
+    protected final ScopeDictionary scopeDictionary;
+
+    public JpaTokenStore(ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository,
+            ApplicationOAuth2RefreshTokenRepository applicationOAuth2RefreshTokenRepository,
+            AuthenticationKeyGenerator authenticationKeyGenerator,
+            OAuth2AuthenticationCodec authenticationCodec,
+            TokenHasher tokenHasher,
+            ExpiringCache<String, OAuth2AccessToken> accessTokenCache,
+            ExpiringCache<String, OAuth2Authentication> authenticationCache,
+            ScopeDictionary scopeDictionary) {
+        this.applicationOAuth2AccessTokenRepository = applicationOAuth2AccessTokenRepository;
+        this.applicationOAuth2RefreshTokenRepository = applicationOAuth2RefreshTokenRepository;
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
+        this.authenticationCodec = authenticationCodec;
+        this.tokenHasher = tokenHasher;
+        this.accessTokenCache = accessTokenCache;
+        this.authenticationCache = authenticationCache;
+        this.scopeDictionary = scopeDictionary;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        return authenticationCache.get(token)
+                .orElseGet(() -> applicationOAuth2AccessTokenRepository.findSerializedOAuth2AuthenticationByValue(token)
+                        .map(serializedOAuth2Authentication -> {
+                            OAuth2Authentication authentication = authenticationCodec.decode(serializedOAuth2Authentication.getSerializedOAuth2Authentication());
+                            authenticationCache.put(token, authentication, serializedOAuth2Authentication.getExpiration());
+                            return authentication;
+                        })
+                        .orElse(null));
+    }
+
+    @Override
+    @Transactional
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        invalidate(token.getValue());
+        ApplicationOAuth2AccessToken applicationOAuth2AccessToken = applicationOAuth2AccessTokenRepository.findByValue(token.getValue())
+                .orElseGet(ApplicationOAuth2AccessToken::new);
+        applicationOAuth2AccessToken.setValue(token.getValue());
+        applicationOAuth2AccessToken.setTokenType(token.getTokenType());
+        applicationOAuth2AccessToken.setExpiration(Optional.ofNullable(token.getExpiration())
+                .orElse(NO_EXPIRATION));
+        applicationOAuth2AccessToken.setScope(Optional.ofNullable(token.getScope())
+                .map(LinkedHashSet::new)
+                .orElseGet(LinkedHashSet::new));
+        applicationOAuth2AccessToken.setOauth2AuthenticationKey(authenticationKeyGenerator.extractKey(authentication));
+        applicationOAuth2AccessToken.setClientId(authentication.getOAuth2Request().getClientId());
+        applicationOAuth2AccessToken.setUserName(authentication.isClientOnly() ? null : authentication.getName());
+        byte[] serializedOAuth2Authentication = authenticationCodec.encode(authentication);
+        applicationOAuth2AccessToken.setSerializedOAuth2Authentication(serializedOAuth2Authentication);
+        applicationOAuth2AccessToken.setSerializedOAuth2AuthenticationDigest(tokenHasher.hashToBase64Url(serializedOAuth2Authentication));
+        // The framework stores the access token before its refresh token
+        applicationOAuth2AccessToken.setApplicationOAuth2RefreshToken(Optional.ofNullable(token.getRefreshToken())
+                .map(refreshToken -> findOrCreateApplicationOAuth2RefreshToken(refreshToken, null))
+                .orElse(null));
+        applicationOAuth2AccessTokenRepository.save(applicationOAuth2AccessToken);
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return accessTokenCache.get(tokenValue)
+                .orElseGet(() -> applicationOAuth2AccessTokenRepository.findProjectionByValue(tokenValue)
+                        .map(accessTokenProjection -> accessTokenProjection.toAccessToken(scopeDictionary::decode))
+                        .map(accessToken -> {
+                            accessTokenCache.put(tokenValue, accessToken, accessToken.getExpiration());
+                            return accessToken;
+                        })
+                        .orElse(null));
+    }
+
+    @Override
+    @Transactional
+    public void removeAccessToken(OAuth2AccessToken token) {
+        invalidate(token.getValue());
+        applicationOAuth2AccessTokenRepository.findByValue(token.getValue())
+                .ifPresent(applicationOAuth2AccessTokenRepository::delete);
+    }
+
+    @Override
+    @Transactional
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        findOrCreateApplicationOAuth2RefreshToken(refreshToken, authenticationCodec.encode(authentication));
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return applicationOAuth2RefreshTokenRepository.findProjectionByValue(tokenValue)
+                .orElse(null);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        return applicationOAuth2RefreshTokenRepository.findByValue(token.getValue())
+                .map(applicationOAuth2RefreshToken -> Optional.ofNullable(applicationOAuth2RefreshToken.getSerializedOAuth2Authentication())
+                .orElseGet(() -> Optional.ofNullable(applicationOAuth2RefreshToken.getApplicationOAuth2AccessToken())
+                        .map(ApplicationOAuth2AccessToken::getSerializedOAuth2Authentication)
+                        .orElse(null)))
+                .map(authenticationCodec::decode)
+                .orElse(null);
+    }
+
+    @Override
+    @Transactional
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        applicationOAuth2RefreshTokenRepository.findByValue(token.getValue())
+                .ifPresent(applicationOAuth2RefreshToken -> {
+                    Optional.ofNullable(applicationOAuth2RefreshToken.getApplicationOAuth2AccessToken())
+                            .ifPresent(applicationOAuth2AccessToken -> applicationOAuth2AccessToken.setApplicationOAuth2RefreshToken(null));
+                    applicationOAuth2RefreshTokenRepository.delete(applicationOAuth2RefreshToken);
+                });
+    }
+
+    @Override
+    @Transactional
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        applicationOAuth2RefreshTokenRepository.findByValue(refreshToken.getValue())
+                .map(ApplicationOAuth2RefreshToken::getApplicationOAuth2AccessToken)
+                .ifPresent(applicationOAuth2AccessToken -> {
+                    invalidate(applicationOAuth2AccessToken.getValue());
+                    applicationOAuth2AccessToken.getApplicationOAuth2RefreshToken().setApplicationOAuth2AccessToken(null);
+                    applicationOAuth2AccessTokenRepository.delete(applicationOAuth2AccessToken);
+                });
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        return applicationOAuth2AccessTokenRepository.findProjectionByOauth2AuthenticationKey(
+                authenticationKeyGenerator.extractKey(authentication))
+                .map(accessTokenProjection -> accessTokenProjection.toAccessToken(scopeDictionary::decode))
+                .orElse(null);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return AccessTokenProjection.toAccessTokens(applicationOAuth2AccessTokenRepository.findProjectionsByClientIdAndUserName(clientId, userName),
+                scopeDictionary::decode);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return AccessTokenProjection.toAccessTokens(applicationOAuth2AccessTokenRepository.findProjectionsByClientId(clientId),
+                scopeDictionary::decode);
+    }
+
+    protected void invalidate(String tokenValue) {
+        accessTokenCache.invalidate(tokenValue);
+        authenticationCache.invalidate(tokenValue);
+    }
+
+    /**
+     * This stores a refresh token unless it already exists, updating the
+     * stored authentication of an existing one if given.
+     *
+     * @param refreshToken the refresh token
+     * @param serializedOAuth2Authentication the encoded authentication, or
+     * {@code null} to leave it as stored
+     * @return the stored {@link ApplicationOAuth2RefreshToken}
+     */
+    protected ApplicationOAuth2RefreshToken findOrCreateApplicationOAuth2RefreshToken(OAuth2RefreshToken refreshToken,
+            byte[] serializedOAuth2Authentication) {
+        ApplicationOAuth2RefreshToken applicationOAuth2RefreshToken = applicationOAuth2RefreshTokenRepository.findByValue(refreshToken.getValue())
+                .orElseGet(() -> {
+                    ApplicationOAuth2RefreshToken newApplicationOAuth2RefreshToken = new ApplicationOAuth2RefreshToken();
+                    newApplicationOAuth2RefreshToken.setValue(refreshToken.getValue());
+                    return newApplicationOAuth2RefreshToken;
+                });
+        if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+            applicationOAuth2RefreshToken.setExpiration(((ExpiringOAuth2RefreshToken) refreshToken).getExpiration());
+        } else if (applicationOAuth2RefreshToken.getExpiration() == null) {
+            applicationOAuth2RefreshToken.setExpiration(NO_EXPIRATION);
+        }
+        if (serializedOAuth2Authentication != null) {
+            applicationOAuth2RefreshToken.setSerializedOAuth2Authentication(serializedOAuth2Authentication);
+        }
+        return applicationOAuth2RefreshTokenRepository.save(applicationOAuth2RefreshToken);
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class LatencyHistogram {
+
+    protected final LongAdder[] buckets;
+
+    public LatencyHistogram() {
+        buckets = new LongAdder[64];
+        for (int index = 0; index < buckets.length; index++) {
+            buckets[index] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        buckets[64 - Long.numberOfLeadingZeros(Math.max(1L, nanos)) - 1].increment();
+    }
+
+    /**
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the upper bound of the bucket holding the percentile, in
+     * nanoseconds, or {@code 0} if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = new long[buckets.length];
+        long total = 0L;
+        for (int index = 0; index < buckets.length; index++) {
+            counts[index] = buckets[index].sum();
+            total += counts[index];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100D);
+        long cumulative = 0L;
+        for (int index = 0; index < counts.length; index++) {
+            cumulative += counts[index];
+            if (cumulative >= threshold) {
+                return index >= 62 ? Long.MAX_VALUE : (1L << (index + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+
+}
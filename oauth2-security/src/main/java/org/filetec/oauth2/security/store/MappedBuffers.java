@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public final class MappedBuffers {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedBuffers.class);
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * This releases the mapping of a buffer right away, instead of whenever
+     * the buffer is garbage collected, through its cleaner on Java 8 and
+     * through {@code Unsafe.invokeCleaner} on later versions. If neither is
+     * accessible, the mapping is left to the garbage collector. The buffer
+     * must not be used afterwards, by any thread.
+     *
+     * @param buffer the mapped buffer, or {@code null}
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class)
+                        .invoke(theUnsafe.get(null), buffer);
+            } catch (ReflectiveOperationException | RuntimeException unsafeEx) {
+                LOGGER.debug("Unable to unmap a buffer, leaving it to the garbage collector", unsafeEx);
+            }
+        }
+    }
+
+}
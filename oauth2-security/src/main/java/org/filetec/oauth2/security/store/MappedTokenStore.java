@@ -0,0 +1,735 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import org.filetec.oauth2.security.codec.OAuth2AuthenticationCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.util.StringUtils;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@ManagedResource
+public class MappedTokenStore implements TokenStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedTokenStore.class);
+
+    private static final int MAGIC = 0x4F415453;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 16;
+
+    private static final int HEADER_APPEND_POSITION = 8;
+
+    private static final byte ACCESS_TOKEN = 1;
+
+    private static final byte REFRESH_TOKEN = 2;
+
+    private static final byte LIVE = 1;
+
+    private static final byte REMOVED = 0;
+
+    private static final int RECORD_LENGTH = 0;
+
+    private static final int RECORD_TYPE = 4;
+
+    private static final int RECORD_STATE = 5;
+
+    private static final int RECORD_EXPIRATION = 8;
+
+    private static final int RECORD_REFRESH_TOKEN_EXPIRATION = 16;
+
+    private static final int RECORD_FIELD_LENGTHS = 24;
+
+    private static final int VALUE = 0;
+
+    private static final int REFRESH_TOKEN_VALUE = 1;
+
+    private static final int AUTHENTICATION_KEY = 2;
+
+    private static final int CLIENT_ID = 3;
+
+    private static final int USER_NAME = 4;
+
+    private static final int TOKEN_TYPE = 5;
+
+    private static final int SCOPE = 6;
+
+    private static final int AUTHENTICATION = 7;
+
+    private static final int FIELD_COUNT = 8;
+
+    private static final int RECORD_HEADER_BYTES = RECORD_FIELD_LENGTHS + FIELD_COUNT * 4;
+
+    private static final long NO_EXPIRATION = Long.MAX_VALUE;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final int SWEEP_BATCH_SIZE = 1024;
+
+    private static final int MAXIMUM_SWEEP_SCANS = 3;
+
+    protected final AuthenticationKeyGenerator authenticationKeyGenerator;
+
+    protected final OAuth2AuthenticationCodec authenticationCodec;
+
+    protected final Path file;
+
+    protected final int capacityBytes;
+
+    protected final int initialIndexCapacity;
+
+    protected final double compactionRatio;
+
+    protected final ReadWriteLock lock;
+
+    protected final LatencyHistogram lookupLatency;
+
+    protected FileChannel channel;
+
+    protected MappedByteBuffer data;
+
+    protected int appendPosition;
+
+    protected long removedBytes;
+
+    // Incremented by every compaction, which moves the records to other offsets
+    protected long compactionGeneration;
+
+    protected OffHeapHashIndex accessTokenIndex;
+
+    protected OffHeapHashIndex refreshTokenIndex;
+
+    protected OffHeapHashIndex authenticationKeyIndex;
+
+    protected OffHeapHashIndex refreshTokenAccessTokenIndex;
+
+    /**
+     * @param authenticationKeyGenerator the {@link AuthenticationKeyGenerator}
+     * keying access tokens by authentication
+     * @param authenticationCodec the {@link OAuth2AuthenticationCodec} storing
+     * authentications
+     * @param file the file of the store, created if missing
+     * @param capacityBytes the size the file is mapped at, at most 2 GB
+     * @param initialIndexCapacity the initial number of slots of each index
+     * @param compactionRatio the share of the file taken by removed records
+     * past which the file is compacted
+     */
+    public MappedTokenStore(AuthenticationKeyGenerator authenticationKeyGenerator,
+            OAuth2AuthenticationCodec authenticationCodec, Path file, int capacityBytes,
+            int initialIndexCapacity, double compactionRatio) {
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
+        this.authenticationCodec = authenticationCodec;
+        this.file = file;
+        this.capacityBytes = capacityBytes;
+        this.initialIndexCapacity = initialIndexCapacity;
+        this.compactionRatio = compactionRatio;
+        lock = new ReentrantReadWriteLock();
+        lookupLatency = new LatencyHistogram();
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            open(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to open token store " + file, ex);
+        }
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        byte[] serializedOAuth2Authentication = lookup(() -> {
+            int record = findAccessToken(token);
+            return record < 0 ? null : readField(record, AUTHENTICATION);
+        });
+        return serializedOAuth2Authentication == null ? null : authenticationCodec.decode(serializedOAuth2Authentication);
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        byte[][] fields = new byte[FIELD_COUNT][];
+        fields[VALUE] = utf8(token.getValue());
+        fields[REFRESH_TOKEN_VALUE] = Optional.ofNullable(token.getRefreshToken())
+                .map(OAuth2RefreshToken::getValue)
+                .map(MappedTokenStore::utf8)
+                .orElse(EMPTY);
+        String authenticationKey = authenticationKeyGenerator.extractKey(authentication);
+        fields[AUTHENTICATION_KEY] = utf8(authenticationKey);
+        fields[CLIENT_ID] = utf8(authentication.getOAuth2Request().getClientId());
+        fields[USER_NAME] = authentication.isClientOnly() ? EMPTY : utf8(authentication.getName());
+        fields[TOKEN_TYPE] = utf8(token.getTokenType());
+        fields[SCOPE] = utf8(Optional.ofNullable(token.getScope())
+                .map(scope -> StringUtils.collectionToDelimitedString(scope, " "))
+                .orElse(""));
+        fields[AUTHENTICATION] = authenticationCodec.encode(authentication);
+        long expiration = Optional.ofNullable(token.getExpiration())
+                .map(Date::getTime)
+                .orElse(NO_EXPIRATION);
+        long refreshTokenExpiration = expiration(token.getRefreshToken());
+        write(() -> {
+            removeAccessToken(findAccessToken(token.getValue()));
+            int record = append(ACCESS_TOKEN, expiration, refreshTokenExpiration, fields);
+            indexAccessToken(record);
+            return null;
+        });
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return lookup(() -> {
+            int record = findAccessToken(tokenValue);
+            return record < 0 ? null : toAccessToken(record);
+        });
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        write(() -> {
+            removeAccessToken(findAccessToken(token.getValue()));
+            return null;
+        });
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        byte[][] fields = new byte[FIELD_COUNT][];
+        Arrays.fill(fields, EMPTY);
+        fields[VALUE] = utf8(refreshToken.getValue());
+        fields[AUTHENTICATION] = authenticationCodec.encode(authentication);
+        long expiration = expiration(refreshToken);
+        write(() -> {
+            removeRefreshToken(findRefreshToken(refreshToken.getValue()));
+            int record = append(REFRESH_TOKEN, expiration, NO_EXPIRATION, fields);
+            byte[] value = fields[VALUE];
+            refreshTokenIndex.put(OffHeapHashIndex.hash(refreshToken.getValue()), record,
+                    offset -> fieldEquals((int) offset, VALUE, value));
+            return null;
+        });
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return lookup(() -> {
+            int record = findRefreshToken(tokenValue);
+            return record < 0 ? null : toRefreshToken(tokenValue, data.getLong(record + RECORD_EXPIRATION));
+        });
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        byte[] serializedOAuth2Authentication = lookup(() -> {
+            int record = findRefreshToken(token.getValue());
+            return record < 0 ? null : readField(record, AUTHENTICATION);
+        });
+        return serializedOAuth2Authentication == null ? null : authenticationCodec.decode(serializedOAuth2Authentication);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        write(() -> {
+            removeRefreshToken(findRefreshToken(token.getValue()));
+            byte[] value = utf8(token.getValue());
+            refreshTokenAccessTokenIndex.remove(OffHeapHashIndex.hash(token.getValue()),
+                    offset -> fieldEquals((int) offset, REFRESH_TOKEN_VALUE, value));
+            return null;
+        });
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        byte[] value = utf8(refreshToken.getValue());
+        write(() -> {
+            removeAccessToken((int) refreshTokenAccessTokenIndex.get(OffHeapHashIndex.hash(refreshToken.getValue()),
+                    offset -> fieldEquals((int) offset, REFRESH_TOKEN_VALUE, value)));
+            return null;
+        });
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        String authenticationKey = authenticationKeyGenerator.extractKey(authentication);
+        byte[] key = utf8(authenticationKey);
+        return lookup(() -> {
+            int record = (int) authenticationKeyIndex.get(OffHeapHashIndex.hash(authenticationKey),
+                    offset -> fieldEquals((int) offset, AUTHENTICATION_KEY, key));
+            return record < 0 ? null : toAccessToken(record);
+        });
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        byte[] theClientId = utf8(clientId);
+        byte[] theUserName = utf8(userName);
+        return findAccessTokens(record -> fieldEquals(record, CLIENT_ID, theClientId)
+                && fieldEquals(record, USER_NAME, theUserName));
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        byte[] theClientId = utf8(clientId);
+        return findAccessTokens(record -> fieldEquals(record, CLIENT_ID, theClientId));
+    }
+
+    /**
+     * This removes the tokens whose expiration has passed, compacting the
+     * file afterwards if removed records take up enough of it. Expired tokens
+     * are found under the read lock and removed in small batches under the
+     * write lock. A batch is only removed if the file has not been compacted
+     * since it was scanned, otherwise the file is scanned again.
+     */
+    @Scheduled(fixedDelayString = "${oauth2.security.token-store.off-heap.sweep-interval-millis:60000}")
+    public void removeExpiredTokens() {
+        long now = System.currentTimeMillis();
+        boolean swept = false;
+        for (int scan = 0; scan < MAXIMUM_SWEEP_SCANS && !swept; scan++) {
+            long[] scannedGeneration = new long[1];
+            List<Integer> expiredRecords = read(() -> {
+                scannedGeneration[0] = compactionGeneration;
+                List<Integer> records = new ArrayList<>();
+                forEachLiveRecord(record -> {
+                    if (data.getLong(record + RECORD_EXPIRATION) <= now) {
+                        records.add(record);
+                    }
+                });
+                return records;
+            });
+            swept = true;
+            for (int from = 0; from < expiredRecords.size() && swept; from += SWEEP_BATCH_SIZE) {
+                List<Integer> batch = expiredRecords.subList(from, Math.min(from + SWEEP_BATCH_SIZE, expiredRecords.size()));
+                swept = write(() -> {
+                    if (compactionGeneration != scannedGeneration[0]) {
+                        return false;
+                    }
+                    batch.forEach(record -> {
+                        if (data.get(record + RECORD_STATE) == LIVE) {
+                            if (data.get(record + RECORD_TYPE) == ACCESS_TOKEN) {
+                                removeAccessToken(record);
+                            } else {
+                                removeRefreshToken(record);
+                            }
+                        }
+                    });
+                    return true;
+                });
+            }
+        }
+        write(() -> {
+            if (removedBytes > (appendPosition - HEADER_BYTES) * compactionRatio) {
+                compact();
+            }
+            return null;
+        });
+    }
+
+    @ManagedOperation
+    public void compactNow() {
+        write(() -> {
+            compact();
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            data.force();
+            channel.close();
+            MappedBuffers.unmap(data);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public int getAccessTokenCount() {
+        return read(accessTokenIndex::size);
+    }
+
+    @ManagedAttribute
+    public int getRefreshTokenCount() {
+        return read(refreshTokenIndex::size);
+    }
+
+    @ManagedAttribute
+    public long getUsedFileBytes() {
+        return read(() -> (long) appendPosition);
+    }
+
+    @ManagedAttribute
+    public long getRemovedFileBytes() {
+        return read(() -> removedBytes);
+    }
+
+    @ManagedAttribute
+    public long getOffHeapIndexBytes() {
+        return read(() -> accessTokenIndex.getOffHeapBytes() + refreshTokenIndex.getOffHeapBytes()
+                + authenticationKeyIndex.getOffHeapBytes() + refreshTokenAccessTokenIndex.getOffHeapBytes());
+    }
+
+    /**
+     * This is the off-heap footprint, live records in the file and the
+     * indexes, scaled to a million tokens. Besides the indexes and mapped
+     * pages the store keeps nothing per token on the heap.
+     *
+     * @return the off-heap bytes per million tokens, or {@code 0} if empty
+     */
+    @ManagedAttribute
+    public long getOffHeapBytesPerMillionTokens() {
+        return read(() -> {
+            long tokens = accessTokenIndex.size() + refreshTokenIndex.size();
+            long bytes = appendPosition - HEADER_BYTES - removedBytes + getOffHeapIndexBytes();
+            return tokens == 0 ? 0L : bytes * 1000000L / tokens;
+        });
+    }
+
+    @ManagedAttribute
+    public long getLookupLatencyP50Nanos() {
+        return lookupLatency.getPercentileNanos(50D);
+    }
+
+    @ManagedAttribute
+    public long getLookupLatencyP99Nanos() {
+        return lookupLatency.getPercentileNanos(99D);
+    }
+
+    @ManagedOperation
+    public void resetLookupLatency() {
+        lookupLatency.reset();
+    }
+
+    protected <T> T lookup(Supplier<T> reader) {
+        long start = System.nanoTime();
+        try {
+            return read(reader);
+        } finally {
+            lookupLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    protected <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    protected <T> T write(Supplier<T> writer) {
+        lock.writeLock().lock();
+        try {
+            return writer.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected final void open(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        data = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+        if (data.getInt(0) != MAGIC) {
+            data.putInt(0, MAGIC);
+            data.putInt(4, VERSION);
+            data.putInt(HEADER_APPEND_POSITION, HEADER_BYTES);
+        } else if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported token store version " + data.getInt(4));
+        }
+        appendPosition = data.getInt(HEADER_APPEND_POSITION);
+        removedBytes = 0L;
+        accessTokenIndex = new OffHeapHashIndex(initialIndexCapacity);
+        refreshTokenIndex = new OffHeapHashIndex(initialIndexCapacity);
+        authenticationKeyIndex = new OffHeapHashIndex(initialIndexCapacity);
+        refreshTokenAccessTokenIndex = new OffHeapHashIndex(initialIndexCapacity);
+        for (int record = HEADER_BYTES; record < appendPosition; record += data.getInt(record + RECORD_LENGTH)) {
+            if (data.getInt(record + RECORD_LENGTH) < RECORD_HEADER_BYTES) {
+                throw new IOException("Corrupt token store record at " + record);
+            }
+            if (data.get(record + RECORD_STATE) != LIVE) {
+                removedBytes += data.getInt(record + RECORD_LENGTH);
+            } else if (data.get(record + RECORD_TYPE) == ACCESS_TOKEN) {
+                indexAccessToken(record);
+            } else {
+                byte[] value = readField(record, VALUE);
+                refreshTokenIndex.put(OffHeapHashIndex.hash(new String(value, StandardCharsets.UTF_8)), record,
+                        offset -> fieldEquals((int) offset, VALUE, value));
+            }
+        }
+        LOGGER.info("Opened token store {} with {} access tokens and {} refresh tokens",
+                path, accessTokenIndex.size(), refreshTokenIndex.size());
+    }
+
+    /**
+     * This rewrites the live records into a new file, replacing the current
+     * one once complete. Both the mapping of the new file used for writing
+     * and the mapping of the replaced file are released before the new file
+     * is mapped, so that compactions do not accumulate mappings.
+     */
+    protected void compact() {
+        Path compactedFile = file.resolveSibling(file.getFileName() + ".compacting");
+        try {
+            Files.deleteIfExists(compactedFile);
+            try (FileChannel compactedChannel = FileChannel.open(compactedFile, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer compactedData = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+                int compactedPosition = HEADER_BYTES;
+                for (int record = HEADER_BYTES; record < appendPosition; record += data.getInt(record + RECORD_LENGTH)) {
+                    int recordLength = data.getInt(record + RECORD_LENGTH);
+                    if (data.get(record + RECORD_STATE) == LIVE) {
+                        ByteBuffer source = data.duplicate();
+                        source.position(record);
+                        source.limit(record + recordLength);
+                        compactedData.position(compactedPosition);
+                        compactedData.put(source);
+                        compactedPosition += recordLength;
+                    }
+                }
+                compactedData.putInt(4, VERSION);
+                compactedData.putInt(HEADER_APPEND_POSITION, compactedPosition);
+                compactedData.putInt(0, MAGIC);
+                compactedData.force();
+                MappedBuffers.unmap(compactedData);
+            }
+            data.force();
+            channel.close();
+            // Readers only reach the mapping under the lock, held here for writing
+            MappedBuffers.unmap(data);
+            Files.move(compactedFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            int previousAppendPosition = appendPosition;
+            compactionGeneration++;
+            open(file);
+            LOGGER.info("Compacted token store {} from {} to {} bytes", file, previousAppendPosition, appendPosition);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to compact token store " + file, ex);
+        }
+    }
+
+    protected int append(byte type, long expiration, long refreshTokenExpiration, byte[][] fields) {
+        int recordLength = RECORD_HEADER_BYTES;
+        for (byte[] field : fields) {
+            recordLength += field.length;
+        }
+        recordLength = (recordLength + 7) & ~7;
+        if ((long) appendPosition + recordLength > capacityBytes) {
+            if (removedBytes > 0) {
+                compact();
+            }
+            if ((long) appendPosition + recordLength > capacityBytes) {
+                throw new IllegalStateException("Token store " + file + " is full");
+            }
+        }
+        int record = appendPosition;
+        data.putInt(record + RECORD_LENGTH, recordLength);
+        data.put(record + RECORD_TYPE, type);
+        data.putLong(record + RECORD_EXPIRATION, expiration);
+        data.putLong(record + RECORD_REFRESH_TOKEN_EXPIRATION, refreshTokenExpiration);
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(record + RECORD_HEADER_BYTES);
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            data.putInt(record + RECORD_FIELD_LENGTHS + field * 4, fields[field].length);
+            buffer.put(fields[field]);
+        }
+        // The record only counts once complete
+        data.put(record + RECORD_STATE, LIVE);
+        appendPosition += recordLength;
+        data.putInt(HEADER_APPEND_POSITION, appendPosition);
+        return record;
+    }
+
+    protected void indexAccessToken(int record) {
+        byte[] value = readField(record, VALUE);
+        accessTokenIndex.put(OffHeapHashIndex.hash(new String(value, StandardCharsets.UTF_8)), record,
+                offset -> fieldEquals((int) offset, VALUE, value));
+        byte[] authenticationKey = readField(record, AUTHENTICATION_KEY);
+        authenticationKeyIndex.put(OffHeapHashIndex.hash(new String(authenticationKey, StandardCharsets.UTF_8)), record,
+                offset -> fieldEquals((int) offset, AUTHENTICATION_KEY, authenticationKey));
+        byte[] refreshTokenValue = readField(record, REFRESH_TOKEN_VALUE);
+        if (refreshTokenValue.length > 0) {
+            refreshTokenAccessTokenIndex.put(OffHeapHashIndex.hash(new String(refreshTokenValue, StandardCharsets.UTF_8)), record,
+                    offset -> fieldEquals((int) offset, REFRESH_TOKEN_VALUE, refreshTokenValue));
+        }
+    }
+
+    protected void removeAccessToken(int record) {
+        if (record < 0 || data.get(record + RECORD_STATE) != LIVE) {
+            return;
+        }
+        LongPredicate isRecord = offset -> offset == record;
+        accessTokenIndex.remove(OffHeapHashIndex.hash(readString(record, VALUE)), isRecord);
+        authenticationKeyIndex.remove(OffHeapHashIndex.hash(readString(record, AUTHENTICATION_KEY)), isRecord);
+        String refreshTokenValue = readString(record, REFRESH_TOKEN_VALUE);
+        if (!refreshTokenValue.isEmpty()) {
+            refreshTokenAccessTokenIndex.remove(OffHeapHashIndex.hash(refreshTokenValue), isRecord);
+        }
+        markRemoved(record);
+    }
+
+    protected void removeRefreshToken(int record) {
+        if (record < 0 || data.get(record + RECORD_STATE) != LIVE) {
+            return;
+        }
+        refreshTokenIndex.remove(OffHeapHashIndex.hash(readString(record, VALUE)), offset -> offset == record);
+        markRemoved(record);
+    }
+
+    protected void markRemoved(int record) {
+        data.put(record + RECORD_STATE, REMOVED);
+        removedBytes += data.getInt(record + RECORD_LENGTH);
+    }
+
+    protected int findAccessToken(String tokenValue) {
+        byte[] value = utf8(tokenValue);
+        return (int) accessTokenIndex.get(OffHeapHashIndex.hash(tokenValue), offset -> fieldEquals((int) offset, VALUE, value));
+    }
+
+    protected int findRefreshToken(String tokenValue) {
+        byte[] value = utf8(tokenValue);
+        return (int) refreshTokenIndex.get(OffHeapHashIndex.hash(tokenValue), offset -> fieldEquals((int) offset, VALUE, value));
+    }
+
+    protected Collection<OAuth2AccessToken> findAccessTokens(IntPredicate matches) {
+        return read(() -> {
+            List<OAuth2AccessToken> accessTokens = new ArrayList<>();
+            forEachLiveRecord(record -> {
+                if (data.get(record + RECORD_TYPE) == ACCESS_TOKEN && matches.test(record)) {
+                    accessTokens.add(toAccessToken(record));
+                }
+            });
+            return accessTokens;
+        });
+    }
+
+    protected void forEachLiveRecord(IntConsumer consumer) {
+        for (int record = HEADER_BYTES; record < appendPosition; record += data.getInt(record + RECORD_LENGTH)) {
+            if (data.get(record + RECORD_STATE) == LIVE) {
+                consumer.accept(record);
+            }
+        }
+    }
+
+    protected OAuth2AccessToken toAccessToken(int record) {
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(readString(record, VALUE));
+        long expiration = data.getLong(record + RECORD_EXPIRATION);
+        accessToken.setExpiration(expiration == NO_EXPIRATION ? null : new Date(expiration));
+        accessToken.setTokenType(readString(record, TOKEN_TYPE));
+        Set<String> scope = new LinkedHashSet<>(Arrays.asList(StringUtils.tokenizeToStringArray(readString(record, SCOPE), " ")));
+        accessToken.setScope(scope);
+        String refreshTokenValue = readString(record, REFRESH_TOKEN_VALUE);
+        if (!refreshTokenValue.isEmpty()) {
+            accessToken.setRefreshToken(toRefreshToken(refreshTokenValue, data.getLong(record + RECORD_REFRESH_TOKEN_EXPIRATION)));
+        }
+        return accessToken;
+    }
+
+    protected OAuth2RefreshToken toRefreshToken(String value, long expiration) {
+        return expiration == NO_EXPIRATION ? new DefaultOAuth2RefreshToken(value)
+                : new DefaultExpiringOAuth2RefreshToken(value, new Date(expiration));
+    }
+
+    protected int fieldOffset(int record, int field) {
+        int offset = record + RECORD_HEADER_BYTES;
+        for (int index = 0; index < field; index++) {
+            offset += data.getInt(record + RECORD_FIELD_LENGTHS + index * 4);
+        }
+        return offset;
+    }
+
+    protected int fieldLength(int record, int field) {
+        return data.getInt(record + RECORD_FIELD_LENGTHS + field * 4);
+    }
+
+    protected byte[] readField(int record, int field) {
+        byte[] bytes = new byte[fieldLength(record, field)];
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(fieldOffset(record, field));
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    protected String readString(int record, int field) {
+        return new String(readField(record, field), StandardCharsets.UTF_8);
+    }
+
+    protected boolean fieldEquals(int record, int field, byte[] expected) {
+        if (fieldLength(record, field) != expected.length) {
+            return false;
+        }
+        int offset = fieldOffset(record, field);
+        for (int index = 0; index < expected.length; index++) {
+            if (data.get(offset + index) != expected[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static long expiration(OAuth2RefreshToken refreshToken) {
+        return Optional.ofNullable(refreshToken)
+                .filter(ExpiringOAuth2RefreshToken.class::isInstance)
+                .map(theRefreshToken -> ((ExpiringOAuth2RefreshToken) theRefreshToken).getExpiration())
+                .map(Date::getTime)
+                .orElse(NO_EXPIRATION);
+    }
+
+    protected static byte[] utf8(String value) {
+        return value == null ? EMPTY : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongPredicate;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class OffHeapHashIndex {
+
+    private static final int SLOT_BYTES = 16;
+
+    private static final long EMPTY = 0L;
+
+    private static final long REMOVED = -1L;
+
+    private static final double MAXIMUM_LOAD = 0.6D;
+
+    protected ByteBuffer slots;
+
+    protected int capacity;
+
+    protected int size;
+
+    protected int usedSlots;
+
+    /**
+     * @param initialCapacity the initial number of slots, rounded up to a
+     * power of two
+     */
+    public OffHeapHashIndex(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity - 1)) << 1);
+    }
+
+    /**
+     * @param hash the hash of the key
+     * @param matches tests whether the record at an offset has the key
+     * @return the offset of the record with the key, or {@code -1}
+     */
+    public long get(long hash, LongPredicate matches) {
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask;; slot = (slot + 1) & mask) {
+            long offset = slots.getLong(slot * SLOT_BYTES + 8);
+            if (offset == EMPTY) {
+                return -1L;
+            }
+            if (offset != REMOVED && slots.getLong(slot * SLOT_BYTES) == hash && matches.test(offset)) {
+                return offset;
+            }
+        }
+    }
+
+    /**
+     * This indexes a record, replacing the record indexed under the same key.
+     *
+     * @param hash the hash of the key
+     * @param offset the offset of the record, never {@code 0}
+     * @param matches tests whether the record at an offset has the key
+     */
+    public void put(long hash, long offset, LongPredicate matches) {
+        if (usedSlots + 1 > capacity * MAXIMUM_LOAD) {
+            rebuild(size + 1 > capacity * MAXIMUM_LOAD / 2 ? capacity << 1 : capacity);
+        }
+        int mask = capacity - 1;
+        int freeSlot = -1;
+        for (int slot = (int) hash & mask;; slot = (slot + 1) & mask) {
+            long slotOffset = slots.getLong(slot * SLOT_BYTES + 8);
+            if (slotOffset == EMPTY) {
+                if (freeSlot == -1) {
+                    freeSlot = slot;
+                    usedSlots++;
+                }
+                break;
+            }
+            if (slotOffset == REMOVED) {
+                if (freeSlot == -1) {
+                    freeSlot = slot;
+                }
+            } else if (slots.getLong(slot * SLOT_BYTES) == hash && matches.test(slotOffset)) {
+                slots.putLong(slot * SLOT_BYTES + 8, offset);
+                return;
+            }
+        }
+        slots.putLong(freeSlot * SLOT_BYTES, hash);
+        slots.putLong(freeSlot * SLOT_BYTES + 8, offset);
+        size++;
+    }
+
+    /**
+     * @param hash the hash of the key
+     * @param matches tests whether the record at an offset has the key
+     * @return {@code true} if a record was indexed under the key
+     */
+    public boolean remove(long hash, LongPredicate matches) {
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask;; slot = (slot + 1) & mask) {
+            long offset = slots.getLong(slot * SLOT_BYTES + 8);
+            if (offset == EMPTY) {
+                return false;
+            }
+            if (offset != REMOVED && slots.getLong(slot * SLOT_BYTES) == hash && matches.test(offset)) {
+                slots.putLong(slot * SLOT_BYTES + 8, REMOVED);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getOffHeapBytes() {
+        return (long) capacity * SLOT_BYTES;
+    }
+
+    /**
+     * This is the 64-bit FNV-1a hash of the characters of a key, with the
+     * bits mixed so that the low bits used for the slot are well spread.
+     *
+     * @param key the key
+     * @return the hash
+     */
+    public static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int index = 0; index < key.length(); index++) {
+            hash ^= key.charAt(index);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    protected void rebuild(int newCapacity) {
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            long offset = oldSlots.getLong(oldSlot * SLOT_BYTES + 8);
+            if (offset != EMPTY && offset != REMOVED) {
+                long hash = oldSlots.getLong(oldSlot * SLOT_BYTES);
+                int slot = (int) hash & mask;
+                while (slots.getLong(slot * SLOT_BYTES + 8) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots.putLong(slot * SLOT_BYTES, hash);
+                slots.putLong(slot * SLOT_BYTES + 8, offset);
+                size++;
+                usedSlots++;
+            }
+        }
+    }
+
+    protected final void allocate(int newCapacity) {
+        slots = ByteBuffer.allocateDirect(newCapacity * SLOT_BYTES);
+        capacity = newCapacity;
+        size = 0;
+        usedSlots = 0;
+    }
+
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.filetec.oauth2.security.registry.GrantedAuthorityRegistry;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@ManagedResource
+public class ShardedInMemoryTokenStore implements TokenStore {
+
+    protected final AuthenticationKeyGenerator authenticationKeyGenerator;
+
+    protected final List<Shard> shards;
+
+    protected final int shardMask;
+
+    protected final ConcurrentMap<String, String> authenticationKeyIndex;
+
+    protected final ConcurrentMap<String, Set<String>> clientIdIndex;
+
+    protected final ConcurrentMap<String, Set<String>> clientIdAndUserNameIndex;
+
+    protected final LongAdder expiredAccessTokenCount;
+
+    protected final LongAdder expiredRefreshTokenCount;
+
+    protected volatile TokenJournal journal;
+
+    protected volatile GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    /**
+     * @param authenticationKeyGenerator the {@link AuthenticationKeyGenerator}
+     * keying access tokens by authentication
+     * @param shardCount the number of shards, rounded up to a power of two
+     * @param tickMillis the resolution of expirations
+     */
+    public ShardedInMemoryTokenStore(AuthenticationKeyGenerator authenticationKeyGenerator,
+            int shardCount, long tickMillis) {
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
+        int roundedShardCount = Integer.highestOneBit(Math.max(1, shardCount - 1)) << 1;
+        long now = System.currentTimeMillis();
+        shards = new ArrayList<>(roundedShardCount);
+        for (int index = 0; index < roundedShardCount; index++) {
+            shards.add(new Shard(tickMillis, now));
+        }
+        shardMask = roundedShardCount - 1;
+        authenticationKeyIndex = new ConcurrentHashMap<>();
+        clientIdIndex = new ConcurrentHashMap<>();
+        clientIdAndUserNameIndex = new ConcurrentHashMap<>();
+        expiredAccessTokenCount = new LongAdder();
+        expiredRefreshTokenCount = new LongAdder();
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        return Optional.ofNullable(shard(token).accessTokens.get(token))
+                .map(accessTokenEntry -> accessTokenEntry.authentication)
+                .orElse(null);
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication theAuthentication) {
+        OAuth2Authentication authentication = share(theAuthentication);
+        Shard shard = shard(token.getValue());
+        AccessTokenEntry accessTokenEntry = new AccessTokenEntry(token, authentication,
+                authenticationKeyGenerator.extractKey(authentication));
+        Optional.ofNullable(shard.accessTokens.put(token.getValue(), accessTokenEntry))
+                .ifPresent(this::unindex);
+        authenticationKeyIndex.put(accessTokenEntry.authenticationKey, token.getValue());
+        addToIndex(clientIdIndex, accessTokenEntry.clientId, token.getValue());
+        Optional.ofNullable(accessTokenEntry.clientIdAndUserName)
+                .ifPresent(clientIdAndUserName -> addToIndex(clientIdAndUserNameIndex, clientIdAndUserName, token.getValue()));
+        Optional.ofNullable(token.getRefreshToken())
+                .map(OAuth2RefreshToken::getValue)
+                .ifPresent(refreshTokenValue -> shard(refreshTokenValue).refreshTokenToAccessToken.put(refreshTokenValue, token.getValue()));
+        Optional.ofNullable(token.getExpiration())
+                .ifPresent(expiration -> shard.schedule(new Expiration(true, token.getValue()), expiration.getTime()));
+        journal(theJournal -> theJournal.accessTokenStored(token, authentication));
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return Optional.ofNullable(shard(tokenValue).accessTokens.get(tokenValue))
+                .map(accessTokenEntry -> accessTokenEntry.token)
+                .orElse(null);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        removeAccessToken(token.getValue());
+        journal(theJournal -> theJournal.accessTokenRemoved(token.getValue()));
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication theAuthentication) {
+        OAuth2Authentication authentication = share(theAuthentication);
+        Shard shard = shard(refreshToken.getValue());
+        shard.refreshTokens.put(refreshToken.getValue(), new RefreshTokenEntry(refreshToken, authentication));
+        if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+            Optional.ofNullable(((ExpiringOAuth2RefreshToken) refreshToken).getExpiration())
+                    .ifPresent(expiration -> shard.schedule(new Expiration(false, refreshToken.getValue()), expiration.getTime()));
+        }
+        journal(theJournal -> theJournal.refreshTokenStored(refreshToken, authentication));
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return Optional.ofNullable(shard(tokenValue).refreshTokens.get(tokenValue))
+                .map(refreshTokenEntry -> refreshTokenEntry.token)
+                .orElse(null);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        return Optional.ofNullable(shard(token.getValue()).refreshTokens.get(token.getValue()))
+                .map(refreshTokenEntry -> refreshTokenEntry.authentication)
+                .orElse(null);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        removeRefreshToken(token.getValue());
+        journal(theJournal -> theJournal.refreshTokenRemoved(token.getValue()));
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        Optional.ofNullable(shard(refreshToken.getValue()).refreshTokenToAccessToken.remove(refreshToken.getValue()))
+                .ifPresent(tokenValue -> {
+                    removeAccessToken(tokenValue);
+                    journal(theJournal -> theJournal.accessTokenRemoved(tokenValue));
+                });
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        String authenticationKey = authenticationKeyGenerator.extractKey(authentication);
+        return Optional.ofNullable(authenticationKeyIndex.get(authenticationKey))
+                .map(tokenValue -> shard(tokenValue).accessTokens.get(tokenValue))
+                .map(accessTokenEntry -> {
+                    if (!authenticationKey.equals(authenticationKeyGenerator.extractKey(accessTokenEntry.authentication))) {
+                        // Keep the index consistent with the authentication that was asked for
+                        storeAccessToken(accessTokenEntry.token, authentication);
+                    }
+                    return accessTokenEntry.token;
+                })
+                .orElse(null);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return findTokens(clientIdAndUserNameIndex, clientIdAndUserName(clientId, userName));
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return findTokens(clientIdIndex, clientId);
+    }
+
+    /**
+     * This advances the timer wheels of every shard, removing the tokens
+     * whose expiration has passed.
+     */
+    @Scheduled(fixedDelayString = "${oauth2.security.token-store.tick-millis:1000}")
+    public void removeExpiredTokens() {
+        long now = System.currentTimeMillis();
+        shards.forEach(shard -> shard.advance(now).forEach(expiration -> {
+            if (expiration.accessToken) {
+                Optional.ofNullable(shard.accessTokens.get(expiration.tokenValue))
+                        .filter(accessTokenEntry -> accessTokenEntry.isExpired(now))
+                        .ifPresent(accessTokenEntry -> {
+                            removeAccessToken(expiration.tokenValue);
+                            expiredAccessTokenCount.increment();
+                        });
+            } else {
+                Optional.ofNullable(shard.refreshTokens.get(expiration.tokenValue))
+                        .filter(refreshTokenEntry -> refreshTokenEntry.isExpired(now))
+                        .ifPresent(refreshTokenEntry -> {
+                            removeRefreshToken(expiration.tokenValue);
+                            expiredRefreshTokenCount.increment();
+                        });
+            }
+        }));
+    }
+
+    /**
+     * @param refreshTokenValue the value of a refresh token
+     * @return the value of the access token last issued with the refresh
+     * token, or {@code null}
+     */
+    public String readAccessTokenValueForRefreshToken(String refreshTokenValue) {
+        return shard(refreshTokenValue).refreshTokenToAccessToken.get(refreshTokenValue);
+    }
+
+    public void forEachAccessToken(BiConsumer<OAuth2AccessToken, OAuth2Authentication> consumer) {
+        shards.forEach(shard -> shard.accessTokens.values()
+                .forEach(accessTokenEntry -> consumer.accept(accessTokenEntry.token, accessTokenEntry.authentication)));
+    }
+
+    public void forEachRefreshToken(BiConsumer<OAuth2RefreshToken, OAuth2Authentication> consumer) {
+        shards.forEach(shard -> shard.refreshTokens.values()
+                .forEach(refreshTokenEntry -> consumer.accept(refreshTokenEntry.token, refreshTokenEntry.authentication)));
+    }
+
+    public void setJournal(TokenJournal journal) {
+        this.journal = journal;
+    }
+
+    public void setGrantedAuthorityRegistry(GrantedAuthorityRegistry grantedAuthorityRegistry) {
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
+    }
+
+    @ManagedAttribute
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @ManagedAttribute
+    public int getAccessTokenCount() {
+        return shards.stream()
+                .mapToInt(shard -> shard.accessTokens.size())
+                .sum();
+    }
+
+    @ManagedAttribute
+    public int getRefreshTokenCount() {
+        return shards.stream()
+                .mapToInt(shard -> shard.refreshTokens.size())
+                .sum();
+    }
+
+    @ManagedAttribute
+    public int getScheduledExpirationCount() {
+        return shards.stream()
+                .mapToInt(Shard::getScheduledExpirationCount)
+                .sum();
+    }
+
+    @ManagedAttribute
+    public long getExpiredAccessTokenCount() {
+        return expiredAccessTokenCount.sum();
+    }
+
+    @ManagedAttribute
+    public long getExpiredRefreshTokenCount() {
+        return expiredRefreshTokenCount.sum();
+    }
+
+    protected OAuth2Authentication share(OAuth2Authentication authentication) {
+        return Optional.ofNullable(grantedAuthorityRegistry)
+                .map(theGrantedAuthorityRegistry -> theGrantedAuthorityRegistry.share(authentication))
+                .orElse(authentication);
+    }
+
+    protected void journal(Consumer<TokenJournal> entry) {
+        Optional.ofNullable(journal)
+                .ifPresent(entry);
+    }
+
+    protected void removeAccessToken(String tokenValue) {
+        Optional.ofNullable(shard(tokenValue).accessTokens.remove(tokenValue))
+                .ifPresent(this::unindex);
+    }
+
+    protected void removeRefreshToken(String tokenValue) {
+        Shard shard = shard(tokenValue);
+        shard.refreshTokens.remove(tokenValue);
+        shard.refreshTokenToAccessToken.remove(tokenValue);
+    }
+
+    /**
+     * This removes an access token that has been removed, replaced or has
+     * expired from the indexes, including the mapping of its refresh token,
+     * unless the refresh token has since been mapped to another access token.
+     *
+     * @param accessTokenEntry the removed access token
+     */
+    protected void unindex(AccessTokenEntry accessTokenEntry) {
+        String tokenValue = accessTokenEntry.token.getValue();
+        authenticationKeyIndex.remove(accessTokenEntry.authenticationKey, tokenValue);
+        removeFromIndex(clientIdIndex, accessTokenEntry.clientId, tokenValue);
+        Optional.ofNullable(accessTokenEntry.clientIdAndUserName)
+                .ifPresent(clientIdAndUserName -> removeFromIndex(clientIdAndUserNameIndex, clientIdAndUserName, tokenValue));
+        Optional.ofNullable(accessTokenEntry.token.getRefreshToken())
+                .map(OAuth2RefreshToken::getValue)
+                .ifPresent(refreshTokenValue -> shard(refreshTokenValue).refreshTokenToAccessToken.remove(refreshTokenValue, tokenValue));
+    }
+
+    protected Collection<OAuth2AccessToken> findTokens(ConcurrentMap<String, Set<String>> index, String key) {
+        return Optional.ofNullable(index.get(key))
+                .map(tokenValues -> tokenValues.stream()
+                        .map(this::readAccessToken)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()))
+                .map(Collections::unmodifiableCollection)
+                .orElse(Collections.emptyList());
+    }
+
+    protected Shard shard(String tokenValue) {
+        int hash = tokenValue.hashCode();
+        return shards.get((hash ^ (hash >>> 16)) & shardMask);
+    }
+
+    protected static void addToIndex(ConcurrentMap<String, Set<String>> index, String key, String tokenValue) {
+        index.compute(key, (theKey, tokenValues) -> {
+            Set<String> theTokenValues = tokenValues != null ? tokenValues : ConcurrentHashMap.newKeySet();
+            theTokenValues.add(tokenValue);
+            return theTokenValues;
+        });
+    }
+
+    protected static void removeFromIndex(ConcurrentMap<String, Set<String>> index, String key, String tokenValue) {
+        index.computeIfPresent(key, (theKey, tokenValues) -> {
+            tokenValues.remove(tokenValue);
+            return tokenValues.isEmpty() ? null : tokenValues;
+        });
+    }
+
+    protected static String clientIdAndUserName(String clientId, String userName) {
+        return clientId + ':' + userName;
+    }
+
+    protected static class Shard {
+
+        protected final ConcurrentMap<String, AccessTokenEntry> accessTokens;
+
+        protected final ConcurrentMap<String, RefreshTokenEntry> refreshTokens;
+
+        protected final ConcurrentMap<String, String> refreshTokenToAccessToken;
+
+        protected final TimerWheel<Expiration> timerWheel;
+
+        protected Shard(long tickMillis, long nowMillis) {
+            accessTokens = new ConcurrentHashMap<>();
+            refreshTokens = new ConcurrentHashMap<>();
+            refreshTokenToAccessToken = new ConcurrentHashMap<>();
+            timerWheel = new TimerWheel<>(tickMillis, nowMillis);
+        }
+
+        protected void schedule(Expiration expiration, long deadlineMillis) {
+            synchronized (timerWheel) {
+                timerWheel.schedule(expiration, deadlineMillis);
+            }
+        }
+
+        protected List<Expiration> advance(long nowMillis) {
+            List<Expiration> expirations = new ArrayList<>();
+            synchronized (timerWheel) {
+                timerWheel.advance(nowMillis, expirations::add);
+            }
+            return expirations;
+        }
+
+        protected int getScheduledExpirationCount() {
+            synchronized (timerWheel) {
+                return timerWheel.size();
+            }
+        }
+
+    }
+
+    protected static class AccessTokenEntry {
+
+        protected final OAuth2AccessToken token;
+
+        protected final OAuth2Authentication authentication;
+
+        protected final String authenticationKey;
+
+        protected final String clientId;
+
+        protected final String clientIdAndUserName;
+
+        protected AccessTokenEntry(OAuth2AccessToken token, OAuth2Authentication authentication,
+                String authenticationKey) {
+            this.token = token;
+            this.authentication = authentication;
+            this.authenticationKey = authenticationKey;
+            clientId = authentication.getOAuth2Request().getClientId();
+            clientIdAndUserName = authentication.isClientOnly() ? null
+                    : clientIdAndUserName(clientId, authentication.getName());
+        }
+
+        protected boolean isExpired(long nowMillis) {
+            return token.getExpiration() != null && token.getExpiration().getTime() <= nowMillis;
+        }
+
+    }
+
+    protected static class RefreshTokenEntry {
+
+        protected final OAuth2RefreshToken token;
+
+        protected final OAuth2Authentication authentication;
+
+        protected RefreshTokenEntry(OAuth2RefreshToken token, OAuth2Authentication authentication) {
+            this.token = token;
+            this.authentication = authentication;
+        }
+
+        protected boolean isExpired(long nowMillis) {
+            return token instanceof ExpiringOAuth2RefreshToken
+                    && ((ExpiringOAuth2RefreshToken) token).getExpiration() != null
+                    && ((ExpiringOAuth2RefreshToken) token).getExpiration().getTime() <= nowMillis;
+        }
+
+    }
+
+    protected static class Expiration {
+
+        protected final boolean accessToken;
+
+        protected final String tokenValue;
+
+        protected Expiration(boolean accessToken, String tokenValue) {
+            this.accessToken = accessToken;
+            this.tokenValue = tokenValue;
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class TimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private static final int LEVELS = 4;
+
+    protected final long tickMillis;
+
+    protected final List<List<Timer<T>>> slots;
+
+    protected final List<Timer<T>> overflow;
+
+    protected long currentTick;
+
+    protected int size;
+
+    public TimerWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        slots = new ArrayList<>(LEVELS * SLOTS);
+        for (int index = 0; index < LEVELS * SLOTS; index++) {
+            slots.add(new ArrayList<>(0));
+        }
+        overflow = new ArrayList<>(0);
+        currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * This schedules a value to be handed back once its deadline has passed.
+     * Deadlines already passed fire on the next tick.
+     *
+     * @param value the value
+     * @param deadlineMillis the deadline, in milliseconds since the epoch
+     */
+    public void schedule(T value, long deadlineMillis) {
+        long deadlineTick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        place(new Timer<>(value, deadlineTick));
+        size++;
+    }
+
+    /**
+     * This advances the wheel to the given time, handing every value whose
+     * deadline has passed to the consumer.
+     *
+     * @param nowMillis the current time, in milliseconds since the epoch
+     * @param expired the consumer of the values whose deadlines have passed
+     */
+    public void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                currentTick = targetTick;
+                return;
+            }
+            currentTick++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(slot(level, currentTick));
+                if (level == LEVELS - 1 && (currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+                    cascade(overflow);
+                }
+            }
+            List<Timer<T>> dueTimers = slot(0, currentTick);
+            if (!dueTimers.isEmpty()) {
+                List<Timer<T>> timers = new ArrayList<>(dueTimers);
+                dueTimers.clear();
+                size -= timers.size();
+                timers.forEach(timer -> expired.accept(timer.value));
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    protected void cascade(List<Timer<T>> timers) {
+        if (!timers.isEmpty()) {
+            List<Timer<T>> cascadedTimers = new ArrayList<>(timers);
+            timers.clear();
+            cascadedTimers.forEach(this::place);
+        }
+    }
+
+    /**
+     * This places a timer in the lowest level whose higher digits it shares
+     * with the current tick, so that its slot is reached before the level
+     * turns over.
+     *
+     * @param timer the timer
+     */
+    protected void place(Timer<T> timer) {
+        long deadlineTick = Math.max(timer.deadlineTick, currentTick + 1);
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if ((deadlineTick >>> shift) == (currentTick >>> shift)) {
+                slot(level, deadlineTick).add(timer);
+                return;
+            }
+        }
+        overflow.add(timer);
+    }
+
+    protected List<Timer<T>> slot(int level, long tick) {
+        return slots.get(level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+    }
+
+    protected static class Timer<T> {
+
+        protected final T value;
+
+        protected final long deadlineTick;
+
+        protected Timer(T value, long deadlineTick) {
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+
+    }
+
+}
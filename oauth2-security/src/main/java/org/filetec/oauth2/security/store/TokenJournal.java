@@ -0,0 +1,550 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.filetec.oauth2.security.codec.OAuth2AuthenticationCodec;
+import org.filetec.oauth2.security.codec.OAuth2TokenCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@ManagedResource
+public class TokenJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenJournal.class);
+
+    private static final Pattern FILE_NAME = Pattern.compile("(journal|snapshot)-(\\d+)\\.(log|dat)");
+
+    private static final byte ACCESS_TOKEN_STORED = 1;
+
+    private static final byte ACCESS_TOKEN_REMOVED = 2;
+
+    private static final byte REFRESH_TOKEN_STORED = 3;
+
+    private static final byte REFRESH_TOKEN_REMOVED = 4;
+
+    private static final int MAXIMUM_PENDING_JOURNALS = 4;
+
+    protected final ShardedInMemoryTokenStore tokenStore;
+
+    protected final OAuth2AuthenticationCodec authenticationCodec;
+
+    protected final Path directory;
+
+    protected final int journalCapacityBytes;
+
+    protected final ReadWriteLock rotationLock;
+
+    protected final Object appendLock;
+
+    protected final Object snapshotLock;
+
+    protected final LongAdder appendedCount;
+
+    protected final ExecutorService snapshotExecutor;
+
+    protected final AtomicBoolean snapshotQueued;
+
+    protected long generation;
+
+    protected long lastSnapshotGeneration;
+
+    protected FileChannel journalChannel;
+
+    protected MappedByteBuffer journal;
+
+    protected int journalPosition;
+
+    protected long lastReplayMillis;
+
+    protected long lastSnapshotMillis;
+
+    /**
+     * @param tokenStore the {@link ShardedInMemoryTokenStore} to journal
+     * @param authenticationCodec the {@link OAuth2AuthenticationCodec}
+     * storing authentications
+     * @param directory the directory of the journal and snapshot files
+     * @param journalCapacityBytes the size each journal file is mapped at
+     */
+    public TokenJournal(ShardedInMemoryTokenStore tokenStore, OAuth2AuthenticationCodec authenticationCodec,
+            Path directory, int journalCapacityBytes) {
+        this.tokenStore = tokenStore;
+        this.authenticationCodec = authenticationCodec;
+        this.directory = directory;
+        this.journalCapacityBytes = journalCapacityBytes;
+        rotationLock = new ReentrantReadWriteLock();
+        appendLock = new Object();
+        snapshotLock = new Object();
+        appendedCount = new LongAdder();
+        snapshotExecutor = Executors.newSingleThreadExecutor();
+        snapshotQueued = new AtomicBoolean();
+    }
+
+    /**
+     * This replays the latest snapshot and the journal files written since into
+     * the token store, then starts a new journal file and snapshot and attaches
+     * this to the token store.
+     *
+     * @throws IOException if the files cannot be read or written
+     */
+    @PostConstruct
+    public void replay() throws IOException {
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long snapshotGeneration = generations("snapshot").stream()
+                .reduce((first, second) -> second)
+                .orElse(0L);
+        long entries = 0L;
+        if (snapshotGeneration > 0L) {
+            entries += replaySnapshot(snapshot(snapshotGeneration), now);
+        }
+        for (long journalGeneration : generations("journal")) {
+            if (journalGeneration >= snapshotGeneration) {
+                entries += replayJournal(journal(journalGeneration), now);
+                generation = Math.max(generation, journalGeneration);
+            }
+        }
+        generation = Math.max(generation, snapshotGeneration);
+        long tokens = (long) tokenStore.getAccessTokenCount() + tokenStore.getRefreshTokenCount();
+        lastReplayMillis = (System.nanoTime() - start) / 1000000L;
+        LOGGER.info("Replayed {} journal entries into {} tokens in {} ms ({} ms per million tokens)",
+                entries, tokens, lastReplayMillis, tokens == 0L ? 0L : lastReplayMillis * 1000000L / tokens);
+        snapshot();
+        tokenStore.setJournal(this);
+    }
+
+    public void accessTokenStored(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        append(entry(out -> {
+            out.writeByte(ACCESS_TOKEN_STORED);
+            writeAccessToken(out, token, authentication);
+        }));
+    }
+
+    public void accessTokenRemoved(String tokenValue) {
+        append(entry(out -> {
+            out.writeByte(ACCESS_TOKEN_REMOVED);
+            out.writeUTF(tokenValue);
+        }));
+    }
+
+    public void refreshTokenStored(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        append(entry(out -> {
+            out.writeByte(REFRESH_TOKEN_STORED);
+            writeRefreshToken(out, refreshToken, authentication);
+        }));
+    }
+
+    public void refreshTokenRemoved(String tokenValue) {
+        append(entry(out -> {
+            out.writeByte(REFRESH_TOKEN_REMOVED);
+            out.writeUTF(tokenValue);
+        }));
+    }
+
+    /**
+     * This starts a new journal file and writes the live tokens to a new
+     * snapshot, deleting the older journal files and snapshots once written.
+     */
+    @ManagedOperation
+    @Scheduled(initialDelayString = "${oauth2.security.token-store.journal.snapshot-interval-millis:600000}",
+            fixedDelayString = "${oauth2.security.token-store.journal.snapshot-interval-millis:600000}")
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            long start = System.nanoTime();
+            long snapshotGeneration;
+            rotationLock.writeLock().lock();
+            try {
+                snapshotGeneration = rotate();
+                lastSnapshotGeneration = snapshotGeneration;
+            } finally {
+                rotationLock.writeLock().unlock();
+            }
+            Path snapshot = snapshot(snapshotGeneration);
+            Path incompleteSnapshot = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            long now = System.currentTimeMillis();
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(incompleteSnapshot)))) {
+                    // Refresh tokens first, as in the journal
+                    tokenStore.forEachRefreshToken((refreshToken, authentication) -> {
+                        if (!isExpired(refreshToken, now)) {
+                            writeSnapshotEntry(out, entry(entryOut -> {
+                                entryOut.writeByte(REFRESH_TOKEN_STORED);
+                                writeRefreshToken(entryOut, refreshToken, authentication);
+                            }));
+                        }
+                    });
+                    tokenStore.forEachAccessToken((accessToken, authentication) -> {
+                        if (!isExpired(accessToken, now)) {
+                            writeSnapshotEntry(out, entry(entryOut -> {
+                                entryOut.writeByte(ACCESS_TOKEN_STORED);
+                                writeAccessToken(entryOut, accessToken, authentication);
+                            }));
+                        }
+                    });
+                    out.writeInt(0);
+                }
+                Files.move(incompleteSnapshot, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                for (long olderGeneration : generations("snapshot")) {
+                    if (olderGeneration < snapshotGeneration) {
+                        Files.deleteIfExists(snapshot(olderGeneration));
+                    }
+                }
+                for (long olderGeneration : generations("journal")) {
+                    if (olderGeneration < snapshotGeneration) {
+                        Files.deleteIfExists(journal(olderGeneration));
+                    }
+                }
+            } catch (IOException | UncheckedIOException ex) {
+                // The previous snapshot and journal files are kept, so nothing is lost
+                LOGGER.warn("Unable to write token snapshot {}", snapshot, ex);
+            }
+            lastSnapshotMillis = (System.nanoTime() - start) / 1000000L;
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        snapshotExecutor.shutdown();
+        try {
+            snapshotExecutor.awaitTermination(30L, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        rotationLock.writeLock().lock();
+        try {
+            closeJournal();
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public long getGeneration() {
+        return generation;
+    }
+
+    @ManagedAttribute
+    public long getAppendedCount() {
+        return appendedCount.sum();
+    }
+
+    @ManagedAttribute
+    public int getJournalBytes() {
+        synchronized (appendLock) {
+            return journalPosition;
+        }
+    }
+
+    @ManagedAttribute
+    public long getLastReplayMillis() {
+        return lastReplayMillis;
+    }
+
+    @ManagedAttribute
+    public long getLastSnapshotMillis() {
+        return lastSnapshotMillis;
+    }
+
+    protected void append(byte[] entry) {
+        if (entry.length + 8 > journalCapacityBytes) {
+            throw new IllegalStateException("Journal entry of " + entry.length + " bytes exceeds the journal capacity");
+        }
+        while (true) {
+            long fullGeneration;
+            rotationLock.readLock().lock();
+            try {
+                if (journal == null) {
+                    // Closed, since the store is shutting down
+                    return;
+                }
+                synchronized (appendLock) {
+                    // Leave room for the zero length ending the journal
+                    if (journalPosition + 4 + entry.length <= journalCapacityBytes - 4) {
+                        ByteBuffer buffer = journal.duplicate();
+                        buffer.position(journalPosition + 4);
+                        buffer.put(entry);
+                        // The entry only counts once its length is written
+                        journal.putInt(journalPosition, entry.length);
+                        journalPosition += 4 + entry.length;
+                        appendedCount.increment();
+                        return;
+                    }
+                }
+                fullGeneration = generation;
+            } finally {
+                rotationLock.readLock().unlock();
+            }
+            rotateFullJournal(fullGeneration);
+        }
+    }
+
+    /**
+     * This starts a new journal file in place of a full one, unless another
+     * thread already has, and has a snapshot taken in the background. The
+     * snapshot is only taken on the calling thread once too many journal files
+     * are waiting for one, holding appends back rather than filling the disk.
+     *
+     * @param fullGeneration the generation of the full journal file
+     */
+    protected void rotateFullJournal(long fullGeneration) {
+        long pendingJournals;
+        rotationLock.writeLock().lock();
+        try {
+            if (generation != fullGeneration) {
+                return;
+            }
+            rotate();
+            pendingJournals = generation - lastSnapshotGeneration;
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+        if (pendingJournals > MAXIMUM_PENDING_JOURNALS) {
+            snapshot();
+        } else if (snapshotQueued.compareAndSet(false, true)) {
+            snapshotExecutor.execute(() -> {
+                snapshotQueued.set(false);
+                try {
+                    snapshot();
+                } catch (RuntimeException ex) {
+                    LOGGER.warn("Unable to take token snapshot", ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * This starts the journal file of the next generation, under the write
+     * lock of {@link #rotationLock}.
+     *
+     * @return the new generation
+     */
+    protected long rotate() {
+        long nextGeneration = generation + 1;
+        try {
+            closeJournal();
+            openJournal(nextGeneration);
+            generation = nextGeneration;
+            return nextGeneration;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to start journal " + nextGeneration, ex);
+        }
+    }
+
+    protected void openJournal(long journalGeneration) throws IOException {
+        journalChannel = FileChannel.open(journal(journalGeneration), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journal = journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, journalCapacityBytes);
+        journalPosition = 0;
+    }
+
+    /**
+     * This closes the current journal file and releases its mapping right
+     * away, instead of leaving one mapping per rotated journal to the garbage
+     * collector. Appends hold the read lock of {@link #rotationLock}, so none
+     * is using the buffer by then.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    protected void closeJournal() throws IOException {
+        if (journalChannel != null) {
+            journal.force();
+            journalChannel.close();
+            journalChannel = null;
+            MappedBuffers.unmap(journal);
+            journal = null;
+        }
+    }
+
+    protected long replaySnapshot(Path snapshot, long now) throws IOException {
+        long entries = 0L;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            for (int length = in.readInt(); length > 0; length = in.readInt()) {
+                byte[] entry = new byte[length];
+                in.readFully(entry);
+                apply(entry, now);
+                entries++;
+            }
+        } catch (EOFException ex) {
+            LOGGER.warn("Token snapshot {} ends early", snapshot);
+        }
+        return entries;
+    }
+
+    protected long replayJournal(Path journalFile, long now) throws IOException {
+        long entries = 0L;
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                while (buffer.remaining() >= 4) {
+                    int length = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    byte[] entry = new byte[length];
+                    buffer.get(entry);
+                    apply(entry, now);
+                    entries++;
+                }
+            } finally {
+                MappedBuffers.unmap(buffer);
+            }
+        }
+        return entries;
+    }
+
+    protected void apply(byte[] entry, long now) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+        byte type = in.readByte();
+        switch (type) {
+            case ACCESS_TOKEN_STORED: {
+                OAuth2AccessToken accessToken = OAuth2TokenCodec.readAccessToken(in);
+                byte[] serializedOAuth2Authentication = OAuth2TokenCodec.readBytes(in);
+                if (!isExpired(accessToken, now)) {
+                    tokenStore.storeAccessToken(accessToken, authenticationCodec.decode(serializedOAuth2Authentication));
+                }
+                break;
+            }
+            case ACCESS_TOKEN_REMOVED:
+                tokenStore.removeAccessToken(new DefaultOAuth2AccessToken(in.readUTF()));
+                break;
+            case REFRESH_TOKEN_STORED: {
+                OAuth2RefreshToken refreshToken = OAuth2TokenCodec.readRefreshToken(in);
+                byte[] serializedOAuth2Authentication = OAuth2TokenCodec.readBytes(in);
+                if (!isExpired(refreshToken, now)) {
+                    tokenStore.storeRefreshToken(refreshToken, authenticationCodec.decode(serializedOAuth2Authentication));
+                }
+                break;
+            }
+            case REFRESH_TOKEN_REMOVED:
+                tokenStore.removeRefreshToken(new DefaultOAuth2RefreshToken(in.readUTF()));
+                break;
+            default:
+                throw new IOException("Unknown journal entry type " + type);
+        }
+    }
+
+    protected void writeAccessToken(DataOutputStream out, OAuth2AccessToken token,
+            OAuth2Authentication authentication) throws IOException {
+        OAuth2TokenCodec.writeAccessToken(out, token);
+        OAuth2TokenCodec.writeBytes(out, authenticationCodec.encode(authentication));
+    }
+
+    protected void writeRefreshToken(DataOutputStream out, OAuth2RefreshToken refreshToken,
+            OAuth2Authentication authentication) throws IOException {
+        OAuth2TokenCodec.writeRefreshToken(out, refreshToken);
+        OAuth2TokenCodec.writeBytes(out, authenticationCodec.encode(authentication));
+    }
+
+    protected List<Long> generations(String kind) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> FILE_NAME.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .filter(matcher -> matcher.group(1).equals(kind))
+                    .map(matcher -> Long.valueOf(matcher.group(2)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    protected Path journal(long journalGeneration) {
+        return directory.resolve("journal-" + journalGeneration + ".log");
+    }
+
+    protected Path snapshot(long snapshotGeneration) {
+        return directory.resolve("snapshot-" + snapshotGeneration + ".dat");
+    }
+
+    protected static byte[] entry(EntryWriter writer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writer.write(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    protected static void writeSnapshotEntry(DataOutputStream out, byte[] entry) {
+        try {
+            out.writeInt(entry.length);
+            out.write(entry);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    protected static boolean isExpired(OAuth2AccessToken accessToken, long now) {
+        return accessToken.getExpiration() != null && accessToken.getExpiration().getTime() <= now;
+    }
+
+    protected static boolean isExpired(OAuth2RefreshToken refreshToken, long now) {
+        long expiration = OAuth2TokenCodec.expiration(refreshToken);
+        return expiration != OAuth2TokenCodec.NO_EXPIRATION && expiration <= now;
+    }
+
+    @FunctionalInterface
+    protected interface EntryWriter {
+
+        void write(DataOutputStream out) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,37 @@
+-- Copyright 2016 Pivotal Software, Inc..
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--      http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- The pooled-lo generators keep their next ids under rows of their own, seeded past every id the
+-- legacy hi/lo rows could have handed out, so tables that outlive a restart keep unique ids
+INSERT INTO id_generator (table_name, available_id)
+SELECT 'account_user_details_pooled_lo', (COALESCE(MAX(available_id), 0) + 1) * 50 + 1 FROM id_generator WHERE table_name = 'account_user_details'
+HAVING NOT EXISTS (SELECT 1 FROM id_generator WHERE table_name = 'account_user_details_pooled_lo');
+INSERT INTO id_generator (table_name, available_id)
+SELECT 'user_granted_authority_pooled_lo', (COALESCE(MAX(available_id), 0) + 1) * 50 + 1 FROM id_generator WHERE table_name = 'user_granted_authority'
+HAVING NOT EXISTS (SELECT 1 FROM id_generator WHERE table_name = 'user_granted_authority_pooled_lo');
+INSERT INTO id_generator (table_name, available_id)
+SELECT 'account_client_details_pooled_lo', (COALESCE(MAX(available_id), 0) + 1) * 50 + 1 FROM id_generator WHERE table_name = 'account_client_details'
+HAVING NOT EXISTS (SELECT 1 FROM id_generator WHERE table_name = 'account_client_details_pooled_lo');
+INSERT INTO id_generator (table_name, available_id)
+SELECT 'application_client_granted_authority_pooled_lo', (COALESCE(MAX(available_id), 0) + 1) * 50 + 1 FROM id_generator WHERE table_name = 'application_client_granted_authority'
+HAVING NOT EXISTS (SELECT 1 FROM id_generator WHERE table_name = 'application_client_granted_authority_pooled_lo');
+INSERT INTO id_generator (table_name, available_id)
+SELECT 'application_oauth2_access_token_pooled_lo', (COALESCE(MAX(available_id), 0) + 1) * 50 + 1 FROM id_generator WHERE table_name = 'application_oauth2_access_token'
+HAVING NOT EXISTS (SELECT 1 FROM id_generator WHERE table_name = 'application_oauth2_access_token_pooled_lo');
+INSERT INTO id_generator (table_name, available_id)
+SELECT 'application_oauth2_refresh_token_pooled_lo', (COALESCE(MAX(available_id), 0) + 1) * 50 + 1 FROM id_generator WHERE table_name = 'application_oauth2_refresh_token'
+HAVING NOT EXISTS (SELECT 1 FROM id_generator WHERE table_name = 'application_oauth2_refresh_token_pooled_lo');
+INSERT INTO id_generator (table_name, available_id)
+SELECT 'scheduled_task_lease_pooled_lo', (COALESCE(MAX(available_id), 0) + 1) * 50 + 1 FROM id_generator WHERE table_name = 'scheduled_task_lease'
+HAVING NOT EXISTS (SELECT 1 FROM id_generator WHERE table_name = 'scheduled_task_lease_pooled_lo');
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class SingleFlightTest {
+
+    private static final int THREAD_COUNT = 32;
+
+    private static final int KEY_COUNT = 4;
+
+    private static final int ROUND_COUNT = 200;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executorService.shutdownNow();
+        executorService.awaitTermination(10L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void concurrentCallersOfAKeyShareOneComputation() throws Exception {
+        SingleFlight<Integer, Long> singleFlight = new SingleFlight<>(TimeUnit.MINUTES.toMillis(1L));
+        ConcurrentMap<Integer, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger maximumRunning = new AtomicInteger();
+        AtomicLong computations = new AtomicLong();
+        CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+
+        List<Future<?>> callers = new ArrayList<>();
+        for (int thread = 0; thread < THREAD_COUNT; thread++) {
+            int key = thread % KEY_COUNT;
+            callers.add(executorService.submit(() -> {
+                for (int round = 0; round < ROUND_COUNT; round++) {
+                    barrier.await(10L, TimeUnit.SECONDS);
+                    Long value = singleFlight.execute(key, () -> {
+                        AtomicInteger runningForKey = running.computeIfAbsent(key, theKey -> new AtomicInteger());
+                        maximumRunning.accumulateAndGet(runningForKey.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(1L);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                        runningForKey.decrementAndGet();
+                        return computations.incrementAndGet();
+                    });
+                    assertThat(value).isNotNull();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> caller : callers) {
+            caller.get(1L, TimeUnit.MINUTES);
+        }
+
+        assertThat(maximumRunning.get()).isEqualTo(1);
+        assertThat(singleFlight.getExecutedCount()).isEqualTo(computations.get());
+        assertThat(singleFlight.getExecutedCount() + singleFlight.getSharedCount())
+                .isEqualTo((long) THREAD_COUNT * ROUND_COUNT);
+        assertThat(singleFlight.getSharedCount()).isGreaterThan(0L);
+        assertThat(singleFlight.getTimedOutCount()).isZero();
+        assertThat(singleFlight.getInFlightCount()).isZero();
+    }
+
+    @Test
+    public void callersShareTheExceptionOfTheComputation() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(TimeUnit.MINUTES.toMillis(1L));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("failed");
+
+        Future<?> leader = executorService.submit(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            await(release);
+            throw failure;
+        }));
+        assertThat(started.await(10L, TimeUnit.SECONDS)).isTrue();
+        Future<String> follower = executorService.submit(() -> singleFlight.execute("key", () -> "own"));
+        while (singleFlight.getSharedCount() == 0L) {
+            Thread.sleep(1L);
+        }
+        release.countDown();
+
+        for (Future<?> caller : new Future<?>[]{leader, follower}) {
+            try {
+                caller.get(10L, TimeUnit.SECONDS);
+                fail("Expected the failure of the computation");
+            } catch (ExecutionException ex) {
+                assertThat(ex.getCause()).isSameAs(failure);
+            }
+        }
+    }
+
+    @Test
+    public void callersStuckPastTheWaitTimeoutRunTheirOwnComputation() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(50L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executorService.submit(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            await(release);
+            return "leader";
+        }));
+        assertThat(started.await(10L, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(singleFlight.execute("key", () -> "follower")).isEqualTo("follower");
+        assertThat(singleFlight.getTimedOutCount()).isEqualTo(1L);
+
+        release.countDown();
+        assertThat(leader.get(10L, TimeUnit.SECONDS)).isEqualTo("leader");
+        assertThat(singleFlight.getInFlightCount()).isZero();
+    }
+
+    @Test
+    public void callersStuckPastTheWaitTimeoutRunTheTimedOutComputation() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(50L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger followerComputations = new AtomicInteger();
+
+        Future<String> leader = executorService.submit(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            await(release);
+            return "leader";
+        }));
+        assertThat(started.await(10L, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(singleFlight.execute("key", () -> "follower" + followerComputations.incrementAndGet(),
+                () -> "timed out")).isEqualTo("timed out");
+        assertThat(followerComputations.get()).isZero();
+        assertThat(singleFlight.getTimedOutCount()).isEqualTo(1L);
+
+        release.countDown();
+        assertThat(leader.get(10L, TimeUnit.SECONDS)).isEqualTo("leader");
+        assertThat(singleFlight.getInFlightCount()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10L, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
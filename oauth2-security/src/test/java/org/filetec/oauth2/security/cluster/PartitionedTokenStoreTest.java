@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.filetec.oauth2.security.codec.CompactOAuth2AuthenticationCodec;
+import org.filetec.oauth2.security.registry.GrantedAuthorityRegistry;
+import org.filetec.oauth2.security.service.ApplicationAuthenticationKeyGenerator;
+import org.filetec.oauth2.security.service.TokenHasher;
+import org.filetec.oauth2.security.service.TokenValueGenerator;
+import org.filetec.oauth2.security.store.ShardedInMemoryTokenStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author warren.nocos
+ */
+public class PartitionedTokenStoreTest {
+
+    private static final int TOKEN_COUNT = 200;
+
+    private static final int REPLICA_COUNT = 2;
+
+    private final Map<String, PartitionedTokenStore> reachableNodes = new ConcurrentHashMap<>();
+
+    private final GrantedAuthorityRegistry grantedAuthorityRegistry = new GrantedAuthorityRegistry();
+
+    private final AuthenticationKeyGenerator authenticationKeyGenerator
+            = new ApplicationAuthenticationKeyGenerator(new TokenHasher("SHA-256"));
+
+    private final TokenValueGenerator tokenValueGenerator = new TokenValueGenerator();
+
+    private List<OAuth2AccessToken> accessTokens;
+
+    @Before
+    public void setUp() {
+        accessTokens = new ArrayList<>();
+    }
+
+    @Test
+    public void tokensStoredOnOneNodeAreReadFromEveryNode() {
+        List<PartitionedTokenStore> nodes = startNodes("a", "b", "c");
+
+        storeTokens(nodes.get(0));
+
+        for (OAuth2AccessToken accessToken : accessTokens) {
+            for (PartitionedTokenStore node : nodes) {
+                assertThat(node.readAccessToken(accessToken.getValue()).getRefreshToken().getValue())
+                        .isEqualTo(accessToken.getRefreshToken().getValue());
+                assertThat(node.readAuthentication(accessToken.getValue()).getName())
+                        .isEqualTo(userName(accessToken));
+            }
+            assertHeldByOwners(nodes.get(0), accessToken);
+        }
+        assertThat(nodes.get(0).getForwardedRequestCount()).isPositive();
+        assertThat(nodes.get(0).getFailedRequestCount()).isZero();
+    }
+
+    @Test
+    public void tokensRemovedOnOneNodeAreRemovedFromEveryOwner() {
+        List<PartitionedTokenStore> nodes = startNodes("a", "b", "c");
+        storeTokens(nodes.get(0));
+
+        accessTokens.forEach(nodes.get(2)::removeAccessToken);
+
+        for (OAuth2AccessToken accessToken : accessTokens) {
+            for (PartitionedTokenStore node : nodes) {
+                assertThat(node.readAccessToken(accessToken.getValue())).isNull();
+                assertThat(node.getLocalTokenStore().readAccessToken(accessToken.getValue())).isNull();
+            }
+        }
+    }
+
+    @Test
+    public void tokensAreHandedOffToANodeThatJoins() {
+        List<PartitionedTokenStore> nodes = startNodes("a", "b");
+        storeTokens(nodes.get(0));
+
+        PartitionedTokenStore joiningNode = startNode("c");
+        List<String> members = Arrays.asList("a", "b", "c");
+        joiningNode.setNodes(members);
+        nodes.forEach(node -> node.setNodes(members));
+
+        assertThat(joiningNode.getLocalAccessTokenCount()).isPositive();
+        assertThat(nodes.get(0).getHandedOffTokenCount() + nodes.get(1).getHandedOffTokenCount()).isPositive();
+        for (OAuth2AccessToken accessToken : accessTokens) {
+            assertHeldByOwners(joiningNode, accessToken);
+            assertThat(joiningNode.readAuthentication(accessToken.getValue()).getName())
+                    .isEqualTo(userName(accessToken));
+        }
+        // Nodes no longer holding a token have dropped it
+        for (OAuth2AccessToken accessToken : accessTokens) {
+            Set<String> holders = holders(joiningNode, accessToken);
+            for (PartitionedTokenStore node : Arrays.asList(nodes.get(0), nodes.get(1), joiningNode)) {
+                assertThat(node.getLocalTokenStore().readAccessToken(accessToken.getValue()) != null)
+                        .isEqualTo(holders.contains(node.getLocalNode()));
+            }
+        }
+    }
+
+    @Test
+    public void tokensOfANodeThatLeavesAreHandedOffByTheirOtherOwner() {
+        List<PartitionedTokenStore> nodes = startNodes("a", "b", "c");
+        storeTokens(nodes.get(0));
+
+        reachableNodes.remove("c");
+        List<String> members = Arrays.asList("a", "b");
+        nodes.get(0).setNodes(members);
+        nodes.get(1).setNodes(members);
+
+        for (OAuth2AccessToken accessToken : accessTokens) {
+            // Two owners on two nodes, each holds every token
+            assertThat(nodes.get(0).getLocalTokenStore().readAccessToken(accessToken.getValue())).isNotNull();
+            assertThat(nodes.get(1).getLocalTokenStore().readAccessToken(accessToken.getValue())).isNotNull();
+            assertThat(nodes.get(1).readAuthentication(accessToken.getValue()).getName())
+                    .isEqualTo(userName(accessToken));
+        }
+    }
+
+    @Test
+    public void readsFallBackToAnotherOwnerWhileANodeIsUnreachable() {
+        List<PartitionedTokenStore> nodes = startNodes("a", "b", "c");
+        storeTokens(nodes.get(0));
+
+        reachableNodes.remove("c");
+
+        for (OAuth2AccessToken accessToken : accessTokens) {
+            assertThat(nodes.get(0).readAccessToken(accessToken.getValue())).isNotNull();
+        }
+    }
+
+    private List<PartitionedTokenStore> startNodes(String... names) {
+        List<PartitionedTokenStore> nodes = new ArrayList<>();
+        for (String name : names) {
+            nodes.add(startNode(name));
+        }
+        nodes.forEach(node -> node.setNodes(Arrays.asList(names)));
+        return nodes;
+    }
+
+    /**
+     * @param name the name of the node on the ring
+     * @return a node reached by the others in process, for as long as it is
+     * in {@link #reachableNodes}
+     */
+    private PartitionedTokenStore startNode(String name) {
+        ShardedInMemoryTokenStore localTokenStore = new ShardedInMemoryTokenStore(authenticationKeyGenerator, 4, 1000L);
+        localTokenStore.setGrantedAuthorityRegistry(grantedAuthorityRegistry);
+        PartitionedTokenStore node = new PartitionedTokenStore(localTokenStore, authenticationKeyGenerator,
+                new CompactOAuth2AuthenticationCodec(grantedAuthorityRegistry),
+                (otherNode, request) -> {
+                    PartitionedTokenStore reachableNode = reachableNodes.get(otherNode);
+                    if (reachableNode == null) {
+                        throw new IOException(otherNode + " is unreachable");
+                    }
+                    return reachableNode.handle(request);
+                },
+                name, REPLICA_COUNT, 64);
+        reachableNodes.put(name, node);
+        return node;
+    }
+
+    private void storeTokens(PartitionedTokenStore node) {
+        for (int index = 0; index < TOKEN_COUNT; index++) {
+            DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(tokenValueGenerator.generate());
+            accessToken.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1L)));
+            accessToken.setScope(new HashSet<>(Arrays.asList("read", "write")));
+            accessToken.setRefreshToken(new DefaultExpiringOAuth2RefreshToken(tokenValueGenerator.generate(),
+                    new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1L))));
+            accessToken.setAdditionalInformation(Collections.singletonMap("user_name", "user" + index));
+            node.storeAccessToken(accessToken, newAuthentication("user" + index));
+            accessTokens.add(accessToken);
+        }
+    }
+
+    private void assertHeldByOwners(PartitionedTokenStore node, OAuth2AccessToken accessToken) {
+        Set<String> owners = new HashSet<>(node.owners(accessToken.getValue()));
+        assertThat(owners).hasSize(REPLICA_COUNT);
+        for (String owner : owners) {
+            assertThat(reachableNodes.get(owner).getLocalTokenStore().readAccessToken(accessToken.getValue()))
+                    .isNotNull();
+        }
+    }
+
+    private Set<String> holders(PartitionedTokenStore node, OAuth2AccessToken accessToken) {
+        Set<String> holders = new HashSet<>(node.owners(accessToken.getValue()));
+        holders.addAll(node.owners(authenticationKeyGenerator.extractKey(newAuthentication(userName(accessToken)))));
+        holders.addAll(node.owners(accessToken.getRefreshToken().getValue()));
+        return holders;
+    }
+
+    private static String userName(OAuth2AccessToken accessToken) {
+        return (String) accessToken.getAdditionalInformation().get("user_name");
+    }
+
+    private static OAuth2Authentication newAuthentication(String username) {
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "web",
+                AuthorityUtils.createAuthorityList("ROLE_CLIENT"), true, new HashSet<>(Arrays.asList("read", "write")),
+                Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+        return new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken(username, null,
+                AuthorityUtils.createAuthorityList("ROLE_USER")));
+    }
+
+}
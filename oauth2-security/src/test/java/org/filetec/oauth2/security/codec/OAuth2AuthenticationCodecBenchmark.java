@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.codec;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.filetec.oauth2.security.registry.GrantedAuthorityRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OAuth2AuthenticationCodecBenchmark {
+
+    @Param({"compact", "java"})
+    private String codec;
+
+    private OAuth2AuthenticationCodec authenticationCodec;
+
+    private OAuth2Authentication authentication;
+
+    private byte[] encodedBytes;
+
+    /**
+     * This reports the encoded size of the authentication next to the times,
+     * as the {@code encodedBytes} secondary result of {@link #encode}.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+
+        public long encodedBytes;
+
+    }
+
+    @Setup
+    public void setUp() {
+        authenticationCodec = "compact".equals(codec)
+                ? new CompactOAuth2AuthenticationCodec(new GrantedAuthorityRegistry())
+                : new JavaSerializationOAuth2AuthenticationCodec();
+        List<GrantedAuthority> clientAuthorities = Arrays.asList(
+                new SimpleGrantedAuthority("ROLE_CLIENT"), new SimpleGrantedAuthority("ROLE_TRUSTED_CLIENT"));
+        List<GrantedAuthority> userAuthorities = Arrays.asList(
+                new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_FILE_OWNER"));
+        Map<String, String> requestParameters = new HashMap<>();
+        requestParameters.put("grant_type", "password");
+        requestParameters.put("username", "warren.nocos");
+        requestParameters.put("scope", "read write");
+        requestParameters.put("client_id", "web");
+        OAuth2Request request = new OAuth2Request(requestParameters, "web", clientAuthorities, true,
+                new HashSet<>(Arrays.asList("read", "write")), new HashSet<>(Arrays.asList("account", "file")),
+                null, Collections.emptySet(), Collections.emptyMap());
+        // As the password grant authenticates a user, with the request parameters as details
+        UsernamePasswordAuthenticationToken userAuthentication = new UsernamePasswordAuthenticationToken(
+                new User("warren.nocos", "", userAuthorities), null, userAuthorities);
+        userAuthentication.setDetails(new LinkedHashMap<>(requestParameters));
+        authentication = new OAuth2Authentication(request, userAuthentication);
+        encodedBytes = authenticationCodec.encode(authentication);
+    }
+
+    @Benchmark
+    public byte[] encode(EncodedSize encodedSize) {
+        byte[] bytes = authenticationCodec.encode(authentication);
+        encodedSize.encodedBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public OAuth2Authentication decode() {
+        return authenticationCodec.decode(encodedBytes);
+    }
+
+}
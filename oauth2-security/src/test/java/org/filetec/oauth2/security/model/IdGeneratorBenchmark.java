@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.model;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.MappedSuperclass;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import org.filetec.oauth2.security.service.TokenValueGenerator;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Param({"legacy", "row", "pooled-lo"})
+    public String idAllocation;
+
+    private SessionFactory sessionFactory;
+
+    private TokenValueGenerator tokenValueGenerator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DRIVER, "org.h2.Driver")
+                .applySetting(AvailableSettings.URL, "jdbc:h2:mem:" + idAllocation + ";DB_CLOSE_DELAY=-1")
+                .applySetting(AvailableSettings.USER, "sa")
+                // Generators take a connection of their own, besides the one of the insert
+                .applySetting(AvailableSettings.POOL_SIZE, String.valueOf(Runtime.getRuntime().availableProcessors() * 2 + 2))
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .applySetting(AvailableSettings.USE_NEW_ID_GENERATOR_MAPPINGS, String.valueOf(!"legacy".equals(idAllocation)))
+                .applySetting(AvailableSettings.PREFERRED_POOLED_OPTIMIZER, "pooled-lo")
+                .build();
+        sessionFactory = new MetadataSources(serviceRegistry)
+                .addAnnotatedClass(tokenClass())
+                .buildMetadata()
+                .buildSessionFactory();
+        tokenValueGenerator = new TokenValueGenerator();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Object insertToken() throws ReflectiveOperationException {
+        Token token = tokenClass().newInstance();
+        token.value = tokenValueGenerator.generate();
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.persist(token);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+        return token.getId();
+    }
+
+    protected Class<? extends Token> tokenClass() {
+        switch (idAllocation) {
+            case "legacy":
+                return LegacyAllocatedToken.class;
+            case "row":
+                return RowAllocatedToken.class;
+            default:
+                return PooledLoAllocatedToken.class;
+        }
+    }
+
+    @MappedSuperclass
+    public abstract static class Token {
+
+        @Column(name = "value",
+                nullable = false,
+                unique = true)
+        protected String value;
+
+        public abstract BigInteger getId();
+
+    }
+
+    @Entity
+    @Table(name = "legacy_allocated_token")
+    public static class LegacyAllocatedToken extends Token {
+
+        @Id
+        @TableGenerator(initialValue = 1,
+                name = "legacy_allocated_token_id_generator",
+                pkColumnName = "table_name",
+                pkColumnValue = "legacy_allocated_token",
+                table = "id_generator",
+                valueColumnName = "available_id")
+        @GeneratedValue(generator = "legacy_allocated_token_id_generator",
+                strategy = GenerationType.TABLE)
+        protected BigInteger id;
+
+        @Override
+        public BigInteger getId() {
+            return id;
+        }
+
+    }
+
+    @Entity
+    @Table(name = "row_allocated_token")
+    public static class RowAllocatedToken extends Token {
+
+        @Id
+        @TableGenerator(allocationSize = 1,
+                initialValue = 1,
+                name = "row_allocated_token_id_generator",
+                pkColumnName = "table_name",
+                pkColumnValue = "row_allocated_token",
+                table = "id_generator",
+                valueColumnName = "available_id")
+        @GeneratedValue(generator = "row_allocated_token_id_generator",
+                strategy = GenerationType.TABLE)
+        protected BigInteger id;
+
+        @Override
+        public BigInteger getId() {
+            return id;
+        }
+
+    }
+
+    @Entity
+    @Table(name = "pooled_lo_allocated_token")
+    public static class PooledLoAllocatedToken extends Token {
+
+        @Id
+        @TableGenerator(allocationSize = 1000,
+                initialValue = 1,
+                name = "pooled_lo_allocated_token_id_generator",
+                pkColumnName = "table_name",
+                pkColumnValue = "pooled_lo_allocated_token",
+                table = "id_generator",
+                valueColumnName = "available_id")
+        @GeneratedValue(generator = "pooled_lo_allocated_token_id_generator",
+                strategy = GenerationType.TABLE)
+        protected BigInteger id;
+
+        @Override
+        public BigInteger getId() {
+            return id;
+        }
+
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.repository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.filetec.oauth2.security.model.ApplicationClientDetails;
+import org.filetec.oauth2.security.model.ApplicationClientGrantedAuthority;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class ApplicationClientDetailsRepositoryImplTest {
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private ApplicationClientDetailsRepository applicationClientDetailsRepository;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = testEntityManager.getEntityManager()
+                .getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    public void lookupReadsEveryCollectionInTwoStatements() {
+        ApplicationClientDetails applicationClientDetails = newApplicationClientDetails("web");
+        applicationClientDetails.setScope(setOf("read", "write", "trust"));
+        applicationClientDetails.setResourceIds(setOf("account", "file"));
+        applicationClientDetails.setAuthorizedGrantTypes(setOf("password", "refresh_token", "authorization_code"));
+        applicationClientDetails.setRegisteredRedirectUri(setOf("https://web.filetec.org/callback"));
+        applicationClientDetails.setAutoApproveScopes(setOf("read"));
+        applicationClientDetails.setAuthorities(Arrays.asList(
+                persistAuthority("ROLE_CLIENT"), persistAuthority("ROLE_TRUSTED_CLIENT")));
+        applicationClientDetails.setAccessTokenValiditySeconds(3600);
+        applicationClientDetails.setRefreshTokenValiditySeconds(86400);
+        applicationClientDetails.setScoped(true);
+        applicationClientDetails.setSecretRequired(true);
+        testEntityManager.persist(applicationClientDetails);
+        testEntityManager.flush();
+        testEntityManager.clear();
+        statistics.clear();
+
+        Optional<ClientDetails> clientDetails = applicationClientDetailsRepository.findClientDetailsByClientId("web");
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2L);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+        assertThat(clientDetails.isPresent()).isTrue();
+        ClientDetails loadedClientDetails = clientDetails.get();
+        assertThat(loadedClientDetails.getClientId()).isEqualTo("web");
+        assertThat(loadedClientDetails.getClientSecret()).isEqualTo("secret");
+        assertThat(loadedClientDetails.getScope()).isEqualTo(setOf("read", "write", "trust"));
+        assertThat(loadedClientDetails.getResourceIds()).isEqualTo(setOf("account", "file"));
+        assertThat(loadedClientDetails.getAuthorizedGrantTypes())
+                .isEqualTo(setOf("password", "refresh_token", "authorization_code"));
+        assertThat(loadedClientDetails.getRegisteredRedirectUri()).isEqualTo(setOf("https://web.filetec.org/callback"));
+        assertThat(loadedClientDetails.isAutoApprove("read")).isTrue();
+        assertThat(loadedClientDetails.isAutoApprove("write")).isFalse();
+        assertThat(loadedClientDetails.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toSet()))
+                .isEqualTo(setOf("ROLE_CLIENT", "ROLE_TRUSTED_CLIENT"));
+        assertThat(loadedClientDetails.getAccessTokenValiditySeconds()).isEqualTo(3600);
+        assertThat(loadedClientDetails.getRefreshTokenValiditySeconds()).isEqualTo(86400);
+        assertThat(loadedClientDetails.isScoped()).isTrue();
+        assertThat(loadedClientDetails.isSecretRequired()).isTrue();
+    }
+
+    @Test
+    public void lookupOfAClientWithoutCollectionsReadsTwoStatements() {
+        testEntityManager.persist(newApplicationClientDetails("service"));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        statistics.clear();
+
+        Optional<ClientDetails> clientDetails = applicationClientDetailsRepository.findClientDetailsByClientId("service");
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2L);
+        assertThat(clientDetails.isPresent()).isTrue();
+        assertThat(clientDetails.get().getScope()).isEmpty();
+        assertThat(clientDetails.get().getAuthorities()).isEmpty();
+    }
+
+    @Test
+    public void lookupOfAnUnknownClientReadsOneStatement() {
+        statistics.clear();
+
+        Optional<ClientDetails> clientDetails = applicationClientDetailsRepository.findClientDetailsByClientId("unknown");
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1L);
+        assertThat(clientDetails.isPresent()).isFalse();
+    }
+
+    private ApplicationClientDetails newApplicationClientDetails(String clientId) {
+        ApplicationClientDetails applicationClientDetails = new ApplicationClientDetails();
+        applicationClientDetails.setClientId(clientId);
+        applicationClientDetails.setClientSecret("secret");
+        applicationClientDetails.setRegisteredRedirectUri(Collections.emptySet());
+        applicationClientDetails.setAutoApproveScopes(Collections.emptySet());
+        applicationClientDetails.setCreator("test");
+        applicationClientDetails.setCreatedDate(new Date());
+        applicationClientDetails.setLastModifiedDate(new Date());
+        return applicationClientDetails;
+    }
+
+    private ApplicationClientGrantedAuthority persistAuthority(String authority) {
+        ApplicationClientGrantedAuthority applicationClientGrantedAuthority
+                = new ApplicationClientGrantedAuthority(authority);
+        applicationClientGrantedAuthority.setCreator("test");
+        applicationClientGrantedAuthority.setCreatedDate(new Date());
+        applicationClientGrantedAuthority.setLastModifiedDate(new Date());
+        return testEntityManager.persist(applicationClientGrantedAuthority);
+    }
+
+    private static Set<String> setOf(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+}
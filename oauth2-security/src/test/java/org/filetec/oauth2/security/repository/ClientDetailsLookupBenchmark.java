@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.repository;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.filetec.oauth2.security.model.ApplicationClientDetails;
+import org.filetec.oauth2.security.model.ApplicationClientGrantedAuthority;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientDetailsLookupBenchmark {
+
+    private static final String CLIENT_ID = "web";
+
+    @Param({"two-queries", "entity"})
+    public String lookup;
+
+    private EmbeddedDatabase database;
+
+    private EntityManagerFactory entityManagerFactory;
+
+    private EntityManager entityManager;
+
+    private ApplicationClientDetailsRepositoryImpl applicationClientDetailsRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        LocalContainerEntityManagerFactoryBean entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactoryBean.setDataSource(database);
+        entityManagerFactoryBean.setPackagesToScan(ApplicationClientDetails.class.getPackage().getName());
+        entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactoryBean.getJpaPropertyMap().put("hibernate.hbm2ddl.auto", "create-drop");
+        entityManagerFactoryBean.getJpaPropertyMap().put("hibernate.id.new_generator_mappings", "true");
+        entityManagerFactoryBean.afterPropertiesSet();
+        entityManagerFactory = entityManagerFactoryBean.getObject();
+        entityManager = entityManagerFactory.createEntityManager();
+        entityManager.getTransaction().begin();
+        ApplicationClientDetails applicationClientDetails = new ApplicationClientDetails();
+        applicationClientDetails.setClientId(CLIENT_ID);
+        applicationClientDetails.setClientSecret("secret");
+        applicationClientDetails.setScope(setOf("read", "write", "trust"));
+        applicationClientDetails.setResourceIds(setOf("account", "file"));
+        applicationClientDetails.setAuthorizedGrantTypes(setOf("password", "refresh_token", "authorization_code"));
+        applicationClientDetails.setRegisteredRedirectUri(setOf("https://web.filetec.org/callback"));
+        applicationClientDetails.setAutoApproveScopes(setOf("read"));
+        applicationClientDetails.setAuthorities(Arrays.asList(
+                persistAuthority("ROLE_CLIENT"), persistAuthority("ROLE_TRUSTED_CLIENT")));
+        applicationClientDetails.setAccessTokenValiditySeconds(3600);
+        applicationClientDetails.setRefreshTokenValiditySeconds(86400);
+        applicationClientDetails.setCreator("benchmark");
+        applicationClientDetails.setCreatedDate(new Date());
+        applicationClientDetails.setLastModifiedDate(new Date());
+        entityManager.persist(applicationClientDetails);
+        entityManager.getTransaction().commit();
+        entityManager.clear();
+        applicationClientDetailsRepository = new ApplicationClientDetailsRepositoryImpl();
+        applicationClientDetailsRepository.entityManager = entityManager;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManager.close();
+        entityManagerFactory.close();
+        database.shutdown();
+    }
+
+    /**
+     * Each lookup starts from an empty persistence context, as a request of
+     * its own would, so both read every row from the database.
+     */
+    @Benchmark
+    public Object findClientDetailsByClientId() {
+        entityManager.clear();
+        if ("entity".equals(lookup)) {
+            return entityManager
+                    .createQuery("SELECT c FROM ApplicationClientDetails c WHERE c.clientId = :clientId",
+                            ApplicationClientDetails.class)
+                    .setParameter("clientId", CLIENT_ID)
+                    .getSingleResult();
+        }
+        return applicationClientDetailsRepository.findClientDetailsByClientId(CLIENT_ID).get();
+    }
+
+    private ApplicationClientGrantedAuthority persistAuthority(String authority) {
+        ApplicationClientGrantedAuthority applicationClientGrantedAuthority
+                = new ApplicationClientGrantedAuthority(authority);
+        applicationClientGrantedAuthority.setCreator("benchmark");
+        applicationClientGrantedAuthority.setCreatedDate(new Date());
+        applicationClientGrantedAuthority.setLastModifiedDate(new Date());
+        entityManager.persist(applicationClientGrantedAuthority);
+        return applicationClientGrantedAuthority;
+    }
+
+    private static Set<String> setOf(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+}
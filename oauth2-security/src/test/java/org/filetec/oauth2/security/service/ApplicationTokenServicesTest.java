@@ -0,0 +1,290 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.filetec.oauth2.security.cache.ExpiringCache;
+import org.filetec.oauth2.security.cache.SingleFlight;
+import org.filetec.oauth2.security.codec.CompactOAuth2AuthenticationCodec;
+import org.filetec.oauth2.security.registry.GrantedAuthorityRegistry;
+import org.filetec.oauth2.security.registry.ScopeDictionary;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2AccessTokenRepository;
+import org.filetec.oauth2.security.repository.ApplicationOAuth2RefreshTokenRepository;
+import org.filetec.oauth2.security.store.ShardedInMemoryTokenStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import({GrantedAuthorityRegistry.class, ScopeDictionary.class, AccessTokenScopeListener.class, TokenHasher.class,
+    ApplicationAuthenticationKeyGenerator.class, TokenValueGenerator.class, AuthenticationWriteBehind.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ApplicationTokenServicesTest {
+
+    private static final int THREAD_COUNT = 16;
+
+    @Autowired
+    private ApplicationOAuth2AccessTokenRepository applicationOAuth2AccessTokenRepository;
+
+    @Autowired
+    private ApplicationOAuth2RefreshTokenRepository applicationOAuth2RefreshTokenRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    @Autowired
+    private ScopeDictionary scopeDictionary;
+
+    @Autowired
+    private TokenHasher tokenHasher;
+
+    @Autowired
+    private ApplicationAuthenticationKeyGenerator authenticationKeyGenerator;
+
+    @Autowired
+    private TokenValueGenerator tokenValueGenerator;
+
+    @Autowired
+    private AuthenticationWriteBehind authenticationWriteBehind;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executorService.shutdownNow();
+        executorService.awaitTermination(10L, TimeUnit.SECONDS);
+        applicationOAuth2AccessTokenRepository.deleteAllInBatch();
+        applicationOAuth2RefreshTokenRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void concurrentRequestsOnANodeShareOneAccessToken() throws Exception {
+        ApplicationTokenServices node = newNode(TimeUnit.MINUTES.toMillis(1L), null, null);
+        CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+
+        List<Future<OAuth2AccessToken>> callers = new ArrayList<>();
+        for (int thread = 0; thread < THREAD_COUNT; thread++) {
+            callers.add(executorService.submit(() -> {
+                barrier.await(10L, TimeUnit.SECONDS);
+                return node.createAccessToken(newAuthentication("warren.nocos"));
+            }));
+        }
+        Set<String> values = new HashSet<>();
+        for (Future<OAuth2AccessToken> caller : callers) {
+            values.add(caller.get(1L, TimeUnit.MINUTES).getValue());
+        }
+
+        assertThat(values).hasSize(1);
+        assertThat(applicationOAuth2AccessTokenRepository.count()).isEqualTo(1L);
+    }
+
+    @Test
+    public void aNodeLosingTheInsertRaceReusesTheAccessTokenOfTheWinner() throws Exception {
+        CountDownLatch loserRead = new CountDownLatch(1);
+        CountDownLatch winnerCommitted = new CountDownLatch(1);
+        ApplicationTokenServices loser = newNode(TimeUnit.MINUTES.toMillis(1L), loserRead, winnerCommitted);
+        ApplicationTokenServices winner = newNode(TimeUnit.MINUTES.toMillis(1L), null, null);
+
+        // The loser has found no access token, and inserts one only once the winner has committed its own
+        Future<OAuth2AccessToken> loserCaller = executorService.submit(()
+                -> loser.createAccessToken(newAuthentication("warren.nocos")));
+        assertThat(loserRead.await(10L, TimeUnit.SECONDS)).isTrue();
+        OAuth2AccessToken winnerAccessToken = winner.createAccessToken(newAuthentication("warren.nocos"));
+        winnerCommitted.countDown();
+
+        assertThat(loserCaller.get(1L, TimeUnit.MINUTES).getValue()).isEqualTo(winnerAccessToken.getValue());
+        assertThat(applicationOAuth2AccessTokenRepository.count()).isEqualTo(1L);
+        assertThat(applicationOAuth2RefreshTokenRepository.count()).isEqualTo(1L);
+    }
+
+    @Test
+    public void requestsWaitingPastTheTimeoutDoNotIssueAnotherAccessToken() throws Exception {
+        CountDownLatch leaderRead = new CountDownLatch(1);
+        CountDownLatch leaderRelease = new CountDownLatch(1);
+        ApplicationTokenServices node = newNode(50L, leaderRead, leaderRelease);
+
+        Future<OAuth2AccessToken> leader = executorService.submit(()
+                -> node.createAccessToken(newAuthentication("warren.nocos")));
+        assertThat(leaderRead.await(10L, TimeUnit.SECONDS)).isTrue();
+        try {
+            node.createAccessToken(newAuthentication("warren.nocos"));
+            fail("Expected the access token to be unavailable while it is being issued");
+        } catch (AccessTokenUnavailableException ex) {
+            assertThat(applicationOAuth2AccessTokenRepository.count()).isZero();
+        }
+        leaderRelease.countDown();
+        OAuth2AccessToken leaderAccessToken = leader.get(1L, TimeUnit.MINUTES);
+
+        // Once committed, it is what waiting requests read
+        assertThat(node.readIssuedAccessToken(newAuthentication("warren.nocos"),
+                authenticationKeyGenerator.extractKey(newAuthentication("warren.nocos"))).getValue())
+                .isEqualTo(leaderAccessToken.getValue());
+        assertThat(applicationOAuth2AccessTokenRepository.count()).isEqualTo(1L);
+    }
+
+    @Test
+    public void issuedAccessTokensAreServedFromTheTokenStore() {
+        TokenStore tokenStore = newTokenStore();
+        ApplicationTokenServices node = newNode(TimeUnit.MINUTES.toMillis(1L), null, null, tokenStore);
+
+        OAuth2AccessToken accessToken = node.createAccessToken(newAuthentication("warren.nocos"));
+
+        assertThat(tokenStore.readAccessToken(accessToken.getValue()).getRefreshToken().getValue())
+                .isEqualTo(accessToken.getRefreshToken().getValue());
+        // The stored authentication itself is served, not one decoded from the database
+        assertThat(node.loadAuthentication(accessToken.getValue()).getOAuth2Request())
+                .isSameAs(tokenStore.readAuthentication(accessToken.getValue()).getOAuth2Request());
+        assertThat(node.readAccessToken(accessToken.getValue())).isSameAs(tokenStore.readAccessToken(accessToken.getValue()));
+    }
+
+    @Test
+    public void revokedAccessTokensAreRemovedFromTheTokenStore() {
+        TokenStore tokenStore = newTokenStore();
+        ApplicationTokenServices node = newNode(TimeUnit.MINUTES.toMillis(1L), null, null, tokenStore);
+        OAuth2AccessToken accessToken = node.createAccessToken(newAuthentication("warren.nocos"));
+
+        assertThat(node.revokeToken(accessToken.getValue())).isTrue();
+
+        assertThat(tokenStore.readAccessToken(accessToken.getValue())).isNull();
+        assertThat(node.readAccessToken(accessToken.getValue())).isNull();
+    }
+
+    @Test
+    public void accessTokensRevokedOnAnotherNodeAreNotServedFromTheTokenStore() {
+        TokenStore tokenStore = newTokenStore();
+        ApplicationTokenServices node = newNode(TimeUnit.MINUTES.toMillis(1L), null, null, tokenStore);
+        ApplicationTokenServices otherNode = newNode(TimeUnit.MINUTES.toMillis(1L), null, null);
+        OAuth2AccessToken accessToken = node.createAccessToken(newAuthentication("warren.nocos"));
+
+        assertThat(otherNode.revokeToken(accessToken.getValue())).isTrue();
+
+        try {
+            node.loadAuthentication(accessToken.getValue());
+            fail("Expected the revoked access token to be rejected");
+        } catch (InvalidTokenException ex) {
+            assertThat(tokenStore.readAccessToken(accessToken.getValue())).isNull();
+        }
+    }
+
+    private ApplicationTokenServices newNode(long waitTimeoutMillis, CountDownLatch clientDetailsLoading,
+            CountDownLatch clientDetailsRelease) {
+        return newNode(waitTimeoutMillis, clientDetailsLoading, clientDetailsRelease, newTokenStore());
+    }
+
+    /**
+     * @param waitTimeoutMillis how long requests wait for the issuing
+     * transaction of the same authentication
+     * @param clientDetailsLoading counted down when an issuing transaction,
+     * having found no access token, loads the client
+     * @param clientDetailsRelease awaited before the client is loaded
+     * @param tokenStore the token store of the node
+     * @return the token services of one node
+     */
+    private ApplicationTokenServices newNode(long waitTimeoutMillis, CountDownLatch clientDetailsLoading,
+            CountDownLatch clientDetailsRelease, TokenStore tokenStore) {
+        BaseClientDetails clientDetails = new BaseClientDetails("web", null, "read,write", "password,refresh_token",
+                "ROLE_CLIENT");
+        return new ApplicationTokenServices(applicationOAuth2AccessTokenRepository,
+                applicationOAuth2RefreshTokenRepository,
+                clientId -> {
+                    if (clientDetailsLoading != null) {
+                        clientDetailsLoading.countDown();
+                        await(clientDetailsRelease);
+                    }
+                    return clientDetails;
+                },
+                (accessToken, authentication) -> accessToken,
+                null,
+                new ExpiringCache<>(1000L, 60L),
+                new CompactOAuth2AuthenticationCodec(grantedAuthorityRegistry),
+                true,
+                tokenValueGenerator,
+                authenticationKeyGenerator,
+                tokenHasher,
+                authenticationWriteBehind,
+                new SingleFlight<>(waitTimeoutMillis),
+                transactionManager,
+                scopeDictionary,
+                tokenStore);
+    }
+
+    private TokenStore newTokenStore() {
+        return new ShardedInMemoryTokenStore(authenticationKeyGenerator, 4, 1000L);
+    }
+
+    private static OAuth2Authentication newAuthentication(String username) {
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "web",
+                AuthorityUtils.createAuthorityList("ROLE_CLIENT"), true, new HashSet<>(Arrays.asList("read", "write")),
+                Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+        return new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken(username, null,
+                AuthorityUtils.createAuthorityList("ROLE_USER")));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10L, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
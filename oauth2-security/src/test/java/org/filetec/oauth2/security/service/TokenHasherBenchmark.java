@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenHasherBenchmark {
+
+    private String tokenValue;
+
+    private TokenHasher md5TokenHasher;
+
+    private TokenHasher sha256TokenHasher;
+
+    private OAuth2Authentication authentication;
+
+    private DefaultAuthenticationKeyGenerator defaultAuthenticationKeyGenerator;
+
+    private ApplicationAuthenticationKeyGenerator applicationAuthenticationKeyGenerator;
+
+    @Setup
+    public void setUp() {
+        tokenValue = new TokenValueGenerator().generate();
+        md5TokenHasher = new TokenHasher("MD5");
+        sha256TokenHasher = new TokenHasher("SHA-256");
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "web", Collections.emptyList(), true,
+                new HashSet<>(Arrays.asList("read", "write")), Collections.emptySet(), null, Collections.emptySet(),
+                Collections.emptyMap());
+        authentication = new OAuth2Authentication(request,
+                new UsernamePasswordAuthenticationToken("warren.nocos", null, Collections.emptyList()));
+        defaultAuthenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+        applicationAuthenticationKeyGenerator = new ApplicationAuthenticationKeyGenerator(sha256TokenHasher);
+    }
+
+    @Benchmark
+    public String hashObject() {
+        return TokenValueGeneratorBenchmark.hashObject(tokenValue);
+    }
+
+    @Benchmark
+    public String hashToHexWithMd5() {
+        return md5TokenHasher.hashToHex(tokenValue);
+    }
+
+    @Benchmark
+    public String hashToHexWithSha256() {
+        return sha256TokenHasher.hashToHex(tokenValue);
+    }
+
+    @Benchmark
+    public String hashToBase64UrlWithSha256() {
+        return sha256TokenHasher.hashToBase64Url(tokenValue);
+    }
+
+    @Benchmark
+    public String extractKeyWithDefaultAuthenticationKeyGenerator() {
+        return defaultAuthenticationKeyGenerator.extractKey(authentication);
+    }
+
+    @Benchmark
+    public String extractKeyWithApplicationAuthenticationKeyGenerator() {
+        return applicationAuthenticationKeyGenerator.extractKey(authentication);
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.service;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenValueGeneratorBenchmark {
+
+    private TokenValueGenerator tokenValueGenerator;
+
+    @Setup
+    public void setUp() {
+        tokenValueGenerator = new TokenValueGenerator();
+    }
+
+    @Benchmark
+    public String generate() {
+        return tokenValueGenerator.generate();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String generateOnEveryCore() {
+        return tokenValueGenerator.generate();
+    }
+
+    @Benchmark
+    public String hashRandomUuid() {
+        return hashObject(UUID.randomUUID());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String hashRandomUuidOnEveryCore() {
+        return hashObject(UUID.randomUUID());
+    }
+
+    /**
+     * This is the {@code hashObject} that token values and authentication
+     * keys used to be made with.
+     *
+     * @param object the object to hash
+     * @return the MD5 hash of the object, in hex
+     */
+    static String hashObject(Object object) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
+        }
+        try {
+            byte[] bytes = digest.digest(object.toString().getBytes("UTF-8"));
+            return String.format("%032x", new BigInteger(1, bytes));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+        }
+    }
+
+}
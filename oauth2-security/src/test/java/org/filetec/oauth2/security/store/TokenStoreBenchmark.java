@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Filetec Systems.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filetec.oauth2.security.store;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.filetec.oauth2.security.registry.GrantedAuthorityRegistry;
+import org.filetec.oauth2.security.service.ApplicationAuthenticationKeyGenerator;
+import org.filetec.oauth2.security.service.TokenHasher;
+import org.filetec.oauth2.security.service.TokenValueGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.InMemoryTokenStore;
+
+/**
+ *
+ * @author warren.nocos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class TokenStoreBenchmark {
+
+    private static final int TOKEN_COUNT = 100000;
+
+    private static final int USER_COUNT = 10000;
+
+    @Param({"sharded-in-memory", "in-memory"})
+    public String tokenStoreType;
+
+    private TokenStore tokenStore;
+
+    private OAuth2Authentication[] authentications;
+
+    private String[] tokenValues;
+
+    private TokenValueGenerator tokenValueGenerator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AuthenticationKeyGenerator authenticationKeyGenerator
+                = new ApplicationAuthenticationKeyGenerator(new TokenHasher("SHA-256"));
+        if ("sharded-in-memory".equals(tokenStoreType)) {
+            ShardedInMemoryTokenStore shardedInMemoryTokenStore
+                    = new ShardedInMemoryTokenStore(authenticationKeyGenerator, 64, 1000L);
+            shardedInMemoryTokenStore.setGrantedAuthorityRegistry(new GrantedAuthorityRegistry());
+            tokenStore = shardedInMemoryTokenStore;
+        } else {
+            InMemoryTokenStore inMemoryTokenStore = new InMemoryTokenStore();
+            inMemoryTokenStore.setAuthenticationKeyGenerator(authenticationKeyGenerator);
+            tokenStore = inMemoryTokenStore;
+        }
+        tokenValueGenerator = new TokenValueGenerator();
+        authentications = new OAuth2Authentication[USER_COUNT];
+        for (int index = 0; index < USER_COUNT; index++) {
+            authentications[index] = createAuthentication("user" + index);
+        }
+        tokenValues = new String[TOKEN_COUNT];
+        for (int index = 0; index < TOKEN_COUNT; index++) {
+            OAuth2AccessToken accessToken = createAccessToken();
+            tokenStore.storeAccessToken(accessToken, authentications[index % USER_COUNT]);
+            tokenValues[index] = accessToken.getValue();
+        }
+    }
+
+    @Benchmark
+    public OAuth2Authentication readAuthentication() {
+        return tokenStore.readAuthentication(tokenValues[ThreadLocalRandom.current().nextInt(TOKEN_COUNT)]);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken getAccessToken() {
+        return tokenStore.getAccessToken(authentications[ThreadLocalRandom.current().nextInt(USER_COUNT)]);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken storeAndRemoveAccessToken(ThreadAuthentication threadAuthentication) {
+        OAuth2AccessToken accessToken = createAccessToken();
+        tokenStore.storeAccessToken(accessToken, threadAuthentication.authentication);
+        tokenStore.removeAccessToken(accessToken);
+        return accessToken;
+    }
+
+    protected OAuth2AccessToken createAccessToken() {
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(tokenValueGenerator.generate());
+        accessToken.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1L)));
+        accessToken.setScope(new HashSet<>(Arrays.asList("read", "write")));
+        return accessToken;
+    }
+
+    protected static OAuth2Authentication createAuthentication(String username) {
+        Map<String, String> requestParameters = new HashMap<>();
+        requestParameters.put("grant_type", "password");
+        requestParameters.put("username", username);
+        OAuth2Request request = new OAuth2Request(requestParameters, "web",
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_CLIENT")), true,
+                new HashSet<>(Arrays.asList("read", "write")), Collections.emptySet(), null, Collections.emptySet(),
+                Collections.emptyMap());
+        return new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken(username, null,
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+
+    /**
+     * This is the authentication of the tokens a benchmark thread stores,
+     * one user per thread, apart from the users of the stored tokens.
+     */
+    @State(Scope.Thread)
+    public static class ThreadAuthentication {
+
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+        private OAuth2Authentication authentication;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            authentication = createAuthentication("thread" + THREAD_COUNT.incrementAndGet());
+        }
+
+    }
+
+}